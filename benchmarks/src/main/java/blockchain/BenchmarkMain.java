@@ -0,0 +1,25 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+//   Entry point of benchmarks.jar: the standard JMH command line, plus the GC profiler
+//   so every result also reports allocation rate (gc.alloc.rate.norm = bytes per op).
+//   Examples:
+//     java -jar benchmarks/target/benchmarks.jar                          (everything)
+//     java -jar benchmarks/target/benchmarks.jar Utxo -p txCount=100000   (one class, one scale)
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,83 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   Blockchain API hot paths on a store-backed chain of txCount transactions:
+//   building a spend (coin selection) and a balance query, rotating over the synthetic addresses,
+//   and random access to history by height, block hash and tx id (mostly non-resident blocks).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class BlockchainBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int txCount;
+
+    private Path directory;
+    private Blockchain blockchain;
+    private List<String> addresses;
+    private List<String> blockHashes;
+    private List<String> txIds;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        SyntheticChain chain = SyntheticChain.generate(txCount, 1);
+        directory = Files.createTempDirectory("bench-chain");
+        blockchain = chain.openBlockchain(directory);
+        addresses = chain.addresses;
+        blockHashes = new ArrayList<>();
+        txIds = new ArrayList<>();
+        for (Block block : chain.blocks) {
+            blockHashes.add(block.hash);
+            txIds.add(block.transactions.get(block.transactions.size() / 2).transactionId);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        blockchain.close();
+        SyntheticChain.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Transaction createSpend() {
+        String sender = addresses.get(next++ % addresses.size());
+        try {
+            return blockchain.createSpend(sender, "bench-receiver", 0.5);
+        } catch (IllegalArgumentException insufficientFunds) {
+            return null; // a few addresses never received anything
+        }
+    }
+
+    @Benchmark
+    public double checkBalance() {
+        return blockchain.checkBalance(addresses.get(next++ % addresses.size()));
+    }
+
+    @Benchmark
+    public Block getBlock() {
+        return blockchain.getBlock(next++ % blockHashes.size());
+    }
+
+    @Benchmark
+    public Block getBlockByHash() {
+        return blockchain.getBlockByHash(blockHashes.get(next++ % blockHashes.size()));
+    }
+
+    @Benchmark
+    public Transaction getTransaction() {
+        return blockchain.getTransaction(txIds.get(next++ % txIds.size()));
+    }
+}
@@ -0,0 +1,61 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.util.concurrent.TimeUnit;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+//   BinaryCodec against Gson for one block of txPerBlock transactions: encode, decode,
+//   and computing a transaction id from the canonical preimage.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int txPerBlock;
+
+    private final Gson gson = new Gson();
+    private Block block;
+    private Transaction tx;
+    private byte[] binary;
+    private String json;
+
+    @Setup
+    public void setup() {
+        block = SyntheticChain.generate(txPerBlock, 1).blocks.get(1);
+        tx = block.transactions.get(1);
+        binary = BinaryCodec.encode(block);
+        json = gson.toJson(block);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return BinaryCodec.encode(block);
+    }
+
+    @Benchmark
+    public Block decodeBinary() {
+        return BinaryCodec.decodeBlock(binary);
+    }
+
+    @Benchmark
+    public String encodeJson() {
+        return gson.toJson(block);
+    }
+
+    @Benchmark
+    public Block decodeJson() {
+        return gson.fromJson(json, Block.class);
+    }
+
+    @Benchmark
+    public String transactionId() {
+        return tx.computeId();
+    }
+}
@@ -0,0 +1,68 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   Hashing hot paths: one PoW attempt on a block header, the Merkle root of a template,
+//   HashUtil.sha256 on a transaction-sized string, and a raw midstate attempt as the miner runs it.
+//   txPerBlock shows that a header attempt does not depend on the block size.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+
+    @Param({"10", "1000"})
+    public int txPerBlock;
+
+    private Block block;
+    private List<String> txIds;
+    private String txString;
+    private Sha256 midstate;
+    private Sha256 sha;
+    private final byte[] nonceBytes = new byte[11];
+    private final byte[] out = new byte[32];
+    private int nonce;
+
+    @Setup
+    public void setup() {
+        SyntheticChain chain = SyntheticChain.generate(txPerBlock, 1);
+        block = chain.blocks.get(1);
+        txIds = new ArrayList<>();
+        for (Transaction tx : block.transactions) txIds.add(tx.transactionId);
+        txString = block.transactions.get(1).toString() + block.transactions.get(1).inputs + block.transactions.get(1).outputs;
+        midstate = new Sha256();
+        midstate.update(block.headerPrefix());
+        sha = new Sha256();
+    }
+
+    @Benchmark
+    public String blockCalculateHash() {
+        return block.calculateHash(nonce++);
+    }
+
+    @Benchmark
+    public String merkleRoot() {
+        return MerkleTree.root(txIds);
+    }
+
+    @Benchmark
+    public String hashUtilSha256() {
+        return HashUtil.sha256(txString);
+    }
+
+    @Benchmark
+    public byte[] minerAttempt() {
+        int len = Block.encodeNonce(block.version, nonce++ & Integer.MAX_VALUE, nonceBytes);
+        sha.copyFrom(midstate);
+        sha.update(nonceBytes, nonceBytes.length - len, len);
+        sha.digest(out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,45 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   End-to-end PoW latency for one block at a fixed difficulty, single-threaded and on all cores.
+//   Expected attempts per block are 2^difficultyBits, so nonces/second = 2^bits / (time per op).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 4)
+@Fork(1)
+public class MiningBenchmark {
+
+    @Param({"12", "16"})
+    public int difficultyBits;
+
+    @Param({"1", "0"}) // 0 = one worker per core
+    public int threads;
+
+    private Miner miner;
+    private Block block;
+    private int round;
+
+    @Setup
+    public void setup() {
+        miner = threads == 0 ? new Miner() : new Miner(threads);
+        block = SyntheticChain.generate(100, 1).blocks.get(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        miner.shutdown();
+    }
+
+    @Benchmark
+    public boolean mineBlock() {
+        block.timestamp = ++round; // a fresh header each time, so every run does a real search
+        return miner.mine(block, difficultyBits);
+    }
+}
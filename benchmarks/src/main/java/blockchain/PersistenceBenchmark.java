@@ -0,0 +1,75 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   Persistence paths for a chain of txCount transactions: JSON export/import
+//   (saveBlockchain/loadBlockchain), opening a BlockStore and streaming every block back,
+//   and appending one block to a store.
+//   Each op is a whole save or load, so these report time per op.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class PersistenceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int txCount;
+
+    private SyntheticChain chain;
+    private Blockchain blockchain;
+    private Path directory;
+    private Path streamDir;
+    private Path jsonFile;
+    private BlockStore appendStore;
+
+    @Setup
+    public void setup() throws IOException {
+        chain = SyntheticChain.generate(txCount, 1);
+        directory = Files.createTempDirectory("bench-persist");
+        blockchain = chain.openBlockchain(directory.resolve("chain"));
+        streamDir = directory.resolve("stream");
+        chain.writeStore(streamDir);
+        jsonFile = directory.resolve("chain.json");
+        blockchain.saveBlockchain(jsonFile.toString());
+        appendStore = new BlockStore(directory.resolve("append").toString());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        appendStore.close();
+        blockchain.close();
+        SyntheticChain.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void saveBlockchain() {
+        blockchain.saveBlockchain(directory.resolve("save.json").toString());
+    }
+
+    @Benchmark
+    public Blockchain loadBlockchain() {
+        return Blockchain.loadBlockchain(jsonFile.toString());
+    }
+
+    @Benchmark
+    public int streamBlockStore() throws IOException {
+        int[] txs = new int[1];
+        try (BlockStore store = new BlockStore(streamDir.toString())) {
+            store.forEach(b -> txs[0] += b.transactions.size());
+        }
+        return txs[0];
+    }
+
+    @Benchmark
+    public void appendBlock() throws IOException {
+        appendStore.append(chain.blocks.get(1));
+    }
+}
@@ -0,0 +1,60 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.security.KeyPair;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   Ed25519 input verification: a raw verify, a cache hit in SignatureVerifier,
+//   and verifyAll() over a batch of BATCH distinct signed inputs with caching off (scores are per input).
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private String publicKey;
+    private Transaction tx;
+    private SignatureVerifier cached;
+    private List<SignatureVerifier.Check> checks;
+
+    @Setup
+    public void setup() {
+        KeyPair pair = Signatures.generateKeyPair();
+        publicKey = Signatures.publicKeyHex(pair.getPublic());
+        checks = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            Transaction t = new Transaction(
+                    List.of(new Transaction.TxInput(HashUtil.sha256("prev" + i), 0, null)),
+                    List.of(new Transaction.TxOutput("bench", 1.0, publicKey)));
+            t.signInput(0, pair.getPrivate());
+            checks.add(new SignatureVerifier.Check(t, 0, publicKey));
+        }
+        tx = checks.get(0).tx;
+        cached = new SignatureVerifier(1);
+        cached.verify(tx, 0, publicKey);
+    }
+
+    @Benchmark
+    public boolean verifyRaw() {
+        return Signatures.verify(publicKey, tx.idBytes(), tx.inputs.get(0).signature);
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        return cached.verify(tx, 0, publicKey);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean verifyAllParallel() {
+        return new SignatureVerifier(0).verifyAll(checks);
+    }
+}
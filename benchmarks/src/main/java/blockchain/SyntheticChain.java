@@ -0,0 +1,127 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+//   SyntheticChain builds a valid chain of a given transaction count for benchmarks:
+//   - Genesis pays a large coinbase to "genesis"; every later block starts with its own coinbase
+//   - Each regular tx spends the oldest unspent output and splits it in two: a payment to a
+//     random address and change back to the owner, so the UTXO set grows by one per tx
+//   - Blocks are hashed but not mined (difficulty 0), so building 1M txs takes seconds
+//   The same seed always gives the same chain.
+final class SyntheticChain {
+    static final int TX_PER_BLOCK = 1000;
+
+    // An output the generator may still spend.
+    static final class Spendable {
+        final String txId;
+        final int index;
+        final String owner;
+        final long units;
+
+        Spendable(String txId, int index, String owner, long units) {
+            this.txId = txId;
+            this.index = index;
+            this.owner = owner;
+            this.units = units;
+        }
+    }
+
+    final List<Block> blocks;
+    final List<String> addresses;
+    final ArrayDeque<Spendable> unspent;
+    final int transactionCount;
+
+    private SyntheticChain(List<Block> blocks, List<String> addresses, ArrayDeque<Spendable> unspent, int transactionCount) {
+        this.blocks = blocks;
+        this.addresses = addresses;
+        this.unspent = unspent;
+        this.transactionCount = transactionCount;
+    }
+
+    //   Generate a chain holding txCount regular transactions.
+    static SyntheticChain generate(int txCount, long seed) {
+        Random random = new Random(seed);
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < Math.max(16, txCount / 10); i++) addresses.add("addr" + i);
+
+        List<Block> blocks = new ArrayList<>();
+        ArrayDeque<Spendable> unspent = new ArrayDeque<>();
+        Transaction genesisCoin = Transaction.coinbase("genesis", 20_000_000.0, 0);
+        unspent.add(new Spendable(genesisCoin.transactionId, 0, "genesis", Amounts.toUnits(20_000_000.0)));
+        blocks.add(hashed(new Block(0, List.of(genesisCoin), "0")));
+
+        int generated = 0;
+        while (generated < txCount) {
+            int height = blocks.size();
+            List<Transaction> txs = new ArrayList<>();
+            txs.add(Transaction.coinbase("miner" + height, 10.0, height));
+            for (int n = 0; n < TX_PER_BLOCK && generated < txCount; n++, generated++) {
+                Spendable in = unspent.removeFirst();
+                long pay = in.units / 2;
+                String receiver = addresses.get(random.nextInt(addresses.size()));
+                Transaction tx = new Transaction(
+                        List.of(new Transaction.TxInput(in.txId, in.index, "sig")),
+                        List.of(new Transaction.TxOutput(receiver, Amounts.toCoins(pay)),
+                                new Transaction.TxOutput(in.owner, Amounts.toCoins(in.units - pay))));
+                unspent.addLast(new Spendable(tx.transactionId, 0, receiver, pay));
+                unspent.addLast(new Spendable(tx.transactionId, 1, in.owner, in.units - pay));
+                txs.add(tx);
+            }
+            blocks.add(hashed(new Block(height, txs, blocks.get(height - 1).hash)));
+        }
+        return new SyntheticChain(blocks, addresses, unspent, txCount);
+    }
+
+    //   A UTXO set with every block applied.
+    UTXOSet utxoSet() {
+        return utxoSet(new HashMapOutputStore());
+    }
+
+    //   Same, on a specific storage backend.
+    UTXOSet utxoSet(OutputStore store) {
+        UTXOSet utxo = new UTXOSet(store);
+        utxo.rebuildFromChain(blocks);
+        return utxo;
+    }
+
+    //   A valid, not yet included transaction spending the oldest unspent output.
+    Transaction nextSpend() {
+        Spendable in = unspent.peekFirst();
+        return new Transaction(
+                List.of(new Transaction.TxInput(in.txId, in.index, "sig")),
+                List.of(new Transaction.TxOutput("bench-receiver", Amounts.toCoins(in.units))));
+    }
+
+    //   Write every block to a new BlockStore in directory.
+    void writeStore(Path directory) throws IOException {
+        try (BlockStore store = new BlockStore(directory.toString(), Integer.MAX_VALUE)) {
+            for (Block b : blocks) store.append(b);
+        }
+    }
+
+    //   Write the chain to a BlockStore in directory and open it as a Blockchain (difficulty 0).
+    Blockchain openBlockchain(Path directory) throws IOException {
+        writeStore(directory);
+        Blockchain blockchain = Blockchain.openBlockchain(directory.toString(), null);
+        blockchain.difficultyBits = 0;
+        return blockchain;
+    }
+
+    // Difficulty 0: the nonce-0 hash is already valid
+    private static Block hashed(Block block) {
+        block.hash = block.calculateHash();
+        return block;
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        try (var walk = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
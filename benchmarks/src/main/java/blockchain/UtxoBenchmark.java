@@ -0,0 +1,61 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   UTXO hot paths against a set built from a synthetic chain of txCount transactions, on each
+//   OutputStore backend: validating a spend, validating and applying it to a fresh overlay, a
+//   balance lookup and walking one address's outputs (what coin selection does).
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class UtxoBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int txCount;
+
+    @Param({"hashmap", "compact"})
+    public String backend;
+
+    private UTXOSet utxo;
+    private Transaction spend;
+    private String address;
+
+    @Setup
+    public void setup() {
+        SyntheticChain chain = SyntheticChain.generate(txCount, 1);
+        utxo = chain.utxoSet("compact".equals(backend) ? new CompactOutputStore(txCount * 2) : new HashMapOutputStore());
+        spend = chain.nextSpend();
+        address = chain.addresses.get(0);
+    }
+
+    @Benchmark
+    public boolean validateTransaction() {
+        return utxo.validateTransaction(spend);
+    }
+
+    @Benchmark
+    public UTXOSet validateAndApply() {
+        UTXOSet overlay = utxo.overlay();
+        if (overlay.validateTransaction(spend)) overlay.applyTransaction(spend);
+        return overlay;
+    }
+
+    @Benchmark
+    public double balanceOf() {
+        return utxo.balanceOf(address);
+    }
+
+    @Benchmark
+    public int outputsOf() {
+        int count = 0;
+        for (OutPoint op : utxo.outputsOf(address)) count += op.index;
+        return count;
+    }
+}
@@ -0,0 +1,42 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+package blockchain;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+//   Full-chain audit (ChainValidator: parallel stateless checks plus UTXO replay)
+//   and a plain UTXO rebuild, for a synthetic chain of txCount transactions.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ValidationBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int txCount;
+
+    private SyntheticChain chain;
+    private ChainValidator validator;
+
+    @Setup
+    public void setup() {
+        chain = SyntheticChain.generate(txCount, 1);
+        validator = new ChainValidator(Amounts.toUnits(10.0));
+        ChainValidator.Result result = validator.validate(chain.blocks, 0);
+        if (!result.valid) throw new IllegalStateException("Synthetic chain is invalid: " + result);
+    }
+
+    @Benchmark
+    public ChainValidator.Result validateChain() {
+        return validator.validate(chain.blocks, 0);
+    }
+
+    @Benchmark
+    public UTXOSet rebuildUtxo() {
+        return chain.utxoSet();
+    }
+}
@@ -0,0 +1,328 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+
+//   AddressIndex is the transaction history of every address: one entry (height, txId, IN/OUT,
+//   amount) per transaction that paid the address (IN) or spent its outputs (OUT):
+//   - Entries are fixed ENTRY_SIZE-byte records appended in height order, each linking back to the
+//     previous entry of the same address: [long previous + 1][long addressKey][long addressCheck]
+//     [int height][byte direction][3 bytes padding][long amount units][32 bytes txId]
+//   - Heads map each address to its newest entry, so a page of n entries costs n entry reads
+//     however long the history is, and no block is decoded
+//   - history() pages newest first; the cursor is the offset of the next entry + 1 (0 = newest)
+//   - truncate() drops the entries of disconnected blocks from the end and moves each address's
+//     head back to the entry before them
+//   - On disk (history.dat, and history.hidx for the heads): the file header holds how many blocks
+//     are indexed durably and where their entries end. Heads changed since the last sync() mark
+//     the file dirty first; a dirty file gets its heads rebuilt from the entries on open, and the
+//     owner re-indexes the blocks from covered()
+//   - In memory (no directory): the same records in a heap buffer, the heads in a map
+public final class AddressIndex implements Closeable {
+    private static final int MAGIC = 0x48495354; // "HIST"
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int ENTRY_SIZE = 72;
+
+    public enum Direction {
+        IN,   // the transaction paid the address
+        OUT   // the transaction spent the address's outputs
+    }
+
+    //   One history entry; amount is the total paid to or spent by the address in that transaction.
+    public static final class Entry {
+        public final int height;
+        public final String txId;
+        public final Direction direction;
+        public final double amount;
+
+        Entry(int height, String txId, Direction direction, double amount) {
+            this.height = height;
+            this.txId = txId;
+            this.direction = direction;
+            this.amount = amount;
+        }
+
+        @Override public String toString() {
+            return height + " " + txId + " " + direction + " " + amount;
+        }
+    }
+
+    //   A page of entries, newest first; nextCursor continues after them (-1 = no more).
+    public static final class Page {
+        public final List<Entry> entries;
+        public final long nextCursor;
+
+        Page(List<Entry> entries, long nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final FileChannel channel; // null = in memory
+    private final HashIndex heads;
+    private final Map<Long, Long> memoryHeads;
+    private ByteBuffer memory;
+
+    private int covered;
+    private long end = HEADER;
+    private boolean dirty;
+
+    //   In-memory index.
+    public AddressIndex() {
+        this.channel = null;
+        this.heads = null;
+        this.memoryHeads = new HashMap<>();
+        this.memory = ByteBuffer.allocate(HEADER + 64 * ENTRY_SIZE);
+    }
+
+    //   File-backed index in directory (history.dat, history.hidx), repairing it after a crash.
+    public AddressIndex(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.channel = FileChannel.open(directory.resolve("history.dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.heads = HashIndex.open(directory.resolve("history.hidx"), 1 << 10);
+        this.memoryHeads = null;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (channel.size() >= HEADER) readFully(header, 0);
+        if (channel.size() < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getLong(16) < HEADER || header.getLong(16) > channel.size()) {
+            // New, or not ours: start over
+            channel.truncate(0);
+            heads.clear();
+            dirty = true;
+            writeHeader();
+            return;
+        }
+        covered = header.getInt(8);
+        dirty = header.getInt(12) != 0;
+        end = header.getLong(16);
+        // Entries past `end` were never synced
+        if (channel.size() > end) channel.truncate(end);
+        if (dirty || heads.covered() != covered) rebuildHeads();
+    }
+
+    //   Blocks below this height are indexed.
+    public synchronized int covered() {
+        return covered;
+    }
+
+    //   Index a block at height covered() or above (a gap is allowed, e.g. the pruned part of a
+    //   chain). Outputs spent by the block come from its own transactions or from spentOutputs
+    //   (e.g. the block's undo data); inputs it cannot resolve get no OUT entry.
+    public synchronized void addBlock(Block block, Function<OutPoint, Transaction.TxOutput> spentOutputs) throws IOException {
+        if (block.index < covered) throw new IllegalStateException("Block " + block.index + " is already indexed");
+        Map<OutPoint, Transaction.TxOutput> created = new HashMap<>();
+        List<byte[]> entries = new ArrayList<>();
+        for (Transaction tx : block.transactions) {
+            byte[] txHash = HashUtil.fromHex(tx.transactionId);
+            Map<String, Long> spent = new LinkedHashMap<>();
+            if (!tx.isCoinbase) {
+                for (Transaction.TxInput in : tx.inputs) {
+                    OutPoint op = in.outPoint();
+                    Transaction.TxOutput out = created.get(op);
+                    if (out == null) out = spentOutputs.apply(op);
+                    if (out != null) spent.merge(out.receiver, Amounts.toUnits(out.amount), Long::sum);
+                }
+            }
+            Map<String, Long> paid = new LinkedHashMap<>();
+            for (int i = 0; i < tx.outputs.size(); i++) {
+                Transaction.TxOutput out = tx.outputs.get(i);
+                paid.merge(out.receiver, Amounts.toUnits(out.amount), Long::sum);
+                created.put(tx.outPoint(i), out);
+            }
+            for (Map.Entry<String, Long> e : spent.entrySet()) entries.add(entry(e.getKey(), block.index, txHash, Direction.OUT, e.getValue()));
+            for (Map.Entry<String, Long> e : paid.entrySet()) entries.add(entry(e.getKey(), block.index, txHash, Direction.IN, e.getValue()));
+        }
+        markDirty();
+        for (byte[] e : entries) {
+            // Written one by one: the next head lookup may need to confirm this entry
+            ByteBuffer entry = ByteBuffer.wrap(e);
+            long key = entry.getLong(8);
+            long check = entry.getLong(16);
+            entry.putLong(0, head(key, check) + 1);
+            write(entry, end);
+            setHead(key, check, end);
+            end += ENTRY_SIZE;
+        }
+        covered = block.index + 1;
+    }
+
+    //   Drop the entries of every block at height >= height.
+    public synchronized void truncate(int height) throws IOException {
+        if (height >= covered) return;
+        // Entries are in height order: find the first one to drop
+        long lo = 0;
+        long hi = (end - HEADER) / ENTRY_SIZE;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (read(HEADER + mid * ENTRY_SIZE).getInt(24) < height) lo = mid + 1;
+            else hi = mid;
+        }
+        long cut = HEADER + lo * ENTRY_SIZE;
+        markDirty();
+        for (long offset = end - ENTRY_SIZE; offset >= cut; offset -= ENTRY_SIZE) {
+            ByteBuffer entry = read(offset);
+            long key = entry.getLong(8);
+            long check = entry.getLong(16);
+            long previous = entry.getLong(0) - 1;
+            if (previous >= 0) setHead(key, check, previous);
+            else removeHead(key, check);
+        }
+        end = cut;
+        covered = height;
+        if (channel != null) {
+            // The dropped entries must not come back with the heads rebuilt after a crash
+            writeHeader();
+            channel.truncate(end);
+        }
+    }
+
+    //   Up to limit entries of address, newest first, starting at cursor (0 = the newest entry;
+    //   otherwise a nextCursor returned earlier). Throws IllegalArgumentException for a cursor that
+    //   is not one of this address's entries (e.g. dropped by a reorg since).
+    public synchronized Page history(String address, long cursor, int limit) throws IOException {
+        if (limit < 1) throw new IllegalArgumentException("limit must be >= 1");
+        long key = HashIndex.keyOf(address);
+        long check = checkOf(address);
+        long offset;
+        if (cursor == 0) {
+            offset = head(key, check);
+        } else {
+            offset = cursor - 1;
+            if (offset < HEADER || offset >= end || (offset - HEADER) % ENTRY_SIZE != 0 || read(offset).getLong(16) != check) {
+                throw new IllegalArgumentException("Invalid history cursor " + cursor + " for " + address);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(Math.min(limit, 1024));
+        while (offset >= 0 && entries.size() < limit) {
+            ByteBuffer entry = read(offset);
+            byte[] txHash = new byte[32];
+            entry.get(40, txHash);
+            entries.add(new Entry(entry.getInt(24), HashUtil.toHex(txHash), Direction.values()[entry.get(28)],
+                    Amounts.toCoins(entry.getLong(32))));
+            offset = entry.getLong(0) - 1;
+        }
+        return new Page(entries, offset < 0 ? -1 : offset + 1);
+    }
+
+    //   Make every indexed block durable: entries, then heads, then the header.
+    public synchronized void sync() throws IOException {
+        if (channel == null || !dirty) return;
+        channel.force(false);
+        heads.sync(covered);
+        dirty = false;
+        writeHeader();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) return;
+        sync();
+        heads.close();
+        channel.close();
+    }
+
+    // A new entry with no previous link yet.
+    private static byte[] entry(String address, int height, byte[] txHash, Direction direction, long units) {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        entry.putLong(0, 0).putLong(8, HashIndex.keyOf(address)).putLong(16, checkOf(address))
+                .putInt(24, height).put(28, (byte) direction.ordinal()).putLong(32, units).put(40, txHash);
+        return entry.array();
+    }
+
+    // Second, independent 64 bits identifying an address; heads are looked up by HashIndex.keyOf
+    // and confirmed with this.
+    private static long checkOf(String address) {
+        return ByteBuffer.wrap(HashUtil.fromHex(HashUtil.sha256("history:" + address))).getLong(8);
+    }
+
+    // Offset of the newest entry of the address with this key and check, or -1.
+    private long head(long key, long check) {
+        if (channel == null) {
+            Long offset = memoryHeads.get(check);
+            return offset == null ? -1 : offset;
+        }
+        return heads.findKey(key, offset -> checkAt(offset) == check);
+    }
+
+    private void setHead(long key, long check, long offset) throws IOException {
+        if (channel == null) memoryHeads.put(check, offset);
+        else heads.replaceKey(key, current -> checkAt(current) == check, offset);
+    }
+
+    private void removeHead(long key, long check) {
+        if (channel == null) memoryHeads.remove(check);
+        else heads.removeKey(key, current -> checkAt(current) == check);
+    }
+
+    private long checkAt(long offset) {
+        try {
+            return offset < end ? read(offset).getLong(16) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // After a crash: point every address's head at its newest entry again, scanning the entries once.
+    private void rebuildHeads() throws IOException {
+        heads.clear();
+        ByteBuffer chunk = ByteBuffer.allocate(ENTRY_SIZE * 1024);
+        for (long offset = HEADER; offset < end; ) {
+            chunk.clear().limit((int) Math.min(chunk.capacity(), end - offset));
+            readFully(chunk, offset);
+            for (int at = 0; at < chunk.limit(); at += ENTRY_SIZE, offset += ENTRY_SIZE) {
+                long check = chunk.getLong(at + 16);
+                heads.replaceKey(chunk.getLong(at + 8), current -> checkAt(current) == check, offset);
+            }
+        }
+        dirty = true;
+        sync();
+    }
+
+    // The first head change after a sync is preceded by a durable dirty flag, so a crash can never
+    // leave heads newer than the header without open() noticing.
+    private void markDirty() throws IOException {
+        if (dirty) return;
+        dirty = true;
+        if (channel != null) writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, covered).putInt(12, dirty ? 1 : 0).putLong(16, end);
+        write(header, 0);
+        channel.force(false);
+    }
+
+    private ByteBuffer read(long offset) throws IOException {
+        if (channel == null) return ByteBuffer.wrap(memory.array(), (int) offset, ENTRY_SIZE).slice();
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+        readFully(entry, offset);
+        return entry.flip();
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        if (channel == null) {
+            if (position + buf.remaining() > memory.capacity()) {
+                memory = ByteBuffer.wrap(Arrays.copyOf(memory.array(), (int) Math.max(memory.capacity() * 2L, position + buf.remaining())));
+            }
+            memory.put((int) position, buf, buf.position(), buf.remaining());
+            return;
+        }
+        while (buf.hasRemaining()) position += channel.write(buf, position);
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+//   Fixed-point amounts: 1 coin = 100,000,000 units (like satoshis).
+//   TxOutput keeps its public double for JSON compatibility; UTXO storage and
+//   running balances use long units so sums never drift.
+public final class Amounts {
+    public static final long UNITS_PER_COIN = 100_000_000L;
+    //   No single amount may exceed this (21 million coins); sums of amounts still use
+    //   Math.addExact, since enough outputs together could overflow a long.
+    public static final long MAX_MONEY = 21_000_000L * UNITS_PER_COIN;
+
+    private Amounts() {
+    }
+
+    public static long toUnits(double amount) {
+        return Math.round(amount * UNITS_PER_COIN);
+    }
+
+    //   A spendable amount: finite, at least one unit once rounded and at most MAX_MONEY. NaN and
+    //   infinities fail here, where toUnits() would turn them into 0 or Long.MAX_VALUE, and so do
+    //   positive amounts below half a unit, which round to a zero-value output.
+    public static boolean isValid(double amount) {
+        if (!Double.isFinite(amount)) return false;
+        long units = toUnits(amount);
+        return units >= 1 && units <= MAX_MONEY;
+    }
+
+    public static double toCoins(long units) {
+        return (double) units / UNITS_PER_COIN;
+    }
+}
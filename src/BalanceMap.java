@@ -0,0 +1,168 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+//   BalanceMap is a persistent (immutable) map from address to balance units, a hash array mapped
+//   trie: 32-way nodes indexed by 5 bits of the key's hash at a time, with a bitmap per node so
+//   only present children take space. Updating a key copies just the nodes on its path (at most
+//   7), so each published ChainSnapshot can keep its own map and share everything else with its
+//   neighbours; readers never see a later write.
+//   - Keys whose full 32-bit hashes collide share a leaf chain
+//   - A missing key reads as 0 units
+//   - Builder applies many updates without copying a node more than once (the nodes it created
+//     itself are changed in place until build())
+final class BalanceMap {
+    static final BalanceMap EMPTY = new BalanceMap(new Node(0, new Object[0], null), 0);
+
+    // One key, plus any other keys with exactly the same hash
+    private static final class Leaf {
+        final String key;
+        final int hash;
+        final long units;
+        final Leaf next;
+
+        Leaf(String key, int hash, long units, Leaf next) {
+            this.key = key;
+            this.hash = hash;
+            this.units = units;
+            this.next = next;
+        }
+    }
+
+    // Slots hold a Leaf or a child Node, in bit order; `edit` is the Builder allowed to change it in place
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+        final Object edit;
+
+        Node(int bitmap, Object[] slots, Object edit) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+            this.edit = edit;
+        }
+    }
+
+    //   Accumulates updates on top of a map; build() publishes them as a new map.
+    static final class Builder {
+        private Object edit = new Object();
+        private Node root;
+        private int size;
+
+        Builder(BalanceMap base) {
+            this.root = base.root;
+            this.size = base.size;
+        }
+
+        Builder put(String key, long units) {
+            int[] added = new int[1];
+            root = insert(root, 0, hash(key), key, units, edit, added);
+            size += added[0];
+            return this;
+        }
+
+        //   The map with every put so far; later puts no longer touch its nodes.
+        BalanceMap build() {
+            edit = new Object();
+            return new BalanceMap(root, size);
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private BalanceMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    //   Number of keys.
+    int size() {
+        return size;
+    }
+
+    //   Units stored for key, or 0.
+    long get(String key) {
+        int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += 5) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) return 0;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+                continue;
+            }
+            for (Leaf leaf = (Leaf) slot; leaf != null; leaf = leaf.next) {
+                if (leaf.hash == hash && leaf.key.equals(key)) return leaf.units;
+            }
+            return 0;
+        }
+    }
+
+    //   A map with key set to units; this one is unchanged.
+    BalanceMap with(String key, long units) {
+        return new Builder(this).put(key, units).build();
+    }
+
+    // Two keys with different hashes always differ within the 7 levels (shift 0..30), so
+    // insert() never shifts past the hash.
+    private static Node insert(Node node, int shift, int hash, String key, long units, Object edit, int[] added) {
+        int bit = 1 << ((hash >>> shift) & 31);
+        int i = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            added[0]++;
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, i);
+            slots[i] = new Leaf(key, hash, units, null);
+            System.arraycopy(node.slots, i, slots, i + 1, node.slots.length - i);
+            return new Node(node.bitmap | bit, slots, edit);
+        }
+        Object slot = node.slots[i];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = insert((Node) slot, shift + 5, hash, key, units, edit, added);
+        } else {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.hash == hash) {
+                replacement = withInChain(leaf, key, units, added);
+            } else {
+                added[0]++;
+                replacement = split(leaf, new Leaf(key, hash, units, null), shift + 5, edit);
+            }
+        }
+        if (node.edit == edit) {
+            node.slots[i] = replacement;
+            return node;
+        }
+        Object[] slots = node.slots.clone();
+        slots[i] = replacement;
+        return new Node(node.bitmap, slots, edit);
+    }
+
+    // A node holding two leaves whose hashes first differ at or below shift.
+    private static Node split(Leaf a, Leaf b, int shift, Object edit) {
+        int ia = (a.hash >>> shift) & 31;
+        int ib = (b.hash >>> shift) & 31;
+        if (ia == ib) return new Node(1 << ia, new Object[] {split(a, b, shift + 5, edit)}, edit);
+        Object[] slots = ia < ib ? new Object[] {a, b} : new Object[] {b, a};
+        return new Node((1 << ia) | (1 << ib), slots, edit);
+    }
+
+    // The chain with key set to units (replaced in a copy, or added at the front).
+    private static Leaf withInChain(Leaf chain, String key, long units, int[] added) {
+        for (Leaf leaf = chain; leaf != null; leaf = leaf.next) {
+            if (leaf.key.equals(key)) return replaceInChain(chain, key, units);
+        }
+        added[0]++;
+        return new Leaf(key, chain.hash, units, chain);
+    }
+
+    private static Leaf replaceInChain(Leaf leaf, String key, long units) {
+        if (leaf.key.equals(key)) return new Leaf(key, leaf.hash, units, leaf.next);
+        return new Leaf(leaf.key, leaf.hash, leaf.units, replaceInChain(leaf.next, key, units));
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
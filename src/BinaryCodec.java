@@ -0,0 +1,367 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+//   BinaryCodec is the one canonical encoding of transactions and blocks, used for tx ids,
+//   block hashing, the block store and the wire. Everything is written straight to and read
+//   straight from ByteBuffers:
+//   - varint: unsigned LEB128 (7 bits per byte, low bits first)
+//   - string: varint byte length + UTF-8
+//   - field (ids, hashes, keys, signatures): tag byte 0 = null, 1 = lower-case hex stored as raw
+//     bytes (varint length + bytes), 2 = any other text (as a string), so a 32-byte hash costs 34 bytes
+//   - amount: version 1 txs use varint fixed-point units; version 0 (legacy) txs keep the exact
+//     IEEE double (8 bytes), because their ids were computed from the double's text
+//
+//   Transaction: varint version | byte flags (bit 0 = coinbase) | field id
+//                | varint #inputs  { field prevTxId | varint outputIndex | field signature }
+//                | varint #outputs { string receiver | amount | field publicKey }
+//   Id preimage (version 1): the same without the id and without signatures
+//   Block:       varint version | varint index | varint timestamp | field previousHash
+//                | field merkleRoot | field hash | int nonce (4 bytes) | varint #txs | txs
+//   Block header (what PoW hashes, version 1): fixed 84 bytes, see Block
+//   Readers throw IllegalArgumentException on truncated or malformed bytes (never
+//   BufferUnderflowException), so callers decoding peer or disk data need only catch that.
+public final class BinaryCodec {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte HEX = 1;
+    private static final byte TEXT = 2;
+
+    private BinaryCodec() {
+    }
+
+    // ---------- Transactions ----------
+
+    //   Exact encoded size of tx.
+    public static int sizeOf(Transaction tx) {
+        int size = varintSize(tx.version) + 1 + fieldSize(tx.transactionId);
+        size += varintSize(tx.inputs.size());
+        for (Transaction.TxInput in : tx.inputs) {
+            size += fieldSize(in.prevTxId) + varintSize(in.outputIndex & 0xffffffffL) + fieldSize(in.signature);
+        }
+        size += varintSize(tx.outputs.size());
+        for (Transaction.TxOutput out : tx.outputs) {
+            size += stringSize(out.receiver) + amountSize(tx.version, out.amount) + fieldSize(out.publicKey);
+        }
+        return size;
+    }
+
+    public static byte[] encode(Transaction tx) {
+        ByteBuffer buf = ByteBuffer.allocate(sizeOf(tx));
+        writeTransaction(buf, tx);
+        return buf.array();
+    }
+
+    public static void writeTransaction(ByteBuffer buf, Transaction tx) {
+        writeVarint(buf, tx.version);
+        buf.put((byte) (tx.isCoinbase ? 1 : 0));
+        writeField(buf, tx.transactionId);
+        writeVarint(buf, tx.inputs.size());
+        for (Transaction.TxInput in : tx.inputs) {
+            writeField(buf, in.prevTxId);
+            writeVarint(buf, in.outputIndex & 0xffffffffL);
+            writeField(buf, in.signature);
+        }
+        writeOutputs(buf, tx);
+    }
+
+    //   Read a transaction, keeping its stored id (validation re-derives ids separately).
+    //   Throws IllegalArgumentException if the bytes are truncated or malformed.
+    public static Transaction readTransaction(ByteBuffer buf) {
+        int version = (int) readVarint(buf);
+        require(buf, 1);
+        boolean coinbase = (buf.get() & 1) != 0;
+        String id = readField(buf);
+        int inputCount = readCount(buf);
+        List<Transaction.TxInput> inputs = new ArrayList<>(inputCount);
+        for (int i = 0; i < inputCount; i++) {
+            String prevTxId = readField(buf);
+            int outputIndex = (int) readVarint(buf);
+            inputs.add(new Transaction.TxInput(prevTxId, outputIndex, readField(buf)));
+        }
+        int outputCount = readCount(buf);
+        List<Transaction.TxOutput> outputs = new ArrayList<>(outputCount);
+        for (int i = 0; i < outputCount; i++) {
+            String receiver = readString(buf);
+            double amount;
+            if (version == Transaction.LEGACY_VERSION) {
+                require(buf, 8);
+                amount = buf.getDouble();
+            } else {
+                amount = Amounts.toCoins(readVarint(buf));
+            }
+            outputs.add(new Transaction.TxOutput(receiver, amount, readField(buf)));
+        }
+        return Transaction.restore(version, id, coinbase, inputs, outputs);
+    }
+
+    //   The bytes a version 1 transaction id is the SHA-256 of: everything but the id and signatures.
+    public static byte[] idPreimage(Transaction tx) {
+        int size = varintSize(tx.version) + 1 + varintSize(tx.inputs.size()) + varintSize(tx.outputs.size());
+        for (Transaction.TxInput in : tx.inputs) {
+            size += fieldSize(in.prevTxId) + varintSize(in.outputIndex & 0xffffffffL);
+        }
+        for (Transaction.TxOutput out : tx.outputs) {
+            size += stringSize(out.receiver) + amountSize(tx.version, out.amount) + fieldSize(out.publicKey);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        writeVarint(buf, tx.version);
+        buf.put((byte) (tx.isCoinbase ? 1 : 0));
+        writeVarint(buf, tx.inputs.size());
+        for (Transaction.TxInput in : tx.inputs) {
+            writeField(buf, in.prevTxId);
+            writeVarint(buf, in.outputIndex & 0xffffffffL);
+        }
+        writeOutputs(buf, tx);
+        return buf.array();
+    }
+
+    private static void writeOutputs(ByteBuffer buf, Transaction tx) {
+        writeVarint(buf, tx.outputs.size());
+        for (Transaction.TxOutput out : tx.outputs) {
+            writeString(buf, out.receiver);
+            if (tx.version == Transaction.LEGACY_VERSION) {
+                buf.putDouble(out.amount);
+            } else {
+                writeVarint(buf, Amounts.toUnits(out.amount));
+            }
+            writeField(buf, out.publicKey);
+        }
+    }
+
+    // ---------- Blocks ----------
+
+    //   Exact encoded size of block, transactions included.
+    public static int sizeOf(Block block) {
+        int size = headerSizeOf(block) + varintSize(block.transactions.size());
+        for (Transaction tx : block.transactions) size += sizeOf(tx);
+        return size;
+    }
+
+    //   Encoded size of the block's header fields (everything before the transaction count).
+    public static int headerSizeOf(Block block) {
+        return varintSize(block.version) + varintSize(block.index & 0xffffffffL) + varintSize(block.timestamp)
+                + fieldSize(block.previousHash) + fieldSize(block.merkleRoot) + fieldSize(block.hash) + 4;
+    }
+
+    public static byte[] encode(Block block) {
+        ByteBuffer buf = ByteBuffer.allocate(sizeOf(block));
+        writeBlock(buf, block);
+        return buf.array();
+    }
+
+    public static void writeBlock(ByteBuffer buf, Block block) {
+        writeHeader(buf, block);
+        writeVarint(buf, block.transactions.size());
+        for (Transaction tx : block.transactions) writeTransaction(buf, tx);
+    }
+
+    //   Header fields only: the block encoding up to (not including) the transaction count.
+    public static void writeHeader(ByteBuffer buf, Block block) {
+        writeVarint(buf, block.version);
+        writeVarint(buf, block.index & 0xffffffffL);
+        writeVarint(buf, block.timestamp);
+        writeField(buf, block.previousHash);
+        writeField(buf, block.merkleRoot);
+        writeField(buf, block.hash);
+        buf.putInt(block.nonce);
+    }
+
+    //   Read a block with its stored hash and transaction ids.
+    //   Throws IllegalArgumentException if the bytes are truncated or malformed.
+    public static Block readBlock(ByteBuffer buf) {
+        Block block = readHeader(buf);
+        int txCount = readCount(buf);
+        List<Transaction> txs = new ArrayList<>(txCount);
+        for (int t = 0; t < txCount; t++) txs.add(readTransaction(buf));
+        block.transactions = txs;
+        return block;
+    }
+
+    //   Read header fields written by writeHeader (or the start of a block encoding) into a block
+    //   with no transactions; its merkleRoot still commits to the real ones.
+    public static Block readHeader(ByteBuffer buf) {
+        int version = (int) readVarint(buf);
+        int index = (int) readVarint(buf);
+        long timestamp = readVarint(buf);
+        String previousHash = readField(buf);
+        String merkleRoot = readField(buf);
+        String hash = readField(buf);
+        require(buf, 4);
+        int nonce = buf.getInt();
+        return Block.restore(version, index, timestamp, List.of(), previousHash, merkleRoot, hash, nonce);
+    }
+
+    public static Block decodeBlock(byte[] bytes) {
+        return readBlock(ByteBuffer.wrap(bytes));
+    }
+
+    //   Only the stored hash of an encoded block, without decoding its transactions.
+    public static String readBlockHash(ByteBuffer buf) {
+        return readHeader(buf).hash;
+    }
+
+    //   Only the transaction at `position` of an encoded block (earlier ones are read and dropped),
+    //   or null if the block has fewer transactions.
+    public static Transaction readBlockTransaction(ByteBuffer buf, int position) {
+        readHeader(buf);
+        int txCount = readCount(buf);
+        if (position < 0 || position >= txCount) return null;
+        for (int t = 0; t < position; t++) readTransaction(buf);
+        return readTransaction(buf);
+    }
+
+    //   Fixed 84-byte version 1 header without the trailing 4-byte nonce (80 bytes).
+    public static byte[] headerPrefix(Block block) {
+        ByteBuffer buf = ByteBuffer.allocate(Block.HEADER_SIZE - 4);
+        buf.putInt(block.version).putInt(block.index).putLong(block.timestamp);
+        buf.put("0".equals(block.previousHash) ? new byte[32] : HashUtil.fromHex(block.previousHash)); // genesis links to "0"
+        buf.put(HashUtil.fromHex(block.merkleRoot));
+        return buf.array();
+    }
+
+    // ---------- Primitives ----------
+
+    static void writeVarint(ByteBuffer buf, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buf.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    //   Throws IllegalArgumentException if the varint is truncated, longer than 10 bytes, or its
+    //   10th byte holds more than the one bit left of a long.
+    static long readVarint(ByteBuffer buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(buf, 1);
+            byte b = buf.get();
+            if (shift == 63 && (b & 0x7e) != 0) throw new IllegalArgumentException("Varint overflows 64 bits");
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7fL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    static void writeString(ByteBuffer buf, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(buf, bytes.length);
+        buf.put(bytes);
+    }
+
+    static String readString(ByteBuffer buf) {
+        int length = readCount(buf);
+        if (buf.hasArray()) {
+            String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int stringSize(String s) {
+        int length = utf8Length(s);
+        return varintSize(length) + length;
+    }
+
+    static void writeField(ByteBuffer buf, String value) {
+        if (value == null) {
+            buf.put(NULL);
+        } else if (isLowerHex(value)) {
+            buf.put(HEX);
+            writeVarint(buf, value.length() / 2);
+            for (int i = 0; i < value.length(); i += 2) {
+                buf.put((byte) ((Character.digit(value.charAt(i), 16) << 4) | Character.digit(value.charAt(i + 1), 16)));
+            }
+        } else {
+            buf.put(TEXT);
+            writeString(buf, value);
+        }
+    }
+
+    static String readField(ByteBuffer buf) {
+        require(buf, 1);
+        byte tag = buf.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case HEX: {
+                byte[] bytes = new byte[readCount(buf)];
+                buf.get(bytes);
+                return HashUtil.toHex(bytes);
+            }
+            case TEXT:
+                return readString(buf);
+            default:
+                throw new IllegalArgumentException("Unknown field tag " + tag);
+        }
+    }
+
+    static int fieldSize(String value) {
+        if (value == null) return 1;
+        if (isLowerHex(value)) return 1 + varintSize(value.length() / 2) + value.length() / 2;
+        return 1 + stringSize(value);
+    }
+
+    private static int amountSize(int txVersion, double amount) {
+        return txVersion == Transaction.LEGACY_VERSION ? 8 : varintSize(Amounts.toUnits(amount));
+    }
+
+    // Fail as malformed input, not with BufferUnderflowException, when fewer than n bytes are left
+    private static void require(ByteBuffer buf, int n) {
+        if (buf.remaining() < n) throw new IllegalArgumentException("Truncated encoding: " + n + " bytes needed, " + buf.remaining() + " left");
+    }
+
+    // A length or count that must fit what is left in the buffer
+    private static int readCount(ByteBuffer buf) {
+        long n = readVarint(buf);
+        if (n > buf.remaining()) throw new IllegalArgumentException("Length " + n + " exceeds remaining " + buf.remaining());
+        return (int) n;
+    }
+
+    // Only canonical (non-empty, even-length, lower-case) hex round-trips through raw bytes
+    private static boolean isLowerHex(String s) {
+        if (s.isEmpty() || (s.length() & 1) != 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; // getBytes() writes a lone surrogate as '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
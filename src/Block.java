@@ -7,53 +7,144 @@ import java.nio.charset.StandardCharsets;
 
 //   Block represents a basic PoW block in a blockchain.
 //   - Contains an index, timestamp, list of transactions, prev hash, own hash, and nonce.
-//   - Supports hashing and mining by adjusting nonce until hash has leading zeros per difficulty.
+//   - Supports hashing and mining by adjusting nonce until hash has leading zero bits per difficulty.
+//   - Version 1 blocks commit to their transactions through a Merkle root, and the hash covers
+//     only a fixed 84-byte header: version | index | timestamp | previousHash | merkleRoot | nonce
+//     (ints and longs big-endian, hashes as raw 32 bytes, nonce as 4 bytes). Each nonce attempt
+//     costs the same no matter how many transactions the block holds.
+//   - Version 0 blocks (chains saved before Merkle roots) keep the original string preimage:
+//     index + timestamp + transactions.toString() + previousHash + decimal nonce.
+//   - A pruned block (read back from a pruned BlockStore) keeps its header and Merkle root but only
+//     the transactions that still had unspent outputs when it was pruned.
 public class Block {
+    public static final int LEGACY_VERSION = 0;
+    public static final int CURRENT_VERSION = 1;
+    public static final int HEADER_SIZE = 84;
+
+    public int version;
     public int index;
     public long timestamp;
     public List<Transaction> transactions;
     public String previousHash;
+    public String merkleRoot; // null for legacy blocks
     public String hash;
     public int nonce;
+    public boolean pruned; // transactions is incomplete; merkleRoot still commits to all of them
 
     //   Construct a new block with given index, transactions, and previous hash.
-    //   Calculates initial hash with nonce = 0.
+    //   Computes the Merkle root once, then the initial hash with nonce = 0.
     public Block(int index, List<Transaction> transactions, String previousHash) {
+        this.version = CURRENT_VERSION;
         this.index = index;
         this.timestamp = System.currentTimeMillis();
         this.transactions = new ArrayList<>(transactions);
         this.previousHash = previousHash;
+        this.merkleRoot = computeMerkleRoot();
         this.nonce = 0;
         this.hash = calculateHash();
     }
 
-    //   Deterministically compute the block's SHA-256 hash over core fields.
-    //   Note: Using transactions.toString() for simplicity; a stable serialization would be preferable for production.
+    private Block() {
+    }
+
+    //   Recreate a stored block with all header fields as written (no rehashing).
+    //   Used by storage codecs; isChainValid() checks the stored hash separately.
+    static Block restore(int version, int index, long timestamp, List<Transaction> transactions,
+                         String previousHash, String merkleRoot, String hash, int nonce) {
+        Block b = new Block();
+        b.version = version;
+        b.index = index;
+        b.timestamp = timestamp;
+        b.transactions = new ArrayList<>(transactions);
+        b.previousHash = previousHash;
+        b.merkleRoot = merkleRoot;
+        b.hash = hash;
+        b.nonce = nonce;
+        return b;
+    }
+
+    //   Deterministically compute the block's SHA-256 hash over its header.
     public String calculateHash() {
+        return calculateHash(nonce);
+    }
+
+    //   Compute the hash this block would have with the given nonce, without mutating it.
+    public String calculateHash(int candidateNonce) {
         try {
-            String data = index
-                    + Long.toString(timestamp)
-                    + transactions.toString()
-                    + previousHash
-                    + Integer.toString(nonce);
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) sb.append(String.format("%02x", b));
-            return sb.toString();
+            digest.update(headerPrefix());
+            byte[] nonceBytes = new byte[11];
+            int len = encodeNonce(version, candidateNonce, nonceBytes);
+            digest.update(nonceBytes, nonceBytes.length - len, len);
+            return HashUtil.toHex(digest.digest());
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    //   Mine the block by incrementing nonce until the hash has `difficulty` leading zeros.
+    //   The part of the hashed data that does not depend on the nonce.
+    //   The full preimage is headerPrefix() followed by encodeNonce(), so miners can
+    //   hash this prefix once and only feed the nonce bytes on each attempt.
+    public byte[] headerPrefix() {
+        if (version == LEGACY_VERSION) {
+            String data = index
+                    + Long.toString(timestamp)
+                    + transactions.toString()
+                    + previousHash;
+            return data.getBytes(StandardCharsets.UTF_8);
+        }
+        if (merkleRoot == null) throw new IllegalStateException("Block " + index + " has no Merkle root");
+        return BinaryCodec.headerPrefix(this);
+    }
+
+    //   Write the hashed form of a nonce right-aligned in buf (at least 11 bytes); returns its length.
+    //   Legacy blocks hash the ASCII decimal digits, newer blocks 4 big-endian bytes.
+    static int encodeNonce(int version, int nonce, byte[] buf) {
+        int pos = buf.length;
+        if (version == LEGACY_VERSION) {
+            int value = nonce;
+            do {
+                buf[--pos] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+        } else {
+            for (int i = 0; i < 4; i++, nonce >>>= 8) buf[--pos] = (byte) nonce;
+        }
+        return buf.length - pos;
+    }
+
+    //   Merkle root over the current transaction ids.
+    public String computeMerkleRoot() {
+        List<String> ids = new ArrayList<>(transactions.size());
+        for (Transaction tx : transactions) ids.add(tx.transactionId);
+        return MerkleTree.root(ids);
+    }
+
+    //   Inclusion proof for one of this block's transactions, or null if it is not in the block.
+    //   A light client checks it with MerkleTree.verify(txId, proof, merkleRoot).
+    public MerkleTree.Proof proofFor(String txId) {
+        List<String> ids = new ArrayList<>(transactions.size());
+        for (Transaction tx : transactions) ids.add(tx.transactionId);
+        int position = ids.indexOf(txId);
+        return position < 0 ? null : MerkleTree.proof(ids, position);
+    }
+
+    //   Mine the block until the hash has `difficulty` leading zeros.
     //   difficulty = number of leading '0' characters required.
+    //   The nonce search is spread over all cores by the shared Miner.
     public void mineBlock(int difficulty) {
-        String target = "0".repeat(difficulty);
-        while (!hash.substring(0, difficulty).equals(target)) {
-            nonce++;
-            hash = calculateHash();
-        }
-        System.out.println("Block mined: " + hash);
+        mineBlock(difficulty, Miner.getDefault());
+    }
+
+    //   Mine the block with a specific Miner.
+    //   Returns false if mining was cancelled before a valid nonce was found.
+    public boolean mineBlock(int difficulty, Miner miner) {
+        return mineBlockBits(difficulty * 4, miner);
+    }
+
+    //   Mine the block until the hash has `difficultyBits` leading zero bits.
+    //   Allows targets between whole hex characters (e.g. 14 bits).
+    public boolean mineBlockBits(int difficultyBits, Miner miner) {
+        return miner.mine(this, difficultyBits);
     }
 }
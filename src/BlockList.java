@@ -0,0 +1,123 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//   BlockList is the chain as an append-only List<Block>:
+//   - In memory (no store): every block stays on the heap
+//   - Store-backed: only the `resident` most recent blocks stay on the heap; older heights are
+//     decoded from the BlockStore's mapped file on each get(), so the heap no longer grows with history.
+//     The list may run ahead of its store by fewer than `resident` blocks (a BlockWriter writes
+//     them behind); those blocks are always resident
+//   - view() is a fixed-size, read-only prefix of the list. Appends never disturb existing heights,
+//     so a view stays valid (and lock-free) while the chain keeps growing; after truncate() (a
+//     switch to another branch) an older view reads the new branch above the fork point
+//   Appends must come from one thread at a time (Blockchain holds its exclusive lock); reads may
+//   come from any thread.
+public final class BlockList extends AbstractList<Block> {
+    public static final int DEFAULT_RESIDENT = 1024;
+
+    private final BlockStore store;
+    // Store-backed: ring of the most recent blocks, slot = height % length
+    private final AtomicReferenceArray<Block> recent;
+    // In memory: every block; replaced by a larger copy when full
+    private volatile Block[] all;
+    private volatile int size;
+
+    //   Every block in memory.
+    public BlockList() {
+        this.store = null;
+        this.recent = null;
+        this.all = new Block[64];
+    }
+
+    //   The blocks already in store (their tail is loaded into the resident ring); later
+    //   blocks must reach the store before `resident` more blocks are added after them.
+    public BlockList(BlockStore store, int resident) throws IOException {
+        if (resident < 1) throw new IllegalArgumentException("resident must be >= 1");
+        this.store = store;
+        this.recent = new AtomicReferenceArray<>(resident);
+        int stored = store.size();
+        int[] height = {Math.max(0, stored - resident)};
+        store.forEach(height[0], block -> recent.set(height[0]++ % resident, block));
+        this.size = stored;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Block get(int height) {
+        if (height < 0 || height >= size) throw new IndexOutOfBoundsException("height " + height);
+        if (store == null) return all[height];
+        Block block = recent.get(height % recent.length());
+        if (block != null && block.index == height) return block;
+        try {
+            return store.read(height);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read block " + height, e);
+        }
+    }
+
+    //   Header fields of the block at height: the resident block itself, or only the header
+    //   decoded from the store (no transactions).
+    public Block header(int height) {
+        if (height < 0 || height >= size) throw new IndexOutOfBoundsException("height " + height);
+        if (store == null) return all[height];
+        Block block = recent.get(height % recent.length());
+        if (block != null && block.index == height) return block;
+        try {
+            return store.readHeader(height);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read block header " + height, e);
+        }
+    }
+
+    //   Drop every block at height >= newSize. A store-backed list must be truncated after its store.
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) throw new IndexOutOfBoundsException("size " + newSize);
+        if (store != null && store.size() != newSize) throw new IllegalStateException("Truncate the store first");
+        size = newSize; // dropped slots are overwritten by the next appends
+    }
+
+    //   Append the next block.
+    @Override
+    public boolean add(Block block) {
+        int height = size;
+        if (store == null) {
+            Block[] blocks = all;
+            if (height == blocks.length) {
+                blocks = Arrays.copyOf(blocks, height * 2);
+                all = blocks;
+            }
+            blocks[height] = block;
+        } else {
+            // The slot being reused must hold a block that is already in the store
+            if (height - store.size() >= recent.length()) throw new IllegalStateException("Block " + height + " is too far ahead of the store");
+            recent.set(height % recent.length(), block);
+        }
+        size = height + 1;
+        return true;
+    }
+
+    //   Read-only view of the first size() blocks as of now.
+    public List<Block> view() {
+        int fixed = size;
+        return new AbstractList<Block>() {
+            @Override
+            public Block get(int height) {
+                if (height >= fixed) throw new IndexOutOfBoundsException("height " + height);
+                return BlockList.this.get(height);
+            }
+
+            @Override
+            public int size() {
+                return fixed;
+            }
+        };
+    }
+}
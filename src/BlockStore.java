@@ -0,0 +1,708 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+
+//   BlockStore is an append-only, crash-tolerant block file:
+//   - blocks.dat: file header, then one record per block: [int length][int crc32][payload]
+//   - blocks.idx: one long per height with the byte offset of that block's record
+//   - Appends are written immediately and fsync'ed in batches of `syncEvery` blocks
+//     (a process crash loses nothing; an OS crash loses at most the unsynced batch)
+//   - blocks.forced holds how many blocks the last fsync covered. On open only the records after
+//     that are checksummed, and a torn or corrupt tail left by a crash is truncated, so opening
+//     costs O(unforced blocks) however long the chain is
+//   - forEach() streams blocks one at a time; read(height) decodes one record straight out of a
+//     memory-mapped window of blocks.dat, so random reads cost no syscall and no heap copy
+//   - blocks.hidx (block hash -> height) and tx.hidx (txId -> height and position) are on-disk
+//     HashIndexes, kept in step with appends and brought up to date on open
+//   - Record payloads are BinaryCodec block encodings (format 4); a file in any other format is
+//     rejected on open
+//   - Pruning (prune()) moves the oldest blocks to pruned.dat in a reduced form (header, Merkle
+//     root and whichever transactions the caller keeps); pruned.dat has the same record layout
+//     and is only ever appended to
+//   - blocks.dat is never shrunk or replaced while open, since a mapped file cannot be on every
+//     platform: truncate() only moves the logical end (a stop marker there keeps recovery from
+//     reading past it), and the pruned blocks stay in blocks.dat until the next open rewrites it
+//     to start at height prunedBelow()
+//   Locking: writers (append, sync, truncate, prune, close) serialize on the store's monitor;
+//   readers (read, readHeader, heightOf, readTransaction, forEach) only take the read side of
+//   `lock`. Writers take its write side just to publish new state (an append's offset and index
+//   entries, a truncate, a prune's new base), never around an fsync, so readers do not wait
+//   behind group commits or the records written by prune()
+public class BlockStore implements Closeable {
+    private static final int MAGIC = 0x424c4b53; // "BLKS"
+    private static final int PRUNED_MAGIC = 0x50524e44; // "PRND"
+    private static final int FORMAT_VERSION = 4;
+    private static final int FILE_HEADER = 8;
+    private static final int RECORD_HEADER = 8;
+    // blocks.dat is mapped in windows of two segments starting at each segment boundary, so any
+    // record up to SEGMENT_SIZE lies inside the window of the segment it starts in
+    private static final long SEGMENT_SIZE = 1L << 26;
+
+    private final Path dataPath;
+    private final Path indexPath;
+    private final Path prunedPath;
+    // blocks.forced: [int count] of blocks known to be on disk; written after each force and only
+    // forced itself when it goes down (truncate), since a stale value just means more checking
+    private final FileChannel forcedMarker;
+    // Reopened when open compacts blocks.dat
+    private FileChannel data;
+    private FileChannel index;
+    // null until the first prune
+    private FileChannel pruned;
+    private final int syncEvery;
+    private final HashIndex blockHashes;
+    private final HashIndex txIds;
+
+    // offsets[h - dataBase] = position of block h's record in blocks.dat
+    private long[] offsets = new long[64];
+    // Volatile: size() is read without the lock while the block writer appends
+    private volatile int count;
+    // Heights below base are read from pruned.dat; prunedOffsets[h] = position of their record there
+    private int base;
+    // Height of the first record in blocks.dat (below base until the next open compacts it)
+    private int dataBase;
+    private long[] prunedOffsets = new long[0];
+    private long prunedEnd;
+    private int unsynced;
+    // Heights below this were forced to disk (as recorded in blocks.forced)
+    private int forced;
+    // End of the last intact record
+    private long dataEnd;
+    // blocks.dat holds records of truncated blocks past dataEnd until the next open cuts them off
+    private boolean staleTail;
+    // windows[s] maps blocks.dat from s * SEGMENT_SIZE; remapped when a read needs bytes past its end.
+    // Copy-on-write under windowLock, since readers map windows concurrently
+    private volatile MappedByteBuffer[] windows = new MappedByteBuffer[0];
+    private final Object windowLock = new Object();
+    // Guards what readers see: offsets, base, dataEnd, the pruned offsets, the data channel and the hash indexes
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //   Open (or create) the store in directory, recovering from any torn tail.
+    public BlockStore(String directory, int syncEvery) throws IOException {
+        if (syncEvery < 1) throw new IllegalArgumentException("syncEvery must be >= 1");
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        this.dataPath = dir.resolve("blocks.dat");
+        this.indexPath = dir.resolve("blocks.idx");
+        this.prunedPath = dir.resolve("pruned.dat");
+        this.syncEvery = syncEvery;
+        this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.forcedMarker = FileChannel.open(dir.resolve("blocks.forced"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (forcedMarker.size() >= 4) {
+            ByteBuffer marker = ByteBuffer.allocate(4);
+            readFully(forcedMarker, marker, 0);
+            forced = marker.getInt(0);
+        }
+        int prunedRecords = 0;
+        if (Files.exists(prunedPath)) {
+            openPruned();
+            prunedRecords = prunedOffsets.length;
+        }
+        recover(prunedRecords);
+        this.blockHashes = HashIndex.open(dir.resolve("blocks.hidx"), 1 << 10);
+        this.txIds = HashIndex.open(dir.resolve("tx.hidx"), 1 << 12);
+        catchUpIndexes();
+    }
+
+    public BlockStore(String directory) throws IOException {
+        this(directory, 8);
+    }
+
+    //   Number of blocks stored.
+    public int size() {
+        return count;
+    }
+
+    //   Bytes of block records in blocks.dat, including the file header.
+    public long dataSize() {
+        lock.readLock().lock();
+        try {
+            return dataEnd;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //   Heights below this are pruned (0 if nothing is).
+    public int prunedBelow() {
+        lock.readLock().lock();
+        try {
+            return base;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //   Append a block as the next height.
+    public synchronized void append(Block block) throws IOException {
+        byte[] payload = encode(block);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length + (staleTail ? 4 : 0));
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        // A stop marker after the record, so recovery never takes a truncated block for the next height
+        if (staleTail) record.putInt(-1);
+        record.flip();
+
+        long offset = dataEnd;
+        writeFully(data, record, offset);
+        // Index entry goes after the record, so an index entry never points past the data
+        writeFully(index, ByteBuffer.allocate(8).putLong(0, offset), (long) (count - dataBase) * 8);
+        lock.writeLock().lock();
+        try {
+            addOffset(offset);
+            dataEnd = offset + RECORD_HEADER + payload.length;
+            indexBlock(block, count - 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (++unsynced >= syncEvery) sync();
+    }
+
+    //   Force all appended blocks to disk. Readers carry on meanwhile.
+    public synchronized void sync() throws IOException {
+        if (unsynced == 0) return;
+        data.force(false);
+        index.force(false);
+        markForced(count, false);
+        blockHashes.sync(count);
+        txIds.sync(count);
+        unsynced = 0;
+    }
+
+    //   Random access to one block by height. Blocks below prunedBelow() come back in their
+    //   pruned form, with `pruned` set.
+    public Block read(int height) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (height < 0 || height >= count) throw new IndexOutOfBoundsException("height " + height);
+            Block block = decode(payload(height), height);
+            block.pruned = height < base;
+            return block;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //   Header fields of one block (no transactions), without decoding its body.
+    public Block readHeader(int height) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (height < 0 || height >= count) throw new IndexOutOfBoundsException("height " + height);
+            Block header = BinaryCodec.readHeader(payload(height));
+            header.pruned = height < base;
+            return header;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed block record " + height, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //   Drop every block at height >= newCount (e.g. to switch to another branch), durably.
+    //   Index entries for the dropped blocks stay behind; lookups confirm them against the records.
+    //   Pruned blocks cannot be dropped. The dropped records stay in blocks.dat behind a stop
+    //   marker until the next open cuts them off, so no file is shrunk while it may be mapped.
+    public synchronized void truncate(int newCount) throws IOException {
+        if (newCount < 0 || newCount > count) throw new IndexOutOfBoundsException("count " + newCount);
+        if (newCount < base) throw new IllegalStateException("Cannot truncate below the pruned height " + base);
+        if (newCount == count) return;
+        lock.writeLock().lock();
+        try {
+            long end = offsets[newCount - dataBase];
+            writeFully(data, ByteBuffer.allocate(4).putInt(0, -1), end);
+            // The mapped windows may cover dropped records that appends will overwrite; map afresh
+            windows = new MappedByteBuffer[0];
+            count = newCount;
+            dataEnd = end;
+            staleTail = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // The stop marker is durable before the index shrinks, or a crash could scan the dropped blocks back in
+        data.force(true);
+        index.truncate((long) (newCount - dataBase) * 8);
+        index.force(true);
+        // Forced before anything is appended at these heights again, or a crash could trust them
+        markForced(newCount, true);
+        unsynced = 0;
+    }
+
+    //   Height of the stored block with this hash, or -1.
+    public int heightOf(String hash) throws IOException {
+        lock.readLock().lock();
+        try {
+            return (int) blockHashes.find(hash, h -> h < count && hash.equals(storedHash((int) h)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //   The stored transaction with this id (only that transaction is decoded), or null. Pruned
+    //   blocks only have the transactions prune() kept.
+    public Transaction readTransaction(String txId) throws IOException {
+        Transaction[] found = new Transaction[1];
+        lock.readLock().lock();
+        try {
+            txIds.find(txId, location -> {
+                int height = (int) (location >>> 32);
+                if (height >= count) return false;
+                // Positions in a pruned block no longer match the index
+                Transaction tx = height < base ? prunedTransaction(height, txId) : storedTransaction(height, (int) location);
+                if (tx == null || !txId.equals(tx.transactionId)) return false;
+                found[0] = tx;
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found[0];
+    }
+
+    //   Stream every stored block in height order, one at a time.
+    public void forEach(Consumer<Block> action) throws IOException {
+        forEach(0, action);
+    }
+
+    //   Stream the stored blocks from fromHeight upwards, one at a time (pruned ones as read() returns them).
+    public void forEach(int fromHeight, Consumer<Block> action) throws IOException {
+        int h = Math.max(0, fromHeight);
+        for (; h < prunedBelow(); h++) action.accept(read(h));
+        int total;
+        long start;
+        InputStream file;
+        lock.readLock().lock();
+        try {
+            h = Math.max(h, base);
+            total = count;
+            start = h < count ? offsets[h - dataBase] : dataEnd;
+            file = Files.newInputStream(dataPath);
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            in.skipNBytes(start);
+            for (; h < total; h++) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                action.accept(decode(ByteBuffer.wrap(verified(payload, checksum, h)), h));
+            }
+        }
+    }
+
+    //   Keep only a pruned form of every block below newBase: pruner maps each stored block to what
+    //   is kept of it (see Block.pruned). The pruned records are appended to pruned.dat and forced,
+    //   then readers switch to them; blocks.dat keeps the full records until the next open rewrites
+    //   it without them, and a crash before that just leaves the rewrite to the open after it.
+    //   Returns the bytes that rewrite reclaims, less what pruned.dat grew by.
+    public synchronized long prune(int newBase, UnaryOperator<Block> pruner) throws IOException {
+        if (newBase > count) throw new IndexOutOfBoundsException("height " + newBase);
+        if (newBase <= base) return 0;
+        sync();
+        if (pruned == null) openPruned();
+        long prunedBefore = prunedEnd;
+        long[] newPrunedOffsets = Arrays.copyOf(prunedOffsets, newBase);
+        long newPrunedEnd = prunedEnd;
+        for (int h = base; h < newBase; h++) {
+            byte[] payload = encode(pruner.apply(read(h)));
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            writeFully(pruned, record, newPrunedEnd);
+            newPrunedOffsets[h] = newPrunedEnd;
+            newPrunedEnd += RECORD_HEADER + payload.length;
+        }
+        pruned.force(true);
+
+        long dropped = offsets[newBase - dataBase] - offsets[base - dataBase];
+        lock.writeLock().lock();
+        try {
+            base = newBase;
+            prunedOffsets = newPrunedOffsets;
+            prunedEnd = newPrunedEnd;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return dropped - (prunedEnd - prunedBefore);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        lock.writeLock().lock();
+        try {
+            blockHashes.sync(count);
+            txIds.sync(count);
+            blockHashes.close();
+            txIds.close();
+            data.close();
+            index.close();
+            forcedMarker.close();
+            if (pruned != null) pruned.close();
+            windows = new MappedByteBuffer[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Record that every block below `height` is on disk.
+    private void markForced(int height, boolean force) throws IOException {
+        forced = height;
+        writeFully(forcedMarker, ByteBuffer.allocate(4).putInt(0, height), 0);
+        if (force) forcedMarker.force(false);
+    }
+
+    // Index every block appended since the indexes were last synced (all of them for a new or
+    // damaged index). Entries left behind by a truncated tail are harmless: lookups confirm them.
+    private void catchUpIndexes() throws IOException {
+        int from = Math.min(count, Math.min(blockHashes.covered(), txIds.covered()));
+        if (from == count) return;
+        for (int h = from; h < count; h++) indexBlock(read(h), h);
+        blockHashes.sync(count);
+        txIds.sync(count);
+    }
+
+    private void indexBlock(Block block, int height) throws IOException {
+        blockHashes.put(block.hash, height);
+        for (int i = 0; i < block.transactions.size(); i++) {
+            txIds.put(block.transactions.get(i).transactionId, ((long) height << 32) | i);
+        }
+    }
+
+    private String storedHash(int height) {
+        try {
+            return BinaryCodec.readBlockHash(payload(height));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            throw new UncheckedIOException(new IOException("Malformed block record " + height, e));
+        }
+    }
+
+    private Transaction storedTransaction(int height, int position) {
+        try {
+            return BinaryCodec.readBlockTransaction(payload(height), position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (IllegalArgumentException e) {
+            throw new UncheckedIOException(new IOException("Malformed block record " + height, e));
+        }
+    }
+
+    private Transaction prunedTransaction(int height, String txId) {
+        try {
+            for (Transaction tx : decode(payload(height), height).transactions) {
+                if (tx.transactionId.equals(txId)) return tx;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Checksum-verified payload of block `height`, read through the mapped window (pruned blocks
+    // are read from pruned.dat onto the heap).
+    private ByteBuffer payload(int height) throws IOException {
+        if (height < base) return prunedPayload(height);
+        long offset = offsets[height - dataBase];
+        long end = height + 1 < count ? offsets[height + 1 - dataBase] : dataEnd;
+        ByteBuffer record = mapped(offset, (int) (end - offset));
+        int length = record.getInt(0);
+        if (length != record.capacity() - RECORD_HEADER) throw new IOException("Corrupt record length in block " + height);
+        ByteBuffer payload = record.slice(RECORD_HEADER, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != record.getInt(4)) throw new IOException("Checksum mismatch in block " + height);
+        return payload;
+    }
+
+    private ByteBuffer prunedPayload(int height) throws IOException {
+        long offset = prunedOffsets[height];
+        long end = height + 1 < base ? prunedOffsets[height + 1] : prunedEnd;
+        ByteBuffer record = ByteBuffer.allocate((int) (end - offset));
+        readFully(pruned, record, offset);
+        byte[] payload = Arrays.copyOfRange(record.array(), RECORD_HEADER, record.capacity());
+        if (record.getInt(0) != payload.length) throw new IOException("Corrupt record length in pruned block " + height);
+        return ByteBuffer.wrap(verified(payload, record.getInt(4), height));
+    }
+
+    // Open pruned.dat (creating it if needed) and find its records. Records that do not fit in the
+    // file are a torn tail; settlePruned() checks the ones blocks.dat still holds.
+    private void openPruned() throws IOException {
+        pruned = FileChannel.open(prunedPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = pruned.size();
+        if (size < FILE_HEADER) {
+            writeFully(pruned, ByteBuffer.allocate(FILE_HEADER).putInt(PRUNED_MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+            pruned.truncate(FILE_HEADER);
+            pruned.force(true);
+            prunedEnd = FILE_HEADER;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(pruned, header, 0);
+        if (header.getInt(0) != PRUNED_MAGIC) throw new IOException("Not a pruned block file: " + prunedPath);
+        if (header.getInt(4) != FORMAT_VERSION) throw new IOException("Unsupported pruned block file version " + header.getInt(4));
+        long[] found = new long[64];
+        int n = 0;
+        long next = FILE_HEADER;
+        while (true) {
+            long end = recordEnd(pruned, next, size);
+            if (end < 0) break;
+            if (n == found.length) found = Arrays.copyOf(found, n * 2);
+            found[n++] = next;
+            next = end;
+        }
+        prunedOffsets = Arrays.copyOf(found, n);
+        prunedEnd = next;
+    }
+
+    // The bytes [offset, offset + length) of blocks.dat, as a view into a mapped window; records
+    // larger than a segment are copied to the heap instead. Caller holds the read lock.
+    private ByteBuffer mapped(long offset, int length) throws IOException {
+        if (length > SEGMENT_SIZE) {
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            readFully(data, copy, offset);
+            return copy.flip();
+        }
+        int segment = (int) (offset / SEGMENT_SIZE);
+        long start = segment * SEGMENT_SIZE;
+        MappedByteBuffer window = window(windows, segment, offset + length);
+        if (window == null) {
+            synchronized (windowLock) {
+                // Another reader may have mapped it meanwhile
+                window = window(windows, segment, offset + length);
+                if (window == null) {
+                    window = data.map(FileChannel.MapMode.READ_ONLY, start, Math.min(2 * SEGMENT_SIZE, dataEnd - start));
+                    MappedByteBuffer[] updated = Arrays.copyOf(windows, Math.max(windows.length, segment + 1));
+                    updated[segment] = window;
+                    windows = updated;
+                }
+            }
+        }
+        return window.slice((int) (offset - start), length);
+    }
+
+    // The mapped window of segment if it reaches end, else null.
+    private static MappedByteBuffer window(MappedByteBuffer[] windows, int segment, long end) {
+        MappedByteBuffer window = segment < windows.length ? windows[segment] : null;
+        return window != null && end <= segment * SEGMENT_SIZE + window.capacity() ? window : null;
+    }
+
+    // Validate the file header, reconcile the index with the data file, drop any torn tail and
+    // finish a prune whose blocks are still in blocks.dat. blocks.dat starts at the height of its
+    // first record (prunedRecords if it has none).
+    private void recover(int prunedRecords) throws IOException {
+        dataBase = prunedRecords;
+        count = dataBase;
+        long dataSize = data.size();
+        if (dataSize < FILE_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(FORMAT_VERSION);
+            header.flip();
+            data.truncate(0);
+            writeFully(data, header, 0);
+            index.truncate(0);
+            data.force(true);
+            index.force(true);
+            dataEnd = FILE_HEADER;
+            markForced(dataBase, true);
+            settlePruned();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        readFully(data, header, 0);
+        if (header.getInt(0) != MAGIC) throw new IOException("Not a block store: " + dataPath);
+        if (header.getInt(4) != FORMAT_VERSION) throw new IOException("Unsupported block store version " + header.getInt(4));
+        if (recordEnd(data, FILE_HEADER, dataSize) >= 0 && checksumMatches(data, FILE_HEADER)) {
+            dataBase = firstHeight();
+            count = dataBase;
+        }
+        if (prunedOffsets.length < dataBase) {
+            throw new IOException("pruned.dat has " + prunedOffsets.length + " blocks, blocks.dat starts at height " + dataBase);
+        }
+
+        // Trust index entries that point inside the data file; the rest are re-derived by scanning
+        int indexed = (int) (index.size() / 8);
+        ByteBuffer idx = ByteBuffer.allocate(indexed * 8);
+        readFully(index, idx, 0);
+        long next = FILE_HEADER;
+        for (int i = 0; i < indexed; i++) {
+            long offset = idx.getLong(i * 8);
+            if (offset != next) break;
+            long end = recordEnd(data, offset, dataSize);
+            if (end < 0) break;
+            addOffset(offset);
+            next = end;
+        }
+
+        // Only blocks appended after the last force can be partially on disk: re-check their checksums
+        int records = count - dataBase;
+        for (int i = Math.max(0, Math.min(forced, count) - dataBase); i < records; i++) {
+            if (!checksumMatches(data, offsets[i])) {
+                next = offsets[i];
+                count = dataBase + i;
+                break;
+            }
+        }
+
+        // Scan forward for complete records appended after the last index entry (a truncate's stop
+        // marker ends the scan)
+        while (true) {
+            long end = recordEnd(data, next, dataSize);
+            if (end < 0 || !checksumMatches(data, next)) break;
+            addOffset(next);
+            next = end;
+        }
+
+        dataEnd = next;
+        records = count - dataBase;
+        if (forced > count) markForced(count, true); // the marker outlived the blocks it counted
+        if (next < dataSize || records != indexed) {
+            if (next < dataSize) data.truncate(next);
+            writeIndex();
+            data.force(true);
+            markForced(count, true);
+        }
+        settlePruned();
+        if (base > dataBase) compact();
+    }
+
+    // pruned.dat must hold every height below blocks.dat's first. The records after that are from
+    // a prune() whose blocks blocks.dat still holds: they count up to the first torn one, and base
+    // is where they end. Any torn tail is dropped.
+    private void settlePruned() throws IOException {
+        int kept = dataBase;
+        while (kept < prunedOffsets.length && kept < count && checksumMatches(pruned, prunedOffsets[kept])) kept++;
+        base = kept;
+        if (pruned == null || kept == prunedOffsets.length && prunedEnd == pruned.size()) return;
+        if (kept < prunedOffsets.length) prunedEnd = prunedOffsets[kept];
+        prunedOffsets = Arrays.copyOf(prunedOffsets, kept);
+        pruned.truncate(prunedEnd);
+        pruned.force(true);
+    }
+
+    // Rewrite blocks.dat from height base, dropping the records prune() moved to pruned.dat. Only
+    // run on open, before anything maps blocks.dat; the rename is atomic, so a crash leaves either
+    // file, and a crash before the index is rewritten is repaired by the next recover().
+    private void compact() throws IOException {
+        long from = offsets[base - dataBase];
+        long shift = from - FILE_HEADER;
+        Path tmp = dataPath.resolveSibling(dataPath.getFileName() + ".prune");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(FILE_HEADER).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+            out.position(FILE_HEADER);
+            for (long position = from; position < dataEnd; ) position += data.transferTo(position, dataEnd - position, out);
+            out.force(true);
+        }
+        data.close();
+        Files.move(tmp, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int kept = count - base;
+        long[] shifted = new long[Math.max(64, kept)];
+        for (int i = 0; i < kept; i++) shifted[i] = offsets[i + base - dataBase] - shift;
+        offsets = shifted;
+        dataBase = base;
+        dataEnd -= shift;
+        writeIndex();
+    }
+
+    // Rewrite blocks.idx from offsets.
+    private void writeIndex() throws IOException {
+        int records = count - dataBase;
+        index.truncate(0);
+        ByteBuffer rebuilt = ByteBuffer.allocate(records * 8);
+        for (int i = 0; i < records; i++) rebuilt.putLong(offsets[i]);
+        writeFully(index, rebuilt.flip(), 0);
+        index.force(true);
+    }
+
+    // Height of the first record in blocks.dat (known to be intact).
+    private int firstHeight() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(data, header, FILE_HEADER);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+        readFully(data, payload, FILE_HEADER + RECORD_HEADER);
+        try {
+            return BinaryCodec.readHeader(payload.flip()).index;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed first block record", e);
+        }
+    }
+
+    // End offset of the record starting at offset, or -1 if it does not fit in the file.
+    private static long recordEnd(FileChannel ch, long offset, long size) throws IOException {
+        if (offset + RECORD_HEADER > size) return -1;
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(ch, header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || offset + RECORD_HEADER + length > size) return -1;
+        return offset + RECORD_HEADER + length;
+    }
+
+    private static boolean checksumMatches(FileChannel ch, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(ch, header, offset);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+        readFully(ch, payload, offset + RECORD_HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == header.getInt(4);
+    }
+
+    private static byte[] verified(byte[] payload, int checksum, int height) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) throw new IOException("Checksum mismatch in block " + height);
+        return payload;
+    }
+
+    private void addOffset(long offset) {
+        int i = count - dataBase;
+        if (i == offsets.length) offsets = Arrays.copyOf(offsets, i * 2);
+        offsets[i] = offset;
+        count++;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) position += ch.write(buf, position);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+        }
+    }
+
+    // Record payload: the block's canonical binary encoding.
+    private static byte[] encode(Block block) {
+        return BinaryCodec.encode(block);
+    }
+
+    private static Block decode(ByteBuffer payload, int height) throws IOException {
+        try {
+            return BinaryCodec.readBlock(payload);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed block record " + height, e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+
+//   BlockTree holds the blocks that are known but not on the main chain: side branches received
+//   from peers, and blocks disconnected by a reorg (so the node can switch back to them).
+//   - Blocks are indexed by hash, with parent -> children links so an invalid block can be
+//     dropped together with everything built on it
+//   - The main chain itself stays in the BlockList / BlockStore; a side block's branch is found
+//     by following previousHash until it reaches a block on the main chain
+//   - Kept in memory and bounded: at most maxBlocks blocks, and the owner prunes blocks too far
+//     below the tip to be reorganized to cheaply. Pruned blocks can be fetched again from peers
+//   Not thread-safe; Blockchain only touches it under its exclusive lock.
+public final class BlockTree {
+    public static final int DEFAULT_MAX_BLOCKS = 1 << 16;
+
+    private final int maxBlocks;
+    private final Map<String, Block> blocks = new HashMap<>();
+    private final Map<String, List<String>> children = new HashMap<>();
+
+    public BlockTree() {
+        this(DEFAULT_MAX_BLOCKS);
+    }
+
+    public BlockTree(int maxBlocks) {
+        if (maxBlocks < 1) throw new IllegalArgumentException("maxBlocks must be >= 1");
+        this.maxBlocks = maxBlocks;
+    }
+
+    //   Add a side block; returns false if the tree is full (already known blocks count as added).
+    public boolean add(Block block) {
+        if (blocks.containsKey(block.hash)) return true;
+        if (blocks.size() >= maxBlocks) return false;
+        blocks.put(block.hash, block);
+        children.computeIfAbsent(block.previousHash, k -> new ArrayList<>()).add(block.hash);
+        return true;
+    }
+
+    public Block get(String hash) {
+        return blocks.get(hash);
+    }
+
+    public boolean contains(String hash) {
+        return blocks.containsKey(hash);
+    }
+
+    public int size() {
+        return blocks.size();
+    }
+
+    public boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+
+    //   Remove one block, e.g. because it joined the main chain; its children stay.
+    public void remove(String hash) {
+        Block block = blocks.remove(hash);
+        if (block == null) return;
+        List<String> siblings = children.get(block.previousHash);
+        if (siblings != null) {
+            siblings.remove(hash);
+            if (siblings.isEmpty()) children.remove(block.previousHash);
+        }
+    }
+
+    //   Remove a block and every block built on it (an invalid block taints its descendants).
+    public void removeWithDescendants(String hash) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(hash);
+        while (!pending.isEmpty()) {
+            String h = pending.pop();
+            List<String> below = children.get(h);
+            if (below != null) pending.addAll(below);
+            remove(h);
+        }
+    }
+
+    //   Drop every block below minHeight.
+    public void pruneBelow(int minHeight) {
+        List<String> old = new ArrayList<>();
+        for (Block block : blocks.values()) {
+            if (block.index < minHeight) old.add(block.hash);
+        }
+        for (String hash : old) remove(hash);
+    }
+}
@@ -0,0 +1,231 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+//   BlockWriter is the write-behind persistence stage of a store-backed Blockchain:
+//   - Connecting a block only enqueues it with its undo data (the outputs it spent) in a bounded
+//     queue; a background thread appends them to the BlockStore and UndoLog, so mining and
+//     validation never wait for the disk. A full queue blocks the producer (backpressure)
+//   - The writer takes everything queued (up to MAX_BATCH blocks) as one group commit: all
+//     appends, then a single force of the store and the undo log, as the Durability policy says
+//   - The writer also indexes each stored block into the AddressIndex; the index is forced with
+//     the UTXO snapshots and on close (the owner re-indexes blocks stored after that on open)
+//   - UTXO snapshots are taken by the writer too, once every queued block has been forced, so a
+//     snapshot is never ahead of the durable chain
+//   - Crash recovery needs nothing extra: BlockStore and UndoLog drop torn tails on open, and the
+//     UTXO set is rebuilt from the last snapshot plus the blocks durably written after it
+//   enqueue() must be called by one thread at a time (Blockchain holds its exclusive lock).
+public final class BlockWriter implements Closeable {
+
+    //   When appended blocks are forced to disk.
+    public enum Durability {
+        OS,            // left to the OS; forced only by flush(), snapshots and close(). Survives a
+                       // process crash, but a power loss can drop the last blocks
+        GROUP_COMMIT,  // forced after every batch: at most the queued blocks are lost
+        SYNC           // forced after every batch, and enqueue() waits for it (adds disk I/O to mining)
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int MAX_BATCH = 64;
+
+    // One block and its undo data, numbered in enqueue order
+    private static final class Write {
+        final Block block;
+        final Map<OutPoint, Transaction.TxOutput> undo;
+        final long sequence;
+
+        Write(Block block, Map<OutPoint, Transaction.TxOutput> undo, long sequence) {
+            this.block = block;
+            this.undo = undo;
+            this.sequence = sequence;
+        }
+    }
+
+    private final BlockStore store;
+    private final UndoLog undoLog;
+    private final AddressIndex history;
+    private final Durability durability;
+    private final NodeMetrics metrics;
+    private final BooleanSupplier snapshotter;
+    private final ArrayBlockingQueue<Write> queue;
+    private final Thread thread;
+
+    // Guarded by this: last sequence enqueued, appended and forced
+    private long enqueued;
+    private long written;
+    private long durable;
+    private IOException failure;
+
+    private volatile boolean snapshotRequested;
+    private volatile boolean closed;
+
+    //   Start the writer thread. snapshotter is called on the writer thread after a requested
+    //   snapshot's blocks are durable; it returns false to be retried later (e.g. lock busy).
+    public BlockWriter(BlockStore store, UndoLog undoLog, AddressIndex history, Durability durability, int capacity,
+                       NodeMetrics metrics, BooleanSupplier snapshotter) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.store = store;
+        this.undoLog = undoLog;
+        this.history = history;
+        this.durability = durability;
+        this.metrics = metrics;
+        this.snapshotter = snapshotter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "block-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //   Queue a connected block and its undo data for writing; blocks while the queue is full.
+    //   Throws if an earlier write failed (the node can no longer persist blocks).
+    public void enqueue(Block block, Map<OutPoint, Transaction.TxOutput> undo) throws IOException {
+        long sequence;
+        synchronized (this) {
+            checkFailure();
+            if (closed) throw new IOException("Block writer is closed");
+            sequence = ++enqueued;
+        }
+        try {
+            queue.put(new Write(block, undo, sequence));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing block " + block.index);
+        }
+        if (durability == Durability.SYNC) await(sequence, true);
+    }
+
+    //   Take a UTXO snapshot once everything queued so far is durable.
+    public void requestSnapshot() {
+        snapshotRequested = true;
+    }
+
+    //   Blocks queued but not yet appended.
+    public int pending() {
+        return queue.size();
+    }
+
+    //   Wait until every queued block is appended, then force the store and the undo log.
+    public void flush() throws IOException {
+        long target;
+        synchronized (this) {
+            target = enqueued;
+        }
+        await(target, false);
+        store.sync();
+        undoLog.sync();
+        synchronized (this) {
+            durable = Math.max(durable, target);
+        }
+    }
+
+    //   Write out everything queued, force it and stop the writer thread.
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the block writer");
+        }
+        synchronized (this) {
+            checkFailure();
+        }
+        store.sync();
+        undoLog.sync();
+        history.sync();
+    }
+
+    private void run() {
+        List<Write> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed && queue.isEmpty()) return;
+                    if (snapshotRequested) snapshot();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                commit(batch);
+                batch.clear();
+                if (snapshotRequested && queue.isEmpty()) snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                failure = e instanceof IOException ? (IOException) e : new IOException("Block writer failed", e);
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new InterruptedIOException("Block writer interrupted");
+                notifyAll();
+            }
+        }
+    }
+
+    // One group commit: append every block and its undo data, then force once (per policy).
+    private void commit(List<Write> batch) throws IOException {
+        long started = System.nanoTime();
+        long sizeBefore = store.dataSize();
+        for (Write write : batch) {
+            long appendStarted = System.nanoTime();
+            long appendSize = store.dataSize();
+            store.append(write.block);
+            undoLog.append(write.block.index, write.undo);
+            history.addBlock(write.block, write.undo::get);
+            metrics.recordStorage(NodeMetrics.Storage.BLOCK_WRITE, store.dataSize() - appendSize, System.nanoTime() - appendStarted);
+        }
+        boolean force = durability != Durability.OS;
+        if (force) {
+            store.sync();
+            undoLog.sync();
+        }
+        metrics.recordStorage(NodeMetrics.Storage.BLOCK_COMMIT, store.dataSize() - sizeBefore, System.nanoTime() - started);
+        long last = batch.get(batch.size() - 1).sequence;
+        synchronized (this) {
+            written = last;
+            if (force) durable = last;
+            notifyAll();
+        }
+    }
+
+    // Force what has been written and let the owner snapshot its UTXO set.
+    private void snapshot() throws IOException {
+        store.sync();
+        undoLog.sync();
+        history.sync();
+        synchronized (this) {
+            durable = written;
+        }
+        if (snapshotter.getAsBoolean()) snapshotRequested = false;
+    }
+
+    // Wait until `sequence` is appended (or forced, if durable), or the writer fails.
+    private synchronized void await(long sequence, boolean mustBeDurable) throws IOException {
+        boolean interrupted = false;
+        while ((mustBeDurable ? durable : written) < sequence) {
+            checkFailure();
+            if (!thread.isAlive()) throw new IOException("Block writer stopped");
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) throw new IOException("Block writer failed: " + failure.getMessage(), failure);
+    }
+}
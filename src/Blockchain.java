@@ -1,240 +1,1145 @@
 //Name: On Tuan Huy
 //sID: s4028018
 
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.io.*;
+import java.nio.file.*;
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
 
 //   Blockchain manages:
-//   - The chain (list of blocks)
-//   - A mempool (pending transactions)
+//   - The chain (a BlockList: for store-backed chains only recent blocks stay on the heap)
+//   - A fee-priority mempool (pending transactions)
 //   - Mining parameters (difficulty, reward)
 //   - A UTXO set for validation and balance calculation
 //  
 //   Features:
 //   - Genesis block creation with a coinbase to "genesis"
-//   - Transaction validation via UTXOSet before adding to mempool
-//   - Mining: prepend coinbase, validate txs in order, build block, PoW, and apply
-//   - Persistence via JSON (Gson)
-//   - Balance checking by scanning a reconstructed UTXO snapshot
-//   - Chain validation (hash linkage and PoW rule)
+//   - Transaction validation against confirmed and pending outputs before adding to mempool
+//   - Mining: pick the best fee-rate txs, prepend a coinbase paying reward + fees, build block, PoW, and apply
+//   - Persistence via an append-only BlockStore (one record per mined block), with JSON (Gson) import/export.
+//     Blocks are written behind by a BlockWriter (bounded queue, group commits, a Durability
+//     policy), so connecting a block never waits for the disk
+//   - Ed25519 ownership: the node Wallet signs spends and locks new outputs to the receiver's key;
+//     validation checks every input's signature (in parallel, with a verified-signature cache)
+//   - Balance checking via the UTXO set's per-address index
+//   - Random access to history: getBlock(height), getBlockByHash and getTransaction go through the
+//     block store's on-disk hash and tx-id indexes
+//   - Address history (AddressIndex): every address's transactions, newest first, in cursor
+//     pages; indexed as blocks connect (by the block writer for store-backed chains)
+//   - Chain validation (hash linkage, PoW rule, transaction ids and UTXO replay)
+//   - Runtime metrics (NodeMetrics): mining, block validation, mempool admission and storage,
+//     exposed over JMX once registered and as JFR events while a flight recording runs
+//   - Sync support for PeerNode: block locators, header ranges and connecting a peer's blocks
+//   - Forks: blocks that do not extend the tip wait in a BlockTree; once a branch has more work the
+//     node reorganizes to it using per-block undo data (UndoLog), disconnecting back to the fork
+//     point and connecting the branch in time proportional to the reorg depth. Transactions of the
+//     disconnected blocks go back to the mempool
+//   - Pruned mode (pruneDepth): blocks deeper than pruneDepth keep only their header, Merkle root
+//     and the transactions with unspent outputs; validation and UTXO rebuilds start from a UTXO
+//     checkpoint at the pruned height instead of genesis
+//
+//   Thread safety:
+//   - Reads (getLatestBlock, getChain, checkBalance) are lock-free, served from an immutable
+//     ChainSnapshot that is republished after every connected block
+//   - Transaction admission holds the shared state lock, so many threads admit concurrently
+//     (the mempool serializes only txs that touch the same outpoints)
+//   - Mining builds its template under the shared lock, runs PoW with no lock held and only takes
+//     the exclusive lock to connect the finished block
 public class Blockchain {
 
-    public List<Block> chain;
-    public List<Transaction> pendingTransactions;
-    public int difficulty = 3;
+    // Owned by this Blockchain and only mutated under the exclusive lock; use getChain() to read
+    public BlockList chain;
+    public final Mempool mempool = new Mempool();
+    public int difficultyBits = 12; // leading zero bits required (12 bits = 3 hex '0's)
     public double miningReward = 10.0;
+    public int maxBlockTransactions = 5000; // excluding the coinbase
 
-    private final UTXOSet utxo = new UTXOSet();
+    // How createSpend picks inputs, and the smallest change output it creates (smaller change is
+    // left to the miner as fee)
+    public CoinSelector coinSelector = CoinSelector.standard();
+    public double dustThreshold = 0.00001;
+
+    private final UTXOSet utxo;
+
+    // Keys of the addresses this node spends from and pays to; file-backed for store-backed chains
+    private final Wallet wallet;
+
+    // Parallel PoW engine; one worker per core
+    private final Miner miner = new Miner();
+
+    // Counters and histograms for this node; see NodeMetrics.register() for JMX
+    public final NodeMetrics metrics;
+
+    // Append-only block storage and its write-behind stage; null for a purely in-memory / JSON chain
+    private BlockStore store;
+    private BlockWriter blockWriter;
+
+    // UTXO snapshot file next to the block store, rewritten every snapshotInterval blocks
+    private Path snapshotPath;
+    private int snapshotHeight = -1;
+    public int snapshotInterval = 1000;
+
+    //   Pruned mode for store-backed chains: after each UTXO snapshot, blocks more than pruneDepth
+    //   below the tip are pruned (see BlockStore.prune) and stop being served to peers;
+    //   getTransaction no longer finds transactions whose outputs were all spent by then.
+    //   0 keeps every block; values below UndoLog.DEFAULT_DEPTH count as that, so reorgs still
+    //   find full blocks. Pruning cannot be undone.
+    public int pruneDepth = 0;
+
+    // UTXO set as of the highest pruned block (-1: none yet), rolled forward by every pruning pass
+    private Path checkpointPath;
+    private volatile int checkpointHeight = -1;
+
+    // Outputs spent by each of the last UndoLog.DEFAULT_DEPTH blocks (undo/ next to the block store)
+    private UndoLog undoLog = new UndoLog(UndoLog.DEFAULT_DEPTH);
+
+    // Transactions per address (history.dat next to the block store)
+    private AddressIndex history = new AddressIndex();
+
+    // Known blocks that are not on the main chain
+    private final BlockTree blockTree = new BlockTree();
+
+    // Fixed by the chain this node was created with, stored or imported (see pinChainStart()):
+    // - genesisHash: blocks and headers at height 0 must have it, so peers cannot replace genesis
+    //   (whose coinbase is unbounded and which has no proof of work)
+    // - legacyHeight: number of leading legacy (version 0) blocks; a legacy block from a peer is
+    //   only accepted below it, since legacy coinbases do not commit to their height and could
+    //   repeat an earlier coinbase's id
+    private String genesisHash;
+    private int legacyHeight;
+
+    // Shared for admission and template building, exclusive for connecting blocks
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    // Published read state: latest snapshot plus the versioned balances it reads from
+    private volatile ChainSnapshot snapshot;
+    private long snapshotVersion;
+
+    // Runs background mining jobs one at a time
+    private ExecutorService miningExecutor;
 
     //   Initialize a new blockchain with a genesis block and build UTXO from it.
     public Blockchain() {
-        chain = new ArrayList<>();
-        pendingTransactions = new ArrayList<>();
-        chain.add(createGenesisBlock());
-        // Build UTXO from genesis
-        utxo.rebuildFromChain(chain);
+        this(new HashMapOutputStore());
+    }
+
+    //   Same, with a specific UTXO storage backend (e.g. CompactOutputStore for very large sets).
+    public Blockchain(OutputStore utxoStore) {
+        this(utxoStore, true, new Wallet());
+    }
+
+    private Blockchain(OutputStore utxoStore, boolean withGenesis, Wallet wallet) {
+        this.wallet = wallet;
+        utxo = new UTXOSet(utxoStore);
+        metrics = new NodeMetrics(mempool::size, utxo::size, () -> snapshot == null ? -1 : snapshot.height,
+                () -> blockWriter == null ? 0 : blockWriter.pending());
+        chain = new BlockList();
+        if (withGenesis) {
+            chain.add(createGenesisBlock());
+            // Build UTXO from genesis
+            utxo.rebuildFromChain(chain);
+            try {
+                indexHistory(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // in memory
+            }
+            pinChainStart();
+            publishFullSnapshot();
+        }
+    }
+
+    //   Open a blockchain backed by an append-only BlockStore in directory.
+    //   - Non-empty store: load the latest UTXO snapshot, then stream only the blocks above the
+    //     snapshot height into the UTXO set; if the snapshot's tip hash does not match the stored
+    //     block at that height, fall back to a full replay
+    //   - Either way only the last BlockList.DEFAULT_RESIDENT blocks are kept on the heap
+    //   - Empty store: import importJson if it exists (else start from a new genesis) and write it to the store
+    //   The node's keys live in wallet.keys in the same directory. New blocks are forced to disk
+    //   once per group commit (BlockWriter.Durability.GROUP_COMMIT).
+    public static Blockchain openBlockchain(String directory, String importJson) throws IOException {
+        return openBlockchain(directory, importJson, BlockWriter.Durability.GROUP_COMMIT);
+    }
+
+    //   Same, with a specific durability policy for newly connected blocks.
+    public static Blockchain openBlockchain(String directory, String importJson, BlockWriter.Durability durability) throws IOException {
+        long started = System.nanoTime();
+        // The block writer decides when to force
+        BlockStore store = new BlockStore(directory, Integer.MAX_VALUE);
+        Wallet wallet = Wallet.open(Paths.get(directory, "wallet.keys"));
+        Blockchain blockchain;
+        Path snapshotPath = Paths.get(directory, "utxo.snapshot");
+        Path checkpointPath = Paths.get(directory, "utxo.checkpoint");
+        if (store.size() > 0) {
+            blockchain = new Blockchain(new HashMapOutputStore(), false, wallet);
+            blockchain.chain = new BlockList(store, BlockList.DEFAULT_RESIDENT);
+            blockchain.checkpointPath = checkpointPath;
+            UTXOSet.SnapshotTag checkpoint = UTXOSet.readSnapshotTag(checkpointPath);
+            blockchain.checkpointHeight = checkpoint == null ? -1 : checkpoint.height;
+            if (blockchain.checkpointHeight < store.prunedBelow() - 1) {
+                throw new IOException("Pruned block store " + directory + " has no UTXO checkpoint at or above height " + (store.prunedBelow() - 1));
+            }
+            long loadStarted = System.nanoTime();
+            UTXOSet.SnapshotTag tag = blockchain.utxo.loadSnapshot(snapshotPath);
+            if (tag != null) {
+                blockchain.metrics.recordStorage(NodeMetrics.Storage.UTXO_SNAPSHOT_LOAD, Files.size(snapshotPath), System.nanoTime() - loadStarted);
+            }
+            if (tag == null || tag.height >= store.size() || tag.height < blockchain.checkpointHeight) {
+                blockchain.rebuildUtxo(); // no snapshot, it is ahead of the store or behind the pruned blocks
+            } else if (!blockchain.chain.get(tag.height).hash.equals(tag.tipHash)) {
+                blockchain.metrics.recordWarning(NodeMetrics.Warning.SNAPSHOT_MISMATCH, "UTXO snapshot does not match the stored chain, replaying from "
+                        + (blockchain.checkpointHeight < 0 ? "genesis" : "the UTXO checkpoint"));
+                blockchain.rebuildUtxo();
+            } else {
+                store.forEach(tag.height + 1, block -> blockchain.utxo.applyBlock(block, block.transactions));
+                blockchain.snapshotHeight = tag.height;
+            }
+        } else {
+            blockchain = importJson != null && new File(importJson).exists()
+                    ? loadBlockchain(importJson, wallet)
+                    : new Blockchain(new HashMapOutputStore(), true, wallet);
+            for (Block b : blockchain.chain) {
+                store.append(b);
+            }
+            store.sync();
+            blockchain.chain = new BlockList(store, BlockList.DEFAULT_RESIDENT);
+            blockchain.checkpointPath = checkpointPath;
+        }
+        blockchain.store = store;
+        blockchain.snapshotPath = snapshotPath;
+        blockchain.undoLog = new UndoLog(Paths.get(directory, "undo"), UndoLog.DEFAULT_DEPTH, Integer.MAX_VALUE);
+        blockchain.undoLog.truncate(store.size()); // records past the stored tip are from a torn write
+        blockchain.history = new AddressIndex(Paths.get(directory));
+        // Entries past the stored tip are from blocks lost in a crash; index what is missing
+        blockchain.history.truncate(store.size());
+        blockchain.indexHistory(Math.max(blockchain.history.covered(), store.prunedBelow()));
+        blockchain.history.sync();
+        blockchain.blockWriter = new BlockWriter(store, blockchain.undoLog, blockchain.history, durability, BlockWriter.DEFAULT_CAPACITY,
+                blockchain.metrics, blockchain::snapshotBehind);
+        blockchain.pinChainStart();
+        blockchain.publishFullSnapshot();
+        blockchain.metrics.recordStorage(NodeMetrics.Storage.CHAIN_LOAD, store.dataSize(), System.nanoTime() - started);
+        return blockchain;
+    }
+
+    //   Stop background mining, then write out queued blocks and close the block store, if any,
+    //   writing a final UTXO snapshot.
+    public void close() throws IOException {
+        cancelMining();
+        metrics.unregister();
+        synchronized (this) {
+            if (miningExecutor != null) {
+                miningExecutor.shutdown();
+                try {
+                    miningExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        stateLock.writeLock().lock();
+        try {
+            if (blockWriter != null) blockWriter.close();
+            undoLog.close();
+            history.close();
+            if (store != null) {
+                store.close();
+                writeUtxoSnapshot();
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Called on the block writer's thread once every queued block is durable: snapshot the UTXO
+    // set unless the state lock is busy or another block was queued meanwhile (false = retry later).
+    private boolean snapshotBehind() {
+        if (!stateLock.readLock().tryLock()) return false;
+        try {
+            if (blockWriter.pending() > 0) return false;
+            writeUtxoSnapshot();
+            pruneBehind();
+        } catch (IOException e) {
+            metrics.recordWarning(NodeMetrics.Warning.SNAPSHOT_WRITE, "Failed to write UTXO snapshot or prune: " + e.getMessage()); // blocks are safe; retried later
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        return true;
+    }
+
+    // Snapshot the UTXO set at the current tip (only for store-backed chains). The blocks up to the
+    // tip must already be written.
+    private void writeUtxoSnapshot() throws IOException {
+        if (snapshotPath == null) return;
+        long started = System.nanoTime();
+        Block tip = getLatestBlock();
+        utxo.writeSnapshot(snapshotPath, tip.index, tip.hash);
+        snapshotHeight = tip.index;
+        metrics.recordStorage(NodeMetrics.Storage.UTXO_SNAPSHOT_SAVE, Files.size(snapshotPath), System.nanoTime() - started);
+    }
+
+    // Prune the stored blocks more than pruneDepth below the stored tip: roll the UTXO checkpoint
+    // forward to the last of them, then keep each one's header, Merkle root and the transactions
+    // with outputs still unspent at the checkpoint. Runs on the block writer's thread under the
+    // shared lock (no reorg meanwhile) with every stored block durable.
+    private void pruneBehind() throws IOException {
+        if (pruneDepth <= 0) return;
+        int newBase = store.size() - Math.max(pruneDepth, UndoLog.DEFAULT_DEPTH);
+        if (newBase <= store.prunedBelow()) return;
+        long started = System.nanoTime();
+        UTXOSet checkpoint = new UTXOSet();
+        int from = checkpointHeight < 0 ? 0 : loadCheckpoint(checkpoint, chain) + 1;
+        for (int h = from; h < newBase; h++) {
+            Block block = store.read(h);
+            checkpoint.applyBlock(block, block.transactions);
+        }
+        checkpoint.writeSnapshot(checkpointPath, newBase - 1, chain.header(newBase - 1).hash);
+        checkpointHeight = newBase - 1;
+        long reclaimed = store.prune(newBase, block -> prunedForm(block, checkpoint));
+        metrics.recordStorage(NodeMetrics.Storage.PRUNE, reclaimed, System.nanoTime() - started);
+    }
+
+    // What a pruned store keeps of a block: everything but the transactions whose outputs are all
+    // spent in `unspent`. Legacy blocks stay whole, their hash covers the transactions.
+    private static Block prunedForm(Block block, UTXOSet unspent) {
+        if (block.version == Block.LEGACY_VERSION) return block;
+        List<Transaction> kept = new ArrayList<>();
+        for (Transaction tx : block.transactions) {
+            for (int i = 0; i < tx.outputs.size(); i++) {
+                if (unspent.exists(tx.transactionId, i)) {
+                    kept.add(tx);
+                    break;
+                }
+            }
+        }
+        return Block.restore(block.version, block.index, block.timestamp, kept, block.previousHash, block.merkleRoot, block.hash, block.nonce);
+    }
+
+    // Load the UTXO checkpoint into `into` and check it against blocks; returns its height.
+    private int loadCheckpoint(UTXOSet into, List<Block> blocks) throws IOException {
+        UTXOSet.SnapshotTag tag = into.loadSnapshot(checkpointPath);
+        if (tag == null || tag.height >= blocks.size() || !blocks.get(tag.height).hash.equals(tag.tipHash)) {
+            throw new IOException("UTXO checkpoint " + checkpointPath + " is missing or does not match the chain");
+        }
+        return tag.height;
+    }
+
+    // Rebuild the UTXO set from the chain: from genesis, or from the UTXO checkpoint once the chain
+    // has one (the blocks below it may be pruned).
+    private void rebuildUtxo() throws IOException {
+        if (checkpointHeight < 0) {
+            utxo.rebuildFromChain(chain);
+            return;
+        }
+        for (int h = loadCheckpoint(utxo, chain) + 1; h < chain.size(); h++) {
+            Block block = chain.get(h);
+            utxo.applyBlock(block, block.transactions);
+        }
+    }
+
+    // Index the chain's blocks from height `from` into the address history. The outputs they spend
+    // are looked up by transaction id (see confirmedOutput), so this is for opening a chain, not
+    // for connecting blocks.
+    private void indexHistory(int from) throws IOException {
+        if (store == null) {
+            for (int h = from; h < chain.size(); h++) history.addBlock(chain.get(h), this::confirmedOutput);
+            return;
+        }
+        try {
+            store.forEach(from, block -> {
+                try {
+                    history.addBlock(block, this::confirmedOutput);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // The confirmed output at op on the current chain (spent or not), or null if it is unknown,
+    // e.g. pruned away. In-memory chains are scanned.
+    private Transaction.TxOutput confirmedOutput(OutPoint op) {
+        Transaction tx = null;
+        String txId = op.txId();
+        if (store != null) {
+            try {
+                tx = store.readTransaction(txId);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to look up transaction " + txId, e);
+            }
+        } else {
+            for (int h = chain.size() - 1; h >= 0 && tx == null; h--) {
+                for (Transaction candidate : chain.get(h).transactions) {
+                    if (candidate.transactionId.equals(txId)) {
+                        tx = candidate;
+                        break;
+                    }
+                }
+            }
+        }
+        return tx != null && op.index < tx.outputs.size() ? tx.outputs.get(op.index) : null;
     }
 
     //   Create a simple genesis block.
-    //   - Adds a single coinbase to "genesis" with 1000.0 units.
-    //   - For real chains, genesis is fixed and hardcoded.
+    //   - Adds a single coinbase to "genesis" with 1000.0 units, locked to this node's "genesis" key.
+    //   - Every node has a different one: nodes that sync must start from the same stored chain or
+    //     import (see getGenesisHash()); for real chains, genesis is fixed and hardcoded.
     private Block createGenesisBlock() {
         // Simple genesis: single coinbase to "genesis" address with large supply or 0 outputs
         List<Transaction> genesisTxs = new ArrayList<>();
         // Seed some funds to a known address
-        Transaction coin = Transaction.coinbase("genesis", 1000.0);
+        Transaction coin = Transaction.coinbase("genesis", 1000.0, wallet.publicKeyOf("genesis"), 0);
         genesisTxs.add(coin);
         Block genesis = new Block(0, genesisTxs, "0");
         return genesis;
     }
 
-    //   Get the most recently added block.
+    // Set genesisHash and legacyHeight from the chain as created, stored or imported.
+    private void pinChainStart() {
+        genesisHash = chain.header(0).hash;
+        int height = 0;
+        while (height < chain.size() && chain.header(height).version == Block.LEGACY_VERSION) height++;
+        legacyHeight = height;
+    }
+
+    //   Hash of this chain's genesis block. It never changes: nodes only sync with peers that
+    //   share it (start them from the same stored chain or import, e.g. blockchain.json).
+    public String getGenesisHash() {
+        return genesisHash;
+    }
+
+    //   Height of the first block that must be version 1: the chain's legacy blocks all lie below
+    //   it, and peers' legacy blocks and headers are rejected at or above it.
+    public int getLegacyHeight() {
+        return legacyHeight;
+    }
+
+    //   Get the most recently added block (lock-free).
     public Block getLatestBlock() {
-        return chain.get(chain.size() - 1);
+        return snapshot.tip;
+    }
+
+    //   Immutable view of the chain as of the last connected block (lock-free).
+    public List<Block> getChain() {
+        return snapshot.blocks;
+    }
+
+    //   Block at height on the current chain, or null past the tip (lock-free; blocks that are no
+    //   longer resident are read back from the block store).
+    public Block getBlock(int height) {
+        List<Block> blocks = snapshot.blocks;
+        return height >= 0 && height < blocks.size() ? blocks.get(height) : null;
+    }
+
+    //   Block with this hash on the current chain, or null. Store-backed chains use the on-disk
+    //   hash index; in-memory chains are scanned.
+    public Block getBlockByHash(String hash) {
+        List<Block> blocks = snapshot.blocks;
+        int height = heightOf(hash, blocks.size());
+        return height < 0 ? null : blocks.get(height);
+    }
+
+    //   Total proof of work of the current chain. Every block must meet difficultyBits, so each
+    //   one counts 2^difficultyBits expected hashes.
+    public BigInteger getChainWork() {
+        return BigInteger.valueOf(snapshot.height + 1L).shiftLeft(difficultyBits);
+    }
+
+    //   Block locator for sync: hashes from the tip back to genesis, one per block for the last
+    //   10 and then doubling the step, so a peer finds the fork point from O(log height) hashes.
+    public List<String> getLocator() {
+        int height = snapshot.height;
+        List<String> locator = new ArrayList<>();
+        int step = 1;
+        for (int h = height; h > 0; h -= step) {
+            locator.add(chain.header(h).hash);
+            if (locator.size() >= 10) step *= 2;
+        }
+        locator.add(chain.header(0).hash);
+        return locator;
+    }
+
+    //   Headers of up to max blocks following the first locator hash found on the current chain
+    //   (from genesis if none is known). Resident blocks are returned as they are; older ones are
+    //   read back without their transactions.
+    public List<Block> getHeaders(List<String> locator, int max) {
+        int size = snapshot.height + 1;
+        int start = 0;
+        for (String hash : locator) {
+            int height = heightOf(hash, size);
+            if (height >= 0) {
+                start = height + 1;
+                break;
+            }
+        }
+        List<Block> headers = new ArrayList<>();
+        for (int h = start; h < size && headers.size() < max; h++) headers.add(chain.header(h));
+        return headers;
+    }
+
+    // Height of the block with this hash below `limit`, or -1.
+    private int heightOf(String hash, int limit) {
+        if (store == null) {
+            for (int h = limit - 1; h >= 0; h--) {
+                if (chain.get(h).hash.equals(hash)) return h;
+            }
+            return -1;
+        }
+        // Read before the index: the writer may store more blocks meanwhile, never fewer
+        int stored = store.size();
+        try {
+            int height = store.heightOf(hash);
+            if (height >= 0) return height < limit ? height : -1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to look up block " + hash, e);
+        }
+        // Blocks the writer had not stored yet (all resident)
+        for (int h = limit - 1; h >= stored; h--) {
+            if (chain.get(h).hash.equals(hash)) return h;
+        }
+        return -1;
+    }
+
+    //   Confirmed transaction with this id, or null. Store-backed chains use the on-disk tx index
+    //   and decode just that transaction; in-memory chains are scanned.
+    public Transaction getTransaction(String txId) {
+        if (store == null) {
+            for (Block block : snapshot.blocks) {
+                for (Transaction tx : block.transactions) {
+                    if (tx.transactionId.equals(txId)) return tx;
+                }
+            }
+            return null;
+        }
+        List<Block> blocks = snapshot.blocks;
+        int stored = store.size();
+        try {
+            Transaction tx = store.readTransaction(txId);
+            if (tx != null) return tx;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to look up transaction " + txId, e);
+        }
+        // Blocks the writer had not stored yet (all resident)
+        for (int h = blocks.size() - 1; h >= stored; h--) {
+            for (Transaction tx : blocks.get(h).transactions) {
+                if (tx.transactionId.equals(txId)) return tx;
+            }
+        }
+        return null;
+    }
+
+    //   Up to limit transactions of address, newest first: cursor 0 starts at the newest, and each
+    //   page's nextCursor continues after it (-1 once the history is exhausted). A page costs one
+    //   small read per entry, however long the history. Blocks still queued for the block writer
+    //   are not in it yet, nor are blocks that were pruned before the index existed. Throws
+    //   IllegalArgumentException for a cursor that a reorg has invalidated since.
+    public AddressIndex.Page getHistory(String address, long cursor, int limit) {
+        try {
+            return history.history(address, cursor, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the history of " + address, e);
+        }
+    }
+
+    //   This node's keys.
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    //   The current published snapshot (lock-free); use it to read several values consistently.
+    public ChainSnapshot getSnapshot() {
+        return snapshot;
     }
 
     //   Add a regular transaction to the mempool if valid under current UTXO rules.
-    //   Also reserves inputs to prevent double-spend conflicts among pending txs.
+    //   The mempool rejects txs that spend an output another pending tx already spends.
     public boolean addTransaction(Transaction tx) {
-        if (!utxo.validateTransaction(tx)) {
-            return false;
+        return submitTransaction(tx) == null;
+    }
+
+    //   Same as addTransaction, but returns the rejection reason (null if accepted).
+    public Mempool.Rejection submitTransaction(Transaction tx) {
+        Mempool.Rejection rejection;
+        stateLock.readLock().lock();
+        try {
+            rejection = mempool.add(tx, utxo);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        pendingTransactions.add(tx);
-        utxo.reserveInputs(tx);
-        return true;
+        metrics.recordAdmission(tx, rejection);
+        return rejection;
     }
 
-    //   Helper to construct a spend transaction from a sender to a receiver for amount.
-    //   - Greedy selection of sender's UTXOs from a snapshot built by scanning the chain.
-    //   - Adds change back to sender if needed.
+    //   Admit a burst of transactions in one call; returns one result per tx, in iteration order
+    //   (null if accepted, otherwise the rejection reason). Stateless checks run in parallel;
+    //   UTXO and mempool admission is one ordered pass, so later txs may spend earlier ones.
+    public List<Mempool.Rejection> addTransactions(Collection<Transaction> txs) {
+        List<Transaction> batch = new ArrayList<>(txs);
+        List<Mempool.Rejection> results;
+        stateLock.readLock().lock();
+        try {
+            results = mempool.addAll(batch, utxo);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        for (int i = 0; i < batch.size(); i++) metrics.recordAdmission(batch.get(i), results.get(i));
+        return results;
+    }
+
+    //   Helper to construct a signed spend transaction from a sender to a receiver for amount.
+    //   - Inputs are chosen by coinSelector among the sender's own UTXOs (address index of the
+    //     live set), skipping outputs already spent by pending transactions and outputs whose key
+    //     is not in this node's wallet.
+    //   - Leaves `fee` unclaimed for the miner and adds change back to sender unless it is below
+    //     dustThreshold (then it goes to the miner too).
+    //   - The payment is locked to the receiver's key and the change to the sender's; each input
+    //     spending a key-locked output is signed with the sender's key.
 
     //   Throws IllegalArgumentException if insufficient funds.
     public Transaction createSpend(String sender, String receiver, double amount) {
-        List<String> keys = new ArrayList<>();
-        Map<String, Transaction.TxOutput> snapshot = utxoSnapshot();
-        double accumulated = 0.0;
-        List<Transaction.TxInput> inputs = new ArrayList<>();
+        return createSpend(sender, receiver, amount, 0.0);
+    }
+
+    public Transaction createSpend(String sender, String receiver, double amount, double fee) {
+        return createSpend(sender, receiver, amount, fee, coinSelector);
+    }
+
+    //   Same, with a specific coin selection strategy for this spend.
+    public Transaction createSpend(String sender, String receiver, double amount, double fee, CoinSelector selector) {
+        if (!Amounts.isValid(amount)) throw new IllegalArgumentException("Invalid amount " + amount);
+        if (fee < 0) throw new IllegalArgumentException("Fee must not be negative");
+        long amountUnits = Amounts.toUnits(amount);
+        long target = amountUnits + Amounts.toUnits(fee);
+        List<CoinSelector.Coin> coins = new ArrayList<>();
+        Map<OutPoint, Transaction.TxOutput> spendable = new HashMap<>();
 
-        for (Map.Entry<String, Transaction.TxOutput> e : snapshot.entrySet()) {
-            String key = e.getKey(); // txId:index
-            Transaction.TxOutput out = e.getValue();
-            if (!out.receiver.equals(sender)) continue;
-            if (accumulated >= amount) break;
-            String[] parts = key.split(":");
-            String prevTx = parts[0];
-            int index = Integer.parseInt(parts[1]);
-            inputs.add(new Transaction.TxInput(prevTx, index, "sig")); // signature placeholder
-            accumulated += out.amount;
-            keys.add(key);
+        stateLock.readLock().lock();
+        try {
+            for (OutPoint op : utxo.outputsOf(sender)) {
+                if (mempool.isSpent(op)) continue;
+                Transaction.TxOutput out = utxo.get(op);
+                if (out.publicKey != null && !wallet.canSign(sender, out.publicKey)) continue;
+                coins.add(new CoinSelector.Coin(op, Amounts.toUnits(out.amount)));
+                spendable.put(op, out);
+            }
+        } finally {
+            stateLock.readLock().unlock();
         }
 
-        if (accumulated < amount) {
+        CoinSelector.Selection selection = selector.select(coins, target, Amounts.toUnits(dustThreshold));
+        if (selection == null) {
             throw new IllegalArgumentException("Insufficient funds");
         }
 
+        List<Transaction.TxInput> inputs = new ArrayList<>();
+        List<Boolean> locked = new ArrayList<>();
+        for (CoinSelector.Coin coin : selection.inputs) {
+            inputs.add(new Transaction.TxInput(coin.outPoint.txId(), coin.outPoint.index, null));
+            locked.add(spendable.get(coin.outPoint).publicKey != null);
+        }
         List<Transaction.TxOutput> outputs = new ArrayList<>();
-        outputs.add(new Transaction.TxOutput(receiver, amount));
-        double change = accumulated - amount;
-        if (change > 0) {
-            outputs.add(new Transaction.TxOutput(sender, change));
+        // Rounded to whole units, so the output holds exactly what the selection paid for
+        outputs.add(new Transaction.TxOutput(receiver, Amounts.toCoins(amountUnits), wallet.publicKeyOf(receiver)));
+        if (selection.changeUnits > 0) {
+            outputs.add(new Transaction.TxOutput(sender, Amounts.toCoins(selection.changeUnits), wallet.publicKeyOf(sender)));
         }
-        return new Transaction(inputs, outputs);
+        Transaction tx = new Transaction(inputs, outputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            if (locked.get(i)) tx.signInput(i, wallet.keyPair(sender).getPrivate());
+        }
+        return tx;
     }
 
     //   Mine a block from pending transactions:
-    //   - Create a coinbase to miner
-    //   - Validate and apply txs in order against a temporary UTXO clone
-    //   - Build the block, mine it (PoW), append to chain
-    //   - Apply the block's transactions to the real UTXO set
-    public void minePendingTransactions(String minerAddress) {
-        // Create coinbase tx
-        Transaction coinbase = Transaction.coinbase(minerAddress, miningReward);
-
-        // Re-validate pending txs against current UTXO state in the order they were received
+    //   - Take up to maxBlockTransactions txs from the mempool, best fee rate first (parents before children)
+    //   - Create a coinbase to miner for the reward plus the included fees
+    //   - Validate and apply txs in order against a copy-on-write overlay of the live UTXO set
+    //   - Build the block, mine it (PoW) across all cores with no lock held, append to chain
+    //   - Commit the overlay's changes to the real UTXO set (cost proportional to the block)
+    //   Returns false if mining was cancelled via cancelMining(), or if the tip moved while mining.
+    public boolean minePendingTransactions(String minerAddress) {
+        long started = System.nanoTime();
+        UTXOSet temp = utxo.overlay();
         List<Transaction> blockTxs = new ArrayList<>();
-        blockTxs.add(coinbase);
-        
-        UTXOSet temp = cloneUtxo();
-
-        // Apply coinbase first
-        if (!temp.validateTransaction(coinbase)) {
-            throw new IllegalStateException("Invalid coinbase construction");
-        }
-        temp.applyTransaction(coinbase);
-
-        Iterator<Transaction> it = pendingTransactions.iterator();
-        while (it.hasNext()) {
-            Transaction tx = it.next();
-            if (temp.validateTransaction(tx)) {
-                temp.applyTransaction(tx);
-                blockTxs.add(tx);
-                it.remove();
-                utxo.releaseInputs(tx); // will be removed from reserved and then applied below
+        Block block;
+
+        stateLock.readLock().lock();
+        try {
+            List<Transaction> candidates = mempool.selectForBlock(maxBlockTransactions);
+
+            // Re-validate the template against current UTXO state; the mempool only holds valid txs,
+            // so this is a safety net that costs O(block). Fees come from the same overlay rather
+            // than the mempool, which may have evicted a selected tx since
+            List<Transaction> accepted = new ArrayList<>();
+            long feeUnits = 0;
+            for (Transaction tx : candidates) {
+                if (temp.validateTransaction(tx)) {
+                    feeUnits += ChainValidator.feeUnits(temp, tx);
+                    temp.applyTransaction(tx);
+                    accepted.add(tx);
+                }
+            }
+
+            // Coinbase comes first in the block
+            Block tip = getLatestBlock();
+            Transaction coinbase = Transaction.coinbase(minerAddress,
+                    Amounts.toCoins(Amounts.toUnits(miningReward) + feeUnits), wallet.publicKeyOf(minerAddress), tip.index + 1);
+            if (!temp.validateTransaction(coinbase)) {
+                throw new IllegalStateException("Invalid coinbase construction");
+            }
+            temp.applyTransaction(coinbase);
+            blockTxs.add(coinbase);
+            blockTxs.addAll(accepted);
+
+            block = new Block(tip.index + 1, blockTxs, tip.hash);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+
+        // Mine the block; if mining is cancelled the mempool is left untouched
+        long hashesBefore = miner.getHashes();
+        long powStarted = System.nanoTime();
+        boolean found = block.mineBlockBits(difficultyBits, miner);
+        long powNanos = System.nanoTime() - powStarted;
+        long nonces = miner.getHashes() - hashesBefore;
+        metrics.recordHashing(nonces, powNanos);
+        if (!found) {
+            return false;
+        }
+
+        stateLock.writeLock().lock();
+        try {
+            // Another block was connected while we were mining: the template is stale
+            if (!getLatestBlock().hash.equals(block.previousHash)) {
+                return false;
+            }
+            connect(block, temp);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        metrics.recordBlockMined(block, nonces, powNanos, System.nanoTime() - started);
+        return true;
+    }
+
+    //   Accept a block received from a peer.
+    //   - On top of the tip: block checks, UTXO rules and signatures are validated against an
+    //     overlay under the shared lock; only the connect itself takes the exclusive lock, and a
+    //     block being mined locally is cancelled since it no longer extends the tip
+    //   - Anywhere else: the block is checked against its parent (on the chain or in the block tree)
+    //     and kept as a side block; once its branch has more work than the chain, the node
+    //     reorganizes to it (see reorganize())
+    //   A block at height 0 is only accepted as our own genesis, and legacy blocks are rejected at
+    //   or above getLegacyHeight(), on the tip or on a branch.
+    //   Returns the validation result; the chain is unchanged unless it is valid. Known blocks are
+    //   accepted again as a no-op.
+    public ChainValidator.Result acceptBlock(Block block) {
+        long started = System.nanoTime();
+        String pinned = checkPinned(block);
+        if (pinned != null) {
+            metrics.recordBlockReceived(false, System.nanoTime() - started);
+            return ChainValidator.Result.invalid(block.index, pinned);
+        }
+        UTXOSet temp = utxo.overlay();
+        Block tip;
+        stateLock.readLock().lock();
+        try {
+            tip = getLatestBlock();
+            if (tip.hash.equals(block.previousHash)) {
+                String failure = ChainValidator.checkBlock(block, tip, tip.index + 1, difficultyBits);
+                List<SignatureVerifier.Check> signatures = new ArrayList<>();
+                if (failure == null) failure = ChainValidator.replayBlock(temp, block, Amounts.toUnits(miningReward), signatures);
+                if (failure == null && !SignatureVerifier.getDefault().verifyAll(signatures)) failure = "bad signature";
+                metrics.recordBlockReceived(failure == null, System.nanoTime() - started);
+                if (failure != null) return ChainValidator.Result.invalid(block.index, failure);
             } else {
-                // keep it in mempool (could be conflicting, insufficient, or now invalid)
+                tip = null;
             }
+        } finally {
+            stateLock.readLock().unlock();
         }
+        if (tip == null) {
+            ChainValidator.Result result = acceptSideBlock(block);
+            metrics.recordBlockReceived(result.valid, System.nanoTime() - started);
+            return result;
+        }
+
+        stateLock.writeLock().lock();
+        try {
+            if (getLatestBlock() != tip) return ChainValidator.Result.invalid(block.index, "tip moved while validating");
+            cancelMining();
+            connect(block, temp);
+            return ChainValidator.Result.ok();
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Why a block from a peer breaks the pinned genesis or legacy prefix, or null.
+    private String checkPinned(Block block) {
+        if (block.index == 0 && !genesisHash.equals(block.hash)) return "genesis " + block.hash + " is not ours";
+        if (block.version != Block.LEGACY_VERSION || block.index < legacyHeight) return null;
+        return "legacy block at height " + block.index + ", the chain is version 1 from height " + legacyHeight;
+    }
+
+    // A block that does not extend the tip: check it against its parent, keep it in the block tree
+    // and reorganize if its branch now has more work than the chain.
+    private ChainValidator.Result acceptSideBlock(Block block) {
+        stateLock.writeLock().lock();
+        try {
+            if (blockTree.contains(block.hash) || heightOf(block.hash, chain.size()) >= 0) return ChainValidator.Result.ok();
+            Block parent = blockTree.get(block.previousHash);
+            if (parent == null) {
+                int height = heightOf(block.previousHash, chain.size());
+                if (height >= 0) parent = chain.get(height);
+            }
+            if (parent == null) return ChainValidator.Result.invalid(block.index, "unknown parent " + block.previousHash);
+            String failure = ChainValidator.checkBlock(block, parent, parent.index + 1, difficultyBits);
+            if (failure != null) return ChainValidator.Result.invalid(block.index, failure);
+            if (!blockTree.add(block)) return ChainValidator.Result.invalid(block.index, "too many side blocks");
+            if (block.index < chain.size()) return ChainValidator.Result.ok(); // not more work (yet)
+
+            List<Block> branch = new ArrayList<>();
+            for (Block b = block; b != null; b = blockTree.get(b.previousHash)) branch.add(b);
+            Collections.reverse(branch);
+            return reorganize(branch.get(0).index - 1, branch);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
 
-        // Create and mine the block
-        Block block = new Block(chain.size(), blockTxs, getLatestBlock().hash);
-        block.mineBlock(difficulty);
+    //   Switch to a competing branch: drop the blocks above forkHeight (genesis always stays)
+    //   and connect `branch` instead, but only if the result has more work than the current chain
+    //   and validates. Runs under the exclusive lock (see reorganize()); the chain is unchanged
+    //   unless the switch succeeds.
+    public ChainValidator.Result switchToBranch(int forkHeight, List<Block> branch) {
+        stateLock.writeLock().lock();
+        try {
+            if (forkHeight < 0 || forkHeight >= chain.size()) {
+                return ChainValidator.Result.invalid(forkHeight + 1, "fork point is not on the chain");
+            }
+            if (forkHeight + 1 + branch.size() <= chain.size()) {
+                return ChainValidator.Result.invalid(forkHeight + 1, "branch does not have more work");
+            }
+            for (Block block : branch) {
+                String pinned = checkPinned(block);
+                if (pinned != null) return ChainValidator.Result.invalid(block.index, pinned);
+            }
+            return reorganize(forkHeight, branch);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    // Replace the blocks above forkHeight with branch, in time proportional to the reorg:
+    // 1. Disconnect the current blocks, tip first, on an overlay of the live set using their undo data
+    // 2. Validate and connect the branch block by block on top of that overlay, recording each
+    //    block's undo data; an invalid block is dropped from the block tree with its descendants
+    //    and the live state is left untouched
+    // 3. Persist the branch, commit the overlay, keep the disconnected blocks in the block tree and
+    //    return their transactions to the mempool
+    // Without undo data for every disconnected block (deeper than the undo log) this falls back to switchByReplay(). Caller holds the exclusive lock.
+    private ChainValidator.Result reorganize(int forkHeight, List<Block> branch) {
+        if (blockWriter != null) {
+            try {
+                blockWriter.flush(); // the store and undo log must hold every current block
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write queued blocks", e);
+            }
+        }
+        int tipHeight = chain.size() - 1;
+        if (!undoLog.covers(forkHeight + 1, tipHeight)) return switchByReplay(forkHeight, branch);
+
+        UTXOSet temp = utxo.overlay();
+        List<Block> disconnected = new ArrayList<>();
+        try {
+            for (int h = tipHeight; h > forkHeight; h--) {
+                Block block = chain.get(h);
+                temp.disconnectBlock(block, undoLog.read(h));
+                disconnected.add(block);
+            }
+        } catch (IOException e) {
+            metrics.recordWarning(NodeMetrics.Warning.UNDO_UNREADABLE, "Undo data unreadable, replaying from genesis: " + e.getMessage());
+            return switchByReplay(forkHeight, branch);
+        }
+
+        List<Map<OutPoint, Transaction.TxOutput>> branchUndo = new ArrayList<>();
+        Block previous = chain.get(forkHeight);
+        for (Block block : branch) {
+            UTXOSet layer = temp.overlay();
+            String failure = ChainValidator.checkBlock(block, previous, previous.index + 1, difficultyBits);
+            List<SignatureVerifier.Check> signatures = new ArrayList<>();
+            if (failure == null) failure = ChainValidator.replayBlock(layer, block, Amounts.toUnits(miningReward), signatures);
+            if (failure == null && !SignatureVerifier.getDefault().verifyAll(signatures)) failure = "bad signature";
+            if (failure != null) {
+                blockTree.removeWithDescendants(block.hash);
+                return ChainValidator.Result.invalid(block.index, failure);
+            }
+            branchUndo.add(layer.spentFromParent());
+            layer.commit();
+            previous = block;
+        }
+
+        cancelMining();
+        replaceBlocks(forkHeight, branch, branchUndo);
+        Set<String> touched = temp.touchedAddresses();
+        temp.commit();
+        publishBlock(touched);
+        finishReorg(forkHeight, branch, disconnected);
+        return ChainValidator.Result.ok();
+    }
+
+    // Reorg fallback: validate the whole resulting chain, then rebuild the UTXO set from genesis (or
+    // from the UTXO checkpoint, which the fork must not be below). The branch gets no undo data, so
+    // the next reorg below its tip replays as well. Caller holds the exclusive lock.
+    private ChainValidator.Result switchByReplay(int forkHeight, List<Block> branch) {
+        if (forkHeight < checkpointHeight) {
+            return ChainValidator.Result.invalid(forkHeight + 1, "fork is below the pruned height " + checkpointHeight);
+        }
+        ChainValidator.Result result = validate(joined(chain, forkHeight + 1, branch));
+        if (!result.valid) {
+            if (result.firstInvalidHeight > forkHeight) {
+                blockTree.removeWithDescendants(branch.get(result.firstInvalidHeight - forkHeight - 1).hash);
+            }
+            return result;
+        }
+        List<Block> disconnected = new ArrayList<>();
+        for (int h = chain.size() - 1; h > forkHeight; h--) disconnected.add(chain.get(h));
+
+        cancelMining();
+        replaceBlocks(forkHeight, branch, null);
+        try {
+            rebuildUtxo();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rebuild the UTXO set", e);
+        }
+        publishFullSnapshot();
+        finishReorg(forkHeight, branch, disconnected);
+        return ChainValidator.Result.ok();
+    }
+
+    // Swap the blocks above forkHeight for branch in the block store, address history, undo log and
+    // chain. The store goes first: if it fails nothing has changed, and once it is cut back a crash
+    // is repaired on open, which cuts the history and undo log back to the stored tip.
+    private void replaceBlocks(int forkHeight, List<Block> branch, List<Map<OutPoint, Transaction.TxOutput>> branchUndo) {
+        try {
+            if (store != null) store.truncate(forkHeight + 1);
+            history.truncate(forkHeight + 1);
+            undoLog.truncate(forkHeight + 1);
+            chain.truncate(forkHeight + 1);
+            for (int i = 0; i < branch.size(); i++) {
+                Block block = branch.get(i);
+                if (store != null) store.append(block);
+                chain.add(block);
+                if (branchUndo != null) undoLog.append(block.index, branchUndo.get(i));
+            }
+            if (store != null) store.sync();
+            undoLog.sync();
+            for (int i = 0; i < branch.size(); i++) {
+                Block block = branch.get(i);
+                history.addBlock(block, branchUndo != null ? branchUndo.get(i)::get : this::confirmedOutput);
+            }
+            history.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist branch at " + (forkHeight + 1), e);
+        }
+    }
+
+    // After a reorg: the branch leaves the block tree and the disconnected blocks (tip first) join
+    // it, their transactions that the branch did not confirm go back to the mempool, and a UTXO
+    // snapshot taken above the fork point is replaced.
+    private void finishReorg(int forkHeight, List<Block> branch, List<Block> disconnected) {
+        Set<String> confirmed = new HashSet<>();
+        for (Block block : branch) {
+            blockTree.remove(block.hash);
+            for (Transaction tx : block.transactions) confirmed.add(tx.transactionId);
+        }
+        List<Transaction> orphaned = new ArrayList<>();
+        for (int i = disconnected.size() - 1; i >= 0; i--) {
+            Block block = disconnected.get(i);
+            blockTree.add(block);
+            for (Transaction tx : block.transactions) {
+                if (!tx.isCoinbase && !confirmed.contains(tx.transactionId)) orphaned.add(tx);
+            }
+        }
+        mempool.readmit(orphaned, utxo);
+        blockTree.pruneBelow(chain.size() - UndoLog.DEFAULT_DEPTH);
+        if (snapshotHeight > forkHeight) {
+            try {
+                writeUtxoSnapshot();
+            } catch (IOException e) {
+                metrics.recordWarning(NodeMetrics.Warning.SNAPSHOT_WRITE, "Failed to write UTXO snapshot: " + e.getMessage()); // replayed on the next open
+            }
+        }
+    }
+
+    // Connect a block whose transactions have been applied to `applied` (an overlay of the live
+    // set) and publish it; the block and its undo data are queued for the block writer, so no disk
+    // I/O happens here. Caller holds the exclusive lock and has checked the tip.
+    private void connect(Block block, UTXOSet applied) {
+        try {
+            Map<OutPoint, Transaction.TxOutput> spent = applied.spentFromParent();
+            if (blockWriter != null) {
+                blockWriter.enqueue(block, spent);
+            } else {
+                undoLog.append(block.index, spent);
+                history.addBlock(block, spent::get);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist block " + block.index, e);
+        }
         chain.add(block);
+        if (!blockTree.isEmpty()) {
+            blockTree.remove(block.hash);
+            blockTree.pruneBelow(block.index - UndoLog.DEFAULT_DEPTH);
+        }
+
+        // Included txs (and anything conflicting with them) leave the mempool
+        mempool.removeForBlock(block.transactions);
 
-        // Apply block to the real UTXO set
-        for (Transaction tx : blockTxs) {
-            utxo.applyTransaction(tx);
+        // Apply block to the real UTXO set, then let readers see it
+        Set<String> touched = applied.touchedAddresses();
+        applied.commit();
+        publishBlock(touched);
+
+        if (snapshotInterval > 0 && block.index % snapshotInterval == 0 && blockWriter != null) {
+            blockWriter.requestSnapshot();
         }
     }
 
-    //   Pretty-print the chain using Gson.
-    public void printChain() {
+    // The first `keep` blocks of chain followed by branch, as a read-only list (nothing is copied).
+    private static List<Block> joined(List<Block> chain, int keep, List<Block> branch) {
+        return new AbstractList<Block>() {
+            @Override
+            public Block get(int height) {
+                return height < keep ? chain.get(height) : branch.get(height - keep);
+            }
+
+            @Override
+            public int size() {
+                return keep + branch.size();
+            }
+        };
+    }
+
+    //   Mine a block on a background thread; queries and admission keep running meanwhile.
+    //   The future completes with the result of minePendingTransactions.
+    public synchronized CompletableFuture<Boolean> startMining(String minerAddress) {
+        if (miningExecutor == null) {
+            miningExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "block-miner");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return CompletableFuture.supplyAsync(() -> minePendingTransactions(minerAddress), miningExecutor);
+    }
+
+    //   Abort a block that is currently being mined, e.g. because a new tip arrived.
+    //   The in-progress minePendingTransactions call returns false.
+    public void cancelMining() {
+        miner.cancel();
+    }
+
+    //   The chain as pretty-printed JSON, using Gson.
+    public String chainJson() {
         Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        System.out.println(gson.toJson(chain));
+        return gson.toJson(getChain());
     }
 
-    //   Save the blockchain (chain only) to a JSON file.
+    //   Export the blockchain (chain only) to a JSON file.
     public void saveBlockchain(String filename) {
+        long started = System.nanoTime();
         try (FileWriter writer = new FileWriter(filename)) {
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(chain, writer);
+            gson.toJson(getChain(), writer);
         } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+        metrics.recordStorage(NodeMetrics.Storage.JSON_SAVE, new File(filename).length(), System.nanoTime() - started);
     }
 
-    //   Load a blockchain from a JSON file; if not found, return a new one.
-    //   After loading, rebuild UTXO from chain and clear pendingTransactions.
+    //   Import a blockchain from a JSON file; if not found, return a new one.
+    //   After loading, rebuild UTXO from chain; the mempool starts empty.
     public static Blockchain loadBlockchain(String filename) {
+        return loadBlockchain(filename, new Wallet());
+    }
+
+    private static Blockchain loadBlockchain(String filename, Wallet wallet) {
+        long started = System.nanoTime();
         try (Reader reader = new FileReader(filename)) {
             Gson gson = new Gson();
             List<Block> loadedChain = gson.fromJson(reader, new TypeToken<List<Block>>(){}.getType());
-            Blockchain blockchain = new Blockchain();
+            Blockchain blockchain = new Blockchain(new HashMapOutputStore(), true, wallet);
             if (loadedChain != null && !loadedChain.isEmpty()) {
-                blockchain.chain = loadedChain;
-                blockchain.pendingTransactions = new ArrayList<>();
+                for (Block block : loadedChain) {
+                    if (block.pruned) throw new IllegalArgumentException(filename + " is an export of a pruned chain and cannot be replayed");
+                }
+                blockchain.chain = new BlockList();
+                blockchain.chain.addAll(loadedChain);
                 blockchain.utxo.rebuildFromChain(blockchain.chain);
+                blockchain.history = new AddressIndex();
+                blockchain.indexHistory(0);
+                blockchain.pinChainStart();
+                blockchain.publishFullSnapshot();
             }
+            blockchain.metrics.recordStorage(NodeMetrics.Storage.JSON_LOAD, new File(filename).length(), System.nanoTime() - started);
             return blockchain;
         } catch (IOException e) {
-            System.out.println("No saved blockchain found, starting new one.");
-            return new Blockchain();
+            Blockchain blockchain = new Blockchain(new HashMapOutputStore(), true, wallet);
+            blockchain.metrics.recordWarning(NodeMetrics.Warning.JSON_LOAD, "No saved blockchain loaded (" + e.getMessage() + "), starting a new one");
+            return blockchain;
         }
     }
 
-    // Utility to check balance by summing UTXOs
+    // Utility to check balance from the latest published snapshot (lock-free)
     public double checkBalance(String address) {
-        double balance = 0.0;
-        Map<String, Transaction.TxOutput> snapshot = utxoSnapshot();
-        for (Transaction.TxOutput out : snapshot.values()) {
-            if (out.receiver.equals(address)) balance += out.amount;
-        }
-        return balance;
+        return snapshot.balanceOf(address);
     }
 
-    //   Validate the chain:
-    //   - Check prevHash linkage
-    //   - Recompute and verify each block's hash
-    //   - Verify PoW leading zeros for each block
+    //   Validate the chain with the parallel ChainValidator pipeline:
+    //   - Check prevHash linkage, recompute each block's hash, verify PoW and re-derive tx ids (in parallel)
+    //   - Replay the UTXO rules block by block (sequentially)
     public boolean isChainValid() {
-        for (int i = 1; i < chain.size(); i++) {
-            Block curr = chain.get(i);
-            Block prev = chain.get(i - 1);
-            if (!curr.previousHash.equals(prev.hash)) return false;
-            if (!curr.calculateHash().equals(curr.hash)) return false;
-            if (!curr.hash.startsWith("0".repeat(difficulty))) return false;
-        }
-        return true;
+        return validateChain().valid;
     }
 
-    // Build a snapshot map of UTXOs by replaying the chain.
-    private Map<String, Transaction.TxOutput> utxoSnapshot() {
-        Map<String, Transaction.TxOutput> map = new HashMap<>();
-        UTXOSet temp = new UTXOSet();
-        temp.rebuildFromChain(chain);
-        for (Block b : chain) {
-            for (Transaction tx : b.transactions) {
-                // remove spent
-                if (!tx.isCoinbase) {
-                    for (Transaction.TxInput in : tx.inputs) {
-                        map.remove(in.prevTxId + ":" + in.outputIndex);
-                    }
-                }
-                // add outputs
-                for (int i = 0; i < tx.outputs.size(); i++) {
-                    map.put(tx.transactionId + ":" + i, tx.outputs.get(i));
-                }
-            }
+    //   Same as isChainValid(), but reports the first invalid height and the reason.
+    //   A pruned chain is validated from its UTXO checkpoint: the blocks up to it only as headers.
+    public ChainValidator.Result validateChain() {
+        return validate(getChain());
+    }
+
+    // Validate blocks from genesis, or from the UTXO checkpoint once the chain has one.
+    private ChainValidator.Result validate(List<Block> blocks) {
+        if (checkpointHeight < 0) return new ChainValidator(Amounts.toUnits(miningReward)).validate(blocks, difficultyBits);
+        UTXOSet anchor = new UTXOSet();
+        int anchorHeight;
+        try {
+            anchorHeight = loadCheckpoint(anchor, blocks);
+        } catch (IOException e) {
+            return ChainValidator.Result.invalid(0, e.getMessage());
         }
-        return map;
+        return new ChainValidator(Amounts.toUnits(miningReward)).validate(blocks, difficultyBits, anchor, anchorHeight);
+    }
+
+    // Republish every balance and the whole chain, e.g. after loading. The balances go into a
+    // fresh map, so readers of the current snapshot keep theirs until the new one is published.
+    private void publishFullSnapshot() {
+        BalanceMap.Builder balances = new BalanceMap.Builder(BalanceMap.EMPTY);
+        utxo.forEachBalance(balances::put);
+        snapshot = new ChainSnapshot(++snapshotVersion, chain.view(), balances.build());
     }
 
-    //   Create a fresh UTXOSet clone by rebuilding from the current chain.
-    //   Used for temporary in-block validation during mining.
-    private UTXOSet cloneUtxo() {
-        UTXOSet clone = new UTXOSet();
-        clone.rebuildFromChain(chain);
-        return clone;
+    // Publish the state after one connected block: only the touched balances change.
+    private void publishBlock(Set<String> touchedAddresses) {
+        BalanceMap.Builder balances = new BalanceMap.Builder(snapshot.balances());
+        for (String address : touchedAddresses) balances.put(address, utxo.balanceUnitsOf(address));
+        snapshot = new ChainSnapshot(++snapshotVersion, chain.view(), balances.build());
     }
 }
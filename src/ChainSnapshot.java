@@ -0,0 +1,35 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+
+//   ChainSnapshot is an immutable view of the chain published once per connected block.
+//   Readers grab the current snapshot from a volatile field and never take a lock:
+//   - tip, height and the block list are fixed at publish time
+//   - balances are a persistent BalanceMap owned by this snapshot: publishing the next block
+//     copies only the paths to the touched addresses, so a reader holding an older snapshot keeps
+//     seeing that snapshot's balances however many blocks are published meanwhile
+public final class ChainSnapshot {
+    public final long version;
+    public final int height;
+    public final Block tip;
+    public final List<Block> blocks;
+    private final BalanceMap balances;
+
+    ChainSnapshot(long version, List<Block> blocks, BalanceMap balances) {
+        this.version = version;
+        this.blocks = blocks;
+        this.height = blocks.size() - 1;
+        this.tip = blocks.get(blocks.size() - 1);
+        this.balances = balances;
+    }
+
+    //   Balance of address as of this snapshot.
+    public double balanceOf(String address) {
+        return Amounts.toCoins(balances.get(address));
+    }
+
+    BalanceMap balances() {
+        return balances;
+    }
+}
@@ -0,0 +1,235 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+//   ChainSync moves a Blockchain to the heaviest valid chain offered by its peers, headers first:
+//   1. Ask every peer for its status and pick the one claiming the most work; peers built on
+//      another genesis block are ignored
+//   2. Download that peer's headers from the fork point (found with our block locator) and check
+//      each header's hash, linkage and proof of work before any body is requested (a legacy
+//      header is only accepted below Blockchain.getLegacyHeight())
+//   3. Fetch the bodies in chunks from all responsive peers in parallel, at most `window` chunks
+//      ahead of the block being connected; a chunk that a peer cannot serve moves to the next
+//      peer, and every body must match its header
+//   4. Hand each block to Blockchain.acceptBlock as its chunk arrives (memory stays bounded by
+//      the window): blocks on our tip are connected, blocks of a competing branch wait in the
+//      block tree until the branch has more work, and the node then reorganizes to it
+public final class ChainSync implements Closeable {
+
+    //   What one sync round did.
+    public static final class Outcome {
+        public final int connected;     // blocks accepted (on the tip, or on a branch switched to)
+        public final boolean switched;  // true if blocks above a fork point were replaced
+        public final String error;      // null if the round completed
+
+        private Outcome(int connected, boolean switched, String error) {
+            this.connected = connected;
+            this.switched = switched;
+            this.error = error;
+        }
+
+        static Outcome upToDate() {
+            return new Outcome(0, false, null);
+        }
+
+        static Outcome failed(String error) {
+            return new Outcome(0, false, error);
+        }
+
+        @Override public String toString() {
+            String s = switched ? "switched branch, " + connected + " blocks connected" : connected + " blocks connected";
+            return error == null ? s : s + " (" + error + ")";
+        }
+    }
+
+    // A peer and the status it reported this round
+    private static final class Candidate {
+        final Peer peer;
+        final PeerProtocol.Status status;
+
+        Candidate(Peer peer, PeerProtocol.Status status) {
+            this.peer = peer;
+            this.status = status;
+        }
+    }
+
+    private final Blockchain blockchain;
+    private final int chunkSize;
+    private final int window;
+    private final ExecutorService downloads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "block-download");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ChainSync(Blockchain blockchain) {
+        this(blockchain, PeerProtocol.MAX_BLOCKS, 8);
+    }
+
+    public ChainSync(Blockchain blockchain, int chunkSize, int window) {
+        if (chunkSize < 1 || chunkSize > PeerProtocol.MAX_BLOCKS || window < 1) {
+            throw new IllegalArgumentException("chunkSize must be 1.." + PeerProtocol.MAX_BLOCKS + " and window >= 1");
+        }
+        this.blockchain = blockchain;
+        this.chunkSize = chunkSize;
+        this.window = window;
+    }
+
+    //   Run one sync round against peers.
+    public Outcome sync(List<Peer> peers) {
+        List<Candidate> responsive = new ArrayList<>();
+        for (Peer peer : peers) {
+            try {
+                PeerProtocol.Status status = peer.status();
+                if (blockchain.getGenesisHash().equals(status.genesisHash)) responsive.add(new Candidate(peer, status));
+            } catch (IOException | RuntimeException e) {
+                peer.close(); // unreachable this round
+            }
+        }
+        Candidate best = null;
+        for (Candidate c : responsive) {
+            if (best == null || c.status.work.compareTo(best.status.work) > 0) best = c;
+        }
+        if (best == null || best.status.work.compareTo(blockchain.getChainWork()) <= 0) return Outcome.upToDate();
+
+        List<Block> headers;
+        try {
+            headers = downloadHeaders(best);
+        } catch (IOException | RuntimeException e) {
+            return Outcome.failed("headers from " + best.peer + ": " + e.getMessage());
+        }
+        if (headers.isEmpty()) return Outcome.upToDate();
+        int forkHeight = headers.get(0).index - 1;
+        if (forkHeight + 1 + headers.size() <= blockchain.getChain().size()) return Outcome.upToDate(); // not heavier after all
+
+        // The best peer first, then everyone else who answered
+        List<Peer> sources = new ArrayList<>();
+        sources.add(best.peer);
+        for (Candidate c : responsive) {
+            if (c != best) sources.add(c.peer);
+        }
+        return downloadBodies(headers, forkHeight, sources);
+    }
+
+    @Override
+    public void close() {
+        downloads.shutdownNow();
+    }
+
+    // Validated headers from the fork point up to the peer's tip, minus any we already have.
+    private List<Block> downloadHeaders(Candidate source) throws IOException {
+        List<Block> headers = new ArrayList<>();
+        List<String> locator = blockchain.getLocator();
+        Block previous = null; // last accepted header, or our block the next header links to
+        boolean diverged = false;
+        while (true) {
+            List<Block> batch = source.peer.headers(locator, PeerProtocol.MAX_HEADERS);
+            for (Block header : batch) {
+                if (!diverged) {
+                    // The locator is sparse below the tip, so leading headers may be blocks we have
+                    Block ours = blockchain.getBlock(header.index);
+                    if (ours != null && ours.hash.equals(header.hash)) {
+                        previous = ours;
+                        continue;
+                    }
+                    if (header.index == 0) throw new IOException("genesis " + header.hash + " is not ours");
+                    Block parent = previous != null ? previous : blockchain.getBlock(header.index - 1);
+                    if (parent == null || !parent.hash.equals(header.previousHash)) {
+                        throw new IOException("headers do not connect to our chain at height " + header.index);
+                    }
+                    previous = parent;
+                    diverged = true;
+                }
+                String failure = ChainValidator.checkHeader(header, previous, header.index, blockchain.difficultyBits);
+                if (failure == null && header.version == Block.LEGACY_VERSION && header.index >= blockchain.getLegacyHeight()) {
+                    failure = "legacy block above the legacy prefix (height " + blockchain.getLegacyHeight() + ")";
+                }
+                if (failure != null) throw new IOException("header " + header.index + ": " + failure);
+                headers.add(header);
+                previous = header;
+            }
+            if (batch.size() < PeerProtocol.MAX_HEADERS || previous == null || previous.index >= source.status.height) break;
+            locator = List.of(previous.hash);
+        }
+        return headers;
+    }
+
+    // Fetch the blocks for headers and pass them to the chain in order.
+    private Outcome downloadBodies(List<Block> headers, int forkHeight, List<Peer> sources) {
+        boolean extendsTip = forkHeight == blockchain.getLatestBlock().index;
+        int chunks = (headers.size() + chunkSize - 1) / chunkSize;
+        Deque<Future<List<Block>>> inFlight = new ArrayDeque<>();
+        int submitted = 0;
+        int connected = 0;
+        try {
+            for (int c = 0; c < chunks; c++) {
+                while (submitted < chunks && submitted < c + window) {
+                    List<Block> chunk = headers.subList(submitted * chunkSize, Math.min(headers.size(), (submitted + 1) * chunkSize));
+                    int first = submitted++ % sources.size();
+                    inFlight.addLast(downloads.submit(() -> fetchChunk(chunk, sources, first)));
+                }
+                List<Block> blocks;
+                try {
+                    blocks = inFlight.removeFirst().get();
+                } catch (ExecutionException e) {
+                    return new Outcome(connected, switched(extendsTip, headers), e.getCause().getMessage());
+                }
+                for (Block block : blocks) {
+                    ChainValidator.Result result = blockchain.acceptBlock(block);
+                    if (!result.valid) return new Outcome(connected, switched(extendsTip, headers), "block " + result.firstInvalidHeight + " rejected: " + result.reason);
+                    connected++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Outcome(connected, switched(extendsTip, headers), "interrupted");
+        } finally {
+            for (Future<List<Block>> f : inFlight) f.cancel(true);
+        }
+        return new Outcome(connected, switched(extendsTip, headers), null);
+    }
+
+    // True if a branch that did not extend our tip has become (part of) the chain.
+    private boolean switched(boolean extendsTip, List<Block> headers) {
+        if (extendsTip) return false;
+        Block first = blockchain.getBlock(headers.get(0).index);
+        return first != null && first.hash.equals(headers.get(0).hash);
+    }
+
+    // Bodies for one chunk of headers, trying each source in turn starting at `first`.
+    private static List<Block> fetchChunk(List<Block> headers, List<Peer> sources, int first) throws IOException {
+        String lastError = "no peer has blocks " + headers.get(0).index + ".." + headers.get(headers.size() - 1).index;
+        for (int attempt = 0; attempt < sources.size(); attempt++) {
+            Peer peer = sources.get((first + attempt) % sources.size());
+            try {
+                List<Block> blocks = new ArrayList<>(headers.size());
+                while (blocks.size() < headers.size()) {
+                    List<String> wanted = new ArrayList<>();
+                    for (Block header : headers.subList(blocks.size(), headers.size())) wanted.add(header.hash);
+                    List<Block> got = peer.blocks(wanted);
+                    if (got.isEmpty()) break; // this peer does not have them
+                    for (Block block : got) {
+                        Block header = headers.get(blocks.size());
+                        if (!matchesHeader(block, header)) throw new IOException("block " + header.index + " does not match its header");
+                        blocks.add(block);
+                        if (blocks.size() == headers.size()) break;
+                    }
+                }
+                if (blocks.size() == headers.size()) return blocks;
+            } catch (IOException | RuntimeException e) {
+                lastError = peer + ": " + e.getMessage();
+            }
+        }
+        throw new IOException(lastError);
+    }
+
+    // A body matches its header if it hashes to the header's hash and its transactions produce the
+    // committed Merkle root (legacy hashes cover the transactions directly).
+    private static boolean matchesHeader(Block block, Block header) {
+        if (!block.hash.equals(header.hash) || !block.calculateHash().equals(block.hash)) return false;
+        return block.version == Block.LEGACY_VERSION || block.computeMerkleRoot().equals(block.merkleRoot);
+    }
+}
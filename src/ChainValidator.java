@@ -0,0 +1,272 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+import java.util.concurrent.*;
+
+//   ChainValidator audits a full chain in a two-stage pipeline:
+//   - Stage 1 (parallel, one task per block): recompute the block hash, check PoW,
+//     check index and previousHash linkage, re-derive every transactionId and, for
+//     version 1 blocks, the Merkle root the header commits to and the coinbase's height
+//   - Stage 2 (sequential, in height order): replay the UTXO rules into a fresh UTXOSet,
+//     consuming stage-1 results as soon as each block's turn comes up; a coinbase may claim at
+//     most the block reward plus the fees of the block's transactions
+//   - Signature checks found during the replay go back to the pool in chunks, so the sequential
+//     stage never waits on Ed25519; their results are collected in height order
+//   Stage 1 runs at most `window` blocks ahead of stage 2, and at most `window` signature chunks
+//   are in flight, so memory stays bounded. The result reports the first invalid height and why.
+//   A pruned chain is validated from a UTXO checkpoint instead of genesis (see the anchored validate()).
+public class ChainValidator {
+
+    //   Outcome of a validation run.
+    public static final class Result {
+        public final boolean valid;
+        public final int firstInvalidHeight; // -1 when valid
+        public final String reason;
+
+        private Result(boolean valid, int firstInvalidHeight, String reason) {
+            this.valid = valid;
+            this.firstInvalidHeight = firstInvalidHeight;
+            this.reason = reason;
+        }
+
+        static Result ok() {
+            return new Result(true, -1, null);
+        }
+
+        static Result invalid(int height, String reason) {
+            return new Result(false, height, reason);
+        }
+
+        @Override public String toString() {
+            return valid ? "valid" : "invalid at height " + firstInvalidHeight + ": " + reason;
+        }
+    }
+
+    // Signature checks per pool task
+    private static final int SIGNATURE_CHUNK = 256;
+
+    // A chunk of one block's signature checks being verified on the pool
+    private static final class PendingSignatures {
+        final int height;
+        final Future<Boolean> verified;
+
+        PendingSignatures(int height, Future<Boolean> verified) {
+            this.height = height;
+            this.verified = verified;
+        }
+    }
+
+    private final int threads;
+    private final int window;
+    private final long rewardUnits;
+    private final SignatureVerifier verifier = SignatureVerifier.getDefault();
+
+    //   rewardUnits: the most a block's coinbase may mint on top of the block's fees.
+    public ChainValidator(long rewardUnits) {
+        this(Runtime.getRuntime().availableProcessors(), 256, rewardUnits);
+    }
+
+    public ChainValidator(int threads, int window, long rewardUnits) {
+        if (threads < 1 || window < 1) throw new IllegalArgumentException("threads and window must be >= 1");
+        if (rewardUnits < 0) throw new IllegalArgumentException("rewardUnits must not be negative");
+        this.threads = threads;
+        this.window = window;
+        this.rewardUnits = rewardUnits;
+    }
+
+    //   Validate chain against a PoW target of difficultyBits leading zero bits.
+    public Result validate(List<Block> chain, int difficultyBits) {
+        return validate(chain, difficultyBits, new UTXOSet(), -1);
+    }
+
+    //   Validate a pruned chain from a UTXO checkpoint: `anchor` is the UTXO set as of anchorHeight,
+    //   whose hash the caller has matched against the chain. Blocks up to anchorHeight only get
+    //   their header rules and the ids of whatever transactions they kept; the replay starts
+    //   from the anchor. anchorHeight -1 with an empty set is a full validation.
+    public Result validate(List<Block> chain, int difficultyBits, UTXOSet anchor, int anchorHeight) {
+        if (chain.isEmpty()) return Result.invalid(0, "empty chain");
+        if (anchorHeight >= chain.size()) return Result.invalid(chain.size() - 1, "UTXO checkpoint is above the tip");
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "chain-validator");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<String>> inFlight = new ArrayDeque<>();
+        Deque<PendingSignatures> signatureChecks = new ArrayDeque<>();
+        try {
+            UTXOSet replay = anchor;
+            int submitted = 0;
+            for (int height = 0; height < chain.size(); height++) {
+                // Keep stage 1 up to `window` blocks ahead of the replay
+                while (submitted < chain.size() && submitted < height + window) {
+                    final int h = submitted++;
+                    inFlight.addLast(pool.submit(() -> h <= anchorHeight
+                            ? checkPruned(chain, h, difficultyBits)
+                            : checkStateless(chain, h, difficultyBits)));
+                }
+
+                List<SignatureVerifier.Check> signatures = new ArrayList<>();
+                String failure = await(inFlight.removeFirst());
+                if (failure == null && height > anchorHeight) failure = replayBlock(replay, chain.get(height), rewardUnits, signatures);
+                if (failure != null) {
+                    // A lower block may still fail its signatures; that one is reported first
+                    Result earlier = drainSignatures(signatureChecks, 0);
+                    return earlier != null ? earlier : Result.invalid(height, failure);
+                }
+
+                for (int from = 0; from < signatures.size(); from += SIGNATURE_CHUNK) {
+                    List<SignatureVerifier.Check> chunk = signatures.subList(from, Math.min(signatures.size(), from + SIGNATURE_CHUNK));
+                    signatureChecks.addLast(new PendingSignatures(height, pool.submit(() -> verifyChunk(chunk))));
+                }
+                Result bad = drainSignatures(signatureChecks, window);
+                if (bad != null) return bad;
+            }
+            Result bad = drainSignatures(signatureChecks, 0);
+            return bad != null ? bad : Result.ok();
+        } finally {
+            for (Future<String> f : inFlight) f.cancel(true);
+            for (PendingSignatures p : signatureChecks) p.verified.cancel(true);
+            pool.shutdownNow();
+        }
+    }
+
+    // Collect finished signature chunks in height order, waiting while more than `keep` are pending.
+    // Returns the failure of the lowest failing block, or null.
+    private static Result drainSignatures(Deque<PendingSignatures> pending, int keep) {
+        while (!pending.isEmpty() && (pending.size() > keep || pending.peekFirst().verified.isDone())) {
+            PendingSignatures head = pending.removeFirst();
+            String failure;
+            try {
+                failure = head.verified.get() ? null : "bad signature";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "validation interrupted";
+            } catch (ExecutionException e) {
+                failure = "malformed signature: " + e.getCause();
+            }
+            if (failure != null) return Result.invalid(head.height, failure);
+        }
+        return null;
+    }
+
+    private boolean verifyChunk(List<SignatureVerifier.Check> chunk) {
+        for (SignatureVerifier.Check check : chunk) {
+            if (!verifier.verify(check)) return false;
+        }
+        return true;
+    }
+
+    // Stage 1: checks that only need the block itself and its predecessor's stored hash.
+    private static String checkStateless(List<Block> chain, int height, int difficultyBits) {
+        return checkBlock(chain.get(height), height > 0 ? chain.get(height - 1) : null, height, difficultyBits);
+    }
+
+    // Stage 1 at or below the anchor: the header rules and the ids of the transactions kept
+    // (legacy blocks are never pruned, their hash covers the transactions).
+    private static String checkPruned(List<Block> chain, int height, int difficultyBits) {
+        Block block = chain.get(height);
+        Block previous = height > 0 ? chain.get(height - 1) : null;
+        if (block.version == Block.LEGACY_VERSION) return checkBlock(block, previous, height, difficultyBits);
+        String failure = checkHeader(block, previous, height, difficultyBits);
+        if (failure != null) return failure;
+        for (Transaction tx : block.transactions) {
+            if (!tx.computeId().equals(tx.transactionId)) return "transaction id mismatch for " + tx.transactionId;
+        }
+        return null;
+    }
+
+    //   Header rules for a block at height on top of previous (null for genesis, which has no
+    //   proof of work and is pinned by hash instead): index, version
+    //   (no legacy block after a version 1 block), hash (version 1 only: a legacy hash also covers
+    //   the transactions), linkage and PoW.
+    //   Returns the failure, or null. Used on its own for headers-first sync.
+    static String checkHeader(Block block, Block previous, int height, int difficultyBits) {
+        if (block.index != height) return "index " + block.index + " at height " + height;
+        if (block.version != Block.LEGACY_VERSION && block.version != Block.CURRENT_VERSION) {
+            return "unknown block version " + block.version;
+        }
+        if (block.version != Block.LEGACY_VERSION && !block.calculateHash().equals(block.hash)) return "hash mismatch";
+        if (previous != null) {
+            if (block.version == Block.LEGACY_VERSION && previous.version != Block.LEGACY_VERSION) {
+                return "legacy block after a version " + previous.version + " block";
+            }
+            if (!block.previousHash.equals(previous.hash)) return "previousHash does not link";
+            if (HashUtil.leadingZeroBits(block.hash) < difficultyBits) return "insufficient proof of work";
+        }
+        return null;
+    }
+
+    //   Every check on a full block that needs only the block and its predecessor: the header
+    //   rules, transaction ids (each at most once: the root of [a, b, c] equals that of
+    //   [a, b, c, c], see MerkleTree), the Merkle root and the coinbase's height. Returns the
+    //   failure, or null.
+    static String checkBlock(Block block, Block previous, int height, int difficultyBits) {
+        if (block.transactions == null || block.transactions.isEmpty()) return "no transactions";
+        String failure = checkHeader(block, previous, height, difficultyBits);
+        if (failure != null) return failure;
+        if (block.version == Block.LEGACY_VERSION && !block.calculateHash().equals(block.hash)) return "hash mismatch";
+        Set<String> ids = new HashSet<>();
+        for (Transaction tx : block.transactions) {
+            if (!tx.computeId().equals(tx.transactionId)) return "transaction id mismatch for " + tx.transactionId;
+            if (!ids.add(tx.transactionId)) return "duplicate transaction " + tx.transactionId;
+        }
+        if (block.version != Block.LEGACY_VERSION && !block.computeMerkleRoot().equals(block.merkleRoot)) {
+            return "merkle root mismatch";
+        }
+        // The coinbase commits to the height, so no two coinbases share an id (legacy blocks predate this)
+        if (block.version != Block.LEGACY_VERSION && block.transactions.get(0).coinbaseHeight() != height) {
+            return "coinbase does not commit to height " + height;
+        }
+        return null;
+    }
+
+    //   Stage 2: UTXO rules, applied in order; signature checks are collected into `signatures`.
+    //   Past genesis (which mints the initial supply; Blockchain pins it by hash, so a peer cannot
+    //   supply one), the coinbase may pay out at most
+    //   rewardUnits plus the fees (inputs - outputs) of the block's other transactions.
+    static String replayBlock(UTXOSet utxo, Block block, long rewardUnits, List<SignatureVerifier.Check> signatures) {
+        List<Transaction> txs = block.transactions;
+        if (!txs.get(0).isCoinbase) return "first transaction is not a coinbase";
+        long feeUnits = 0;
+        try {
+            for (int i = 0; i < txs.size(); i++) {
+                Transaction tx = txs.get(i);
+                if (i > 0 && tx.isCoinbase) return "extra coinbase " + tx.transactionId;
+                if (!utxo.validateTransaction(tx, signatures)) return "invalid transaction " + tx.transactionId;
+                if (i > 0) feeUnits = Math.addExact(feeUnits, feeUnits(utxo, tx));
+                utxo.applyTransaction(tx);
+            }
+            if (block.index == 0) return null;
+            long claimed = 0;
+            for (Transaction.TxOutput out : txs.get(0).outputs) claimed = Math.addExact(claimed, Amounts.toUnits(out.amount));
+            long allowed = Math.addExact(rewardUnits, feeUnits);
+            if (claimed > allowed) {
+                return "coinbase pays " + Amounts.toCoins(claimed) + ", more than reward plus fees " + Amounts.toCoins(allowed);
+            }
+        } catch (ArithmeticException e) {
+            return "amounts overflow";
+        }
+        return null;
+    }
+
+    //   Inputs minus outputs of a transaction that validateTransaction() accepted against utxo
+    //   (so every input exists and the totals cannot overflow), before it is applied.
+    static long feeUnits(UTXOSet utxo, Transaction tx) {
+        long fee = 0;
+        for (Transaction.TxInput in : tx.inputs) fee += Amounts.toUnits(utxo.get(in.outPoint()).amount);
+        for (Transaction.TxOutput out : tx.outputs) fee -= Amounts.toUnits(out.amount);
+        return fee;
+    }
+
+    private static String await(Future<String> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "validation interrupted";
+        } catch (ExecutionException e) {
+            return "malformed block: " + e.getCause();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+
+//   Coin selection: which of a sender's unspent outputs fund a payment of `target` units
+//   (amount + fee). Implementations:
+//   - BranchAndBound: searches for inputs that cover the target with no change output (the
+//     excess, at most the dust threshold, goes to the fee), so the payment adds no UTXO; among
+//     matches it keeps the smallest excess, then the fewest inputs. Falls back to another selector
+//   - LargestFirst: the fewest inputs (the smallest transaction), biggest coins first
+//   - Consolidating: covers the target largest first, then also sweeps the sender's smallest
+//     coins (up to maxInputs in total) into the change, shrinking the set
+//   standard() is branch-and-bound, then largest-first. Every selector avoids dust: change below
+//   the dust threshold is left to the fee instead of becoming an output nobody can spend economically.
+public interface CoinSelector {
+
+    //   One spendable output of the sender and its value.
+    final class Coin {
+        public final OutPoint outPoint;
+        public final long units;
+
+        public Coin(OutPoint outPoint, long units) {
+            this.outPoint = outPoint;
+            this.units = units;
+        }
+    }
+
+    //   The chosen inputs and the change to pay back (0 = no change output).
+    final class Selection {
+        public final List<Coin> inputs;
+        public final long changeUnits;
+
+        public Selection(List<Coin> inputs, long changeUnits) {
+            this.inputs = inputs;
+            this.changeUnits = changeUnits;
+        }
+
+        //   Inputs covering target, with their excess as change unless it is dust.
+        public static Selection of(List<Coin> inputs, long target, long dustUnits) {
+            long total = 0;
+            for (Coin coin : inputs) total += coin.units;
+            if (total < target) throw new IllegalArgumentException("Inputs do not cover the target");
+            long change = total - target;
+            return new Selection(inputs, change < dustUnits ? 0 : change);
+        }
+    }
+
+    //   Pick coins worth at least target units; change below dustUnits is dropped into the fee.
+    //   Returns null if all the coins together do not cover target.
+    Selection select(List<Coin> coins, long target, long dustUnits);
+
+    //   Branch-and-bound for a changeless match, else largest-first.
+    static CoinSelector standard() {
+        return new BranchAndBound(BranchAndBound.DEFAULT_TRIES, new LargestFirst());
+    }
+
+    //   Biggest coins first, until the target is covered.
+    final class LargestFirst implements CoinSelector {
+        @Override
+        public Selection select(List<Coin> coins, long target, long dustUnits) {
+            List<Coin> sorted = descending(coins);
+            List<Coin> chosen = new ArrayList<>();
+            long total = 0;
+            for (Coin coin : sorted) {
+                if (total >= target) break;
+                chosen.add(coin);
+                total += coin.units;
+            }
+            return total < target ? null : Selection.of(chosen, target, dustUnits);
+        }
+    }
+
+    //   Largest-first to cover the target, then the smallest remaining coins up to maxInputs, all
+    //   merged into one change output. For wallets fragmented into many small outputs.
+    final class Consolidating implements CoinSelector {
+        public final int maxInputs;
+
+        public Consolidating(int maxInputs) {
+            if (maxInputs < 1) throw new IllegalArgumentException("maxInputs must be >= 1");
+            this.maxInputs = maxInputs;
+        }
+
+        @Override
+        public Selection select(List<Coin> coins, long target, long dustUnits) {
+            List<Coin> sorted = descending(coins);
+            int covered = 0;
+            long total = 0;
+            while (covered < sorted.size() && total < target) total += sorted.get(covered++).units;
+            if (total < target) return null;
+            List<Coin> chosen = new ArrayList<>(sorted.subList(0, covered));
+            for (int i = sorted.size() - 1; i >= covered && chosen.size() < maxInputs; i--) chosen.add(sorted.get(i));
+            return Selection.of(chosen, target, dustUnits);
+        }
+    }
+
+    //   Depth-first search over the coins, biggest first, for a subset worth between target and
+    //   target + dustUnits (include/exclude per coin, pruned when the sum overshoots or what is
+    //   left cannot reach the target). At most `tries` steps; no match falls back to `fallback`.
+    final class BranchAndBound implements CoinSelector {
+        public static final int DEFAULT_TRIES = 100_000;
+
+        private final int tries;
+        private final CoinSelector fallback;
+
+        public BranchAndBound(int tries, CoinSelector fallback) {
+            if (tries < 1) throw new IllegalArgumentException("tries must be >= 1");
+            this.tries = tries;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public Selection select(List<Coin> coins, long target, long dustUnits) {
+            List<Coin> sorted = descending(coins);
+            int n = sorted.size();
+            long[] value = new long[n];
+            long[] remaining = new long[n + 1]; // remaining[i] = sum of value[i..]
+            for (int i = 0; i < n; i++) value[i] = sorted.get(i).units;
+            for (int i = n - 1; i >= 0; i--) remaining[i] = remaining[i + 1] + value[i];
+            if (remaining[0] < target) return null;
+            long limit = target + Math.max(0, dustUnits);
+
+            int[] chosen = new int[n];
+            int depth = 0;
+            long sum = 0;
+            int[] best = null;
+            long bestExcess = Long.MAX_VALUE;
+            int i = 0;
+            for (int step = 0; step < tries; step++) {
+                boolean backtrack;
+                if (sum >= target) {
+                    long excess = sum - target;
+                    if (excess < bestExcess || (excess == bestExcess && depth < best.length)) {
+                        best = Arrays.copyOf(chosen, depth);
+                        bestExcess = excess;
+                        if (excess == 0 && depth == 1) break; // cannot do better
+                    }
+                    backtrack = true;
+                } else if (i == n || sum + remaining[i] < target) {
+                    backtrack = true;
+                } else if (sum + value[i] > limit) {
+                    i++; // overshoots: leave this coin out, smaller ones follow
+                    continue;
+                } else {
+                    chosen[depth++] = i;
+                    sum += value[i++];
+                    continue;
+                }
+                if (backtrack) {
+                    if (depth == 0) break; // search exhausted
+                    int last = chosen[--depth];
+                    sum -= value[last];
+                    // Leave `last` out; coins of the same value would only repeat the same sums
+                    i = last + 1;
+                    while (i < n && value[i] == value[last]) i++;
+                }
+            }
+            if (best == null) return fallback == null ? null : fallback.select(coins, target, dustUnits);
+            List<Coin> inputs = new ArrayList<>(best.length);
+            for (int index : best) inputs.add(sorted.get(index));
+            return new Selection(inputs, 0);
+        }
+    }
+
+    private static List<Coin> descending(List<Coin> coins) {
+        List<Coin> sorted = new ArrayList<>(coins);
+        sorted.sort((a, b) -> Long.compare(b.units, a.units));
+        return sorted;
+    }
+}
@@ -0,0 +1,240 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.function.LongPredicate;
+
+//   HashIndex is an on-disk, memory-mapped hash table from hashes (block hashes, tx ids) to a long:
+//   - header: [int magic][int version][int capacity][int size][int covered], then `capacity`
+//     slots of [long key][long value + 1] (value slot 0 = empty)
+//   - key = the first 8 bytes of the hash, so two hashes can share a key: lookups return every
+//     candidate to a predicate and the caller confirms against the real record
+//   - open addressing with linear probing, doubled (rewritten to a new file) past half full;
+//     removals shift the rest of the probe run back instead of leaving tombstones
+//   - `covered` is how many blocks the owner has indexed durably; sync() forces the slots before
+//     the header, so after a crash the owner re-indexes from `covered` and puts are idempotent
+//   The index is derived data: a missing or damaged file is simply rebuilt by the owner.
+public final class HashIndex implements Closeable {
+    private static final int MAGIC = 0x48494458; // "HIDX"
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int SLOT = 16;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER) / SLOT;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int size;
+
+    private HashIndex(Path path, FileChannel channel, MappedByteBuffer map, int capacity, int size) {
+        this.path = path;
+        this.channel = channel;
+        this.map = map;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    //   Open the index at path, or create an empty one if it is missing or not a valid index.
+    public static HashIndex open(Path path, int initialCapacity) throws IOException {
+        if (Files.exists(path)) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long fileSize = channel.size();
+            if (fileSize >= HEADER) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+                int capacity = header.getInt(8);
+                if (header.getInt(0) == MAGIC && header.getInt(4) == VERSION && capacity > 0
+                        && Integer.bitCount(capacity) == 1 && fileSize == HEADER + (long) capacity * SLOT) {
+                    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                    return new HashIndex(path, channel, map, capacity, map.getInt(12));
+                }
+            }
+            channel.close();
+        }
+        return create(path, Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1);
+    }
+
+    //   Number of blocks the owner has indexed and synced.
+    public int covered() {
+        return map.getInt(16);
+    }
+
+    //   Number of entries.
+    public int size() {
+        return size;
+    }
+
+    //   Map hash to value (value >= 0). Putting an existing pair again is a no-op.
+    public void put(String hash, long value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("value must be >= 0");
+        if ((size + 1) * 2L > capacity) grow();
+        long key = keyOf(hash);
+        int mask = capacity - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored == 0) {
+                map.putLong(at, key);
+                map.putLong(at + 8, value + 1);
+                size++;
+                return;
+            }
+            if (stored == value + 1 && map.getLong(at) == key) return;
+        }
+    }
+
+    //   First value stored under hash's key that `matches` accepts, or -1.
+    public long find(String hash, LongPredicate matches) {
+        return findKey(keyOf(hash), matches);
+    }
+
+    //   First value stored under a raw key (see keyOf) that `matches` accepts, or -1.
+    long findKey(long key, LongPredicate matches) {
+        int mask = capacity - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored == 0) return -1;
+            if (map.getLong(at) == key && matches.test(stored - 1)) return stored - 1;
+        }
+    }
+
+    //   Store value under a raw key in place of the first value `matches` accepts, or add it if
+    //   none does. Used when one entry per owner is updated in place (e.g. an address's newest entry).
+    void replaceKey(long key, LongPredicate matches, long value) throws IOException {
+        if (value < 0) throw new IllegalArgumentException("value must be >= 0");
+        int mask = capacity - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored == 0) break;
+            if (map.getLong(at) == key && matches.test(stored - 1)) {
+                map.putLong(at + 8, value + 1);
+                return;
+            }
+        }
+        if ((size + 1) * 2L > capacity) grow();
+        insertRaw(key, value + 1);
+    }
+
+    //   Remove the first value under a raw key that `matches` accepts, if any. Later slots of the
+    //   probe run are shifted back, so lookups never stop early at the hole.
+    void removeKey(long key, LongPredicate matches) {
+        int mask = capacity - 1;
+        int hole = -1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored == 0) return;
+            if (map.getLong(at) == key && matches.test(stored - 1)) {
+                hole = slot;
+                break;
+            }
+        }
+        for (int slot = (hole + 1) & mask; ; slot = (slot + 1) & mask) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored == 0) break;
+            int home = mix(map.getLong(at)) & mask;
+            // Move the entry into the hole unless its home lies cyclically in (hole, slot]
+            boolean reachable = hole <= slot ? home > hole && home <= slot : home > hole || home <= slot;
+            if (reachable) continue;
+            map.putLong(HEADER + hole * SLOT, map.getLong(at));
+            map.putLong(HEADER + hole * SLOT + 8, stored);
+            hole = slot;
+        }
+        map.putLong(HEADER + hole * SLOT, 0);
+        map.putLong(HEADER + hole * SLOT + 8, 0);
+        size--;
+    }
+
+    //   Force every entry to disk, then record `covered` blocks as indexed.
+    public void sync(int covered) {
+        map.putInt(12, size);
+        map.force();
+        map.putInt(16, covered);
+        map.force(0, HEADER);
+    }
+
+    //   Drop every entry (the owner re-indexes from scratch).
+    public void clear() throws IOException {
+        int initial = Math.min(capacity, 1 << 10);
+        channel.close();
+        Files.deleteIfExists(path);
+        HashIndex empty = create(path, initial);
+        channel = empty.channel;
+        map = empty.map;
+        capacity = empty.capacity;
+        size = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        map.putInt(12, size);
+        map.force();
+        channel.close();
+    }
+
+    // Rewrite every entry into a table twice the size, then swap it in atomically.
+    private void grow() throws IOException {
+        if (capacity >= MAX_CAPACITY / 2) throw new IllegalStateException("Hash index is full: " + path);
+        Path tmp = path.resolveSibling(path.getFileName() + ".grow");
+        Files.deleteIfExists(tmp);
+        HashIndex bigger = create(tmp, capacity * 2);
+        for (int slot = 0; slot < capacity; slot++) {
+            int at = HEADER + slot * SLOT;
+            long stored = map.getLong(at + 8);
+            if (stored != 0) bigger.insertRaw(map.getLong(at), stored);
+        }
+        bigger.map.putInt(12, bigger.size);
+        bigger.map.putInt(16, covered());
+        bigger.map.force();
+        bigger.channel.close();
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        capacity = bigger.capacity;
+        size = bigger.size;
+    }
+
+    private void insertRaw(long key, long stored) {
+        int mask = capacity - 1;
+        int slot = mix(key) & mask;
+        while (map.getLong(HEADER + slot * SLOT + 8) != 0) slot = (slot + 1) & mask;
+        map.putLong(HEADER + slot * SLOT, key);
+        map.putLong(HEADER + slot * SLOT + 8, stored);
+        size++;
+    }
+
+    private static HashIndex create(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+        map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, capacity).putInt(12, 0).putInt(16, 0);
+        map.force(0, HEADER);
+        return new HashIndex(path, channel, map, capacity, 0);
+    }
+
+    // First 8 bytes of a hex hash; any other string is hashed first so it still gets a key.
+    static long keyOf(String hash) {
+        if (hash.length() >= 16) {
+            long key = 0;
+            for (int i = 0; i < 16; i++) {
+                int nibble = Character.digit(hash.charAt(i), 16);
+                if (nibble < 0) return keyOf(HashUtil.sha256(hash));
+                key = (key << 4) | nibble;
+            }
+            return key;
+        }
+        return keyOf(HashUtil.sha256(hash));
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,57 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+//   Default OutputStore: a HashMap from OutPoint to the TxOutput objects of the transactions
+//   themselves, and receiver -> its outpoints in insertion order.
+public class HashMapOutputStore implements OutputStore {
+    private final Map<OutPoint, Transaction.TxOutput> outputs = new HashMap<>();
+    private final Map<String, Set<OutPoint>> byReceiver = new HashMap<>();
+
+    @Override public Transaction.TxOutput get(OutPoint op) {
+        return outputs.get(op);
+    }
+
+    @Override public boolean contains(OutPoint op) {
+        return outputs.containsKey(op);
+    }
+
+    @Override public Transaction.TxOutput put(OutPoint op, Transaction.TxOutput out) {
+        Transaction.TxOutput previous = outputs.put(op, out);
+        if (previous != null) unindex(op, previous);
+        byReceiver.computeIfAbsent(out.receiver, r -> new LinkedHashSet<>()).add(op);
+        return previous;
+    }
+
+    @Override public Transaction.TxOutput remove(OutPoint op) {
+        Transaction.TxOutput removed = outputs.remove(op);
+        if (removed != null) unindex(op, removed);
+        return removed;
+    }
+
+    @Override public int size() {
+        return outputs.size();
+    }
+
+    @Override public void clear() {
+        outputs.clear();
+        byReceiver.clear();
+    }
+
+    @Override public Collection<OutPoint> outputsOf(String receiver) {
+        Set<OutPoint> owned = byReceiver.get(receiver);
+        return owned == null ? Collections.emptySet() : Collections.unmodifiableSet(owned);
+    }
+
+    private void unindex(OutPoint op, Transaction.TxOutput out) {
+        Set<OutPoint> owned = byReceiver.get(out.receiver);
+        owned.remove(op);
+        if (owned.isEmpty()) byReceiver.remove(out.receiver);
+    }
+
+    @Override public void forEach(BiConsumer<OutPoint, Transaction.TxOutput> action) {
+        outputs.forEach(action);
+    }
+}
@@ -5,20 +5,80 @@ import java.security.MessageDigest;
 import java.nio.charset.StandardCharsets;
 
 public class HashUtil {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     //   Compute SHA-256 of the input string and return a hex string.
     public static String sha256(String data) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return toHex(digest.digest(data.getBytes(StandardCharsets.UTF_8)));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
+
+    //   Lower-case hex encoding of a byte array.
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    //   Decode a 64-char hex SHA-256 hash into its 32 raw bytes.
+    //   Throws IllegalArgumentException for anything else.
+    public static byte[] fromHex(String hex) {
+        if (hex == null || hex.length() != 64) throw new IllegalArgumentException("Not a SHA-256 hex hash: " + hex);
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) throw new IllegalArgumentException("Not a SHA-256 hex hash: " + hex);
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+    //   Decode hex of any even length (signatures, keys). Throws IllegalArgumentException on bad input.
+    public static byte[] decodeHex(String hex) {
+        if (hex == null || hex.length() % 2 != 0) throw new IllegalArgumentException("Not a hex string: " + hex);
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) throw new IllegalArgumentException("Not a hex string: " + hex);
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+    //   Number of leading zero bits in a hash.
+    public static int leadingZeroBits(byte[] hash) {
+        int bits = 0;
+        for (byte b : hash) {
+            if (b == 0) {
+                bits += 8;
+                continue;
+            }
+            return bits + Integer.numberOfLeadingZeros(b & 0xff) - 24;
+        }
+        return bits;
+    }
+
+    //   Number of leading zero bits in a hex-encoded hash.
+    public static int leadingZeroBits(String hex) {
+        int bits = 0;
+        for (int i = 0; i < hex.length(); i++) {
+            int nibble = Character.digit(hex.charAt(i), 16);
+            if (nibble < 0) return bits;
+            if (nibble == 0) {
+                bits += 4;
+                continue;
+            }
+            return bits + Integer.numberOfLeadingZeros(nibble) - 28;
+        }
+        return bits;
+    }
 }
@@ -0,0 +1,68 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+//   Histogram is a lock-free, fixed-size histogram of non-negative longs (latencies, sizes, counts):
+//   - Bucket b counts values in [2^(b-1), 2^b), bucket 0 counts zeros, so 64 buckets cover every long
+//   - Each bucket, the count and the sum are LongAdders: recording is a few uncontended adds on
+//     the calling thread's cell, cheap enough to leave on in production
+//   - Percentiles are estimated as the upper bound of the bucket they fall in (at most 2x high),
+//     capped by the exact maximum
+public final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    //   Record one value; negative values count as zero.
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    //   Estimated value at percentile p (0..100): the upper bound of the bucket holding it.
+    public long percentile(double p) {
+        long n = count.sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, p)) / 100));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b].sum();
+            if (seen >= rank) return b == 0 ? 0 : Math.min(max.get(), b == 63 ? Long.MAX_VALUE : (1L << b) - 1);
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d", count(), mean(), percentile(50), percentile(99), max());
+    }
+}
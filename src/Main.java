@@ -4,24 +4,55 @@
 import java.util.*;
 
 //   Minimal CLI for interacting with the blockchain:
-//   - send <from> <to> <amount>
-//   - mine <minerAddress>
+//   - send <from> <to> <amount> [fee]
+//   - mine <minerAddress>   (runs in the background)
 //   - balance <address>
+//   - history <address> [cursor]   (20 transactions per page, newest first)
 //   - show-chain
+//   - validate
+//   - export <file.json>
+//   - connect <host:port>   (add a peer; needs a listen port)
+//   - peers
+//   - sync                  (sync with the peers now instead of waiting for the next round)
+//   - metrics               (mining, mempool, UTXO, storage, sync and warning metrics; also over JMX)
+//   - rpc <port>            (serve JSON-RPC on localhost:<port>, see RpcServer)
 //   - exit
 
-//   Persists to blockchain.json on exit.
+//   Blocks are persisted to the blockchain.db block store as they are mined.
+//   blockchain.json is imported on first start and can be re-exported with `export`.
+//   Arguments: [storeDir] [listenPort] [host:port ...] run a node that serves and syncs with peers,
+//   e.g. a local cluster: `Main node1.db 9001` and `Main node2.db 9002 localhost:9001`.
+//   Metrics are registered as the MXBean blockchain:type=Node,name="<storeDir>" (jconsole, JMX)
+//   and emitted as JFR events when started with -XX:StartFlightRecording.
 public class Main {
     public static void main(String[] args) throws Exception {
         String filename = "blockchain.json";
-        Blockchain blockchain = Blockchain.loadBlockchain(filename);
+        String storeDir = args.length > 0 ? args[0] : "blockchain.db";
+        Blockchain blockchain = Blockchain.openBlockchain(storeDir, filename);
+        blockchain.metrics.register(storeDir);
+        PeerNode node = null;
+        RpcServer rpc = null;
+        if (args.length > 1) {
+            node = new PeerNode(blockchain, Integer.parseInt(args[1]));
+            for (int i = 2; i < args.length; i++) connectPeer(node, args[i]);
+            node.start();
+            System.out.println("Listening for peers on port " + node.getPort());
+        }
         Scanner scanner = new Scanner(System.in);
         System.out.println("\n Java Blockchain CLI \n");
         System.out.println("Commands:");
-        System.out.println("- send <sender> <receiver> <amount>");
+        System.out.println("- send <sender> <receiver> <amount> [fee]");
         System.out.println("- mine <minerAddress>");
         System.out.println("- balance <address>");
+        System.out.println("- history <address> [cursor]");
         System.out.println("- show-chain");
+        System.out.println("- validate");
+        System.out.println("- export <file.json>");
+        System.out.println("- connect <host:port>");
+        System.out.println("- peers");
+        System.out.println("- sync");
+        System.out.println("- metrics");
+        System.out.println("- rpc <port>");
         System.out.println("- exit");
 
         while (true) {
@@ -33,24 +64,29 @@ public class Main {
             try {
                 switch (parts[0]) {
                     case "send": {
-                        if (parts.length != 4) { System.out.println("Usage: send <sender> <receiver> <amount>"); break; }
+                        if (parts.length != 4 && parts.length != 5) { System.out.println("Usage: send <sender> <receiver> <amount> [fee]"); break; }
                         String sender = parts[1];
                         String receiver = parts[2];
                         double amount = Double.parseDouble(parts[3]);
-                        Transaction tx = blockchain.createSpend(sender, receiver, amount);
-                        boolean ok = blockchain.addTransaction(tx);
-                        System.out.println(ok ? "Transaction added: " + tx.transactionId : "Transaction rejected");
+                        double fee = parts.length == 5 ? Double.parseDouble(parts[4]) : 0.0;
+                        Transaction tx = blockchain.createSpend(sender, receiver, amount, fee);
+                        Mempool.Rejection rejection = blockchain.submitTransaction(tx);
+                        System.out.println(rejection == null ? "Transaction added: " + tx.transactionId : "Transaction rejected: " + rejection);
                         break;
                     }
                     case "mine": {
                         if (parts.length != 2) { System.out.println("Usage: mine <minerAddress>"); break; }
                         String miner = parts[1];
-                        blockchain.minePendingTransactions(miner);
-                        System.out.println("Mined a block.");
+                        // Mining runs in the background; the CLI keeps serving commands meanwhile
+                        blockchain.startMining(miner).whenComplete((mined, error) -> {
+                            if (error != null) System.out.println("Mining failed: " + error.getMessage());
+                            else System.out.println(mined ? "Mined a block." : "Mining cancelled.");
+                        });
+                        System.out.println("Mining started.");
                         break;
                     }
                     case "show-chain": {
-                        blockchain.printChain();
+                        System.out.println(blockchain.chainJson());
                         break;
                     }
                     case "balance": {
@@ -60,8 +96,56 @@ public class Main {
                         System.out.println("Balance of " + address + ": " + bal);
                         break;
                     }
+                    case "history": {
+                        if (parts.length != 2 && parts.length != 3) { System.out.println("Usage: history <address> [cursor]"); break; }
+                        long cursor = parts.length == 3 ? Long.parseLong(parts[2]) : 0;
+                        AddressIndex.Page page = blockchain.getHistory(parts[1], cursor, 20);
+                        for (AddressIndex.Entry entry : page.entries) System.out.println(entry);
+                        System.out.println(page.nextCursor < 0 ? "End of history." : "More: history " + parts[1] + " " + page.nextCursor);
+                        break;
+                    }
+                    case "validate": {
+                        System.out.println("Chain is " + blockchain.validateChain());
+                        break;
+                    }
+                    case "export": {
+                        if (parts.length != 2) { System.out.println("Usage: export <file.json>"); break; }
+                        blockchain.saveBlockchain(parts[1]);
+                        System.out.println("Blockchain exported to " + parts[1]);
+                        break;
+                    }
+                    case "connect": {
+                        if (parts.length != 2) { System.out.println("Usage: connect <host:port>"); break; }
+                        if (node == null) { System.out.println("Start with a listen port to use peers."); break; }
+                        connectPeer(node, parts[1]);
+                        System.out.println("Peer added: " + parts[1]);
+                        break;
+                    }
+                    case "peers": {
+                        System.out.println(node == null ? "No peers." : "Peers: " + node.getPeers());
+                        break;
+                    }
+                    case "sync": {
+                        if (node == null) { System.out.println("Start with a listen port to use peers."); break; }
+                        System.out.println("Sync: " + node.syncNow());
+                        break;
+                    }
+                    case "metrics": {
+                        System.out.println(blockchain.metrics.summary());
+                        break;
+                    }
+                    case "rpc": {
+                        if (parts.length != 2) { System.out.println("Usage: rpc <port>"); break; }
+                        if (rpc != null) { System.out.println("RPC already on port " + rpc.getPort()); break; }
+                        rpc = new RpcServer(blockchain, Integer.parseInt(parts[1]));
+                        rpc.start();
+                        System.out.println("JSON-RPC on http://localhost:" + rpc.getPort() + "/rpc");
+                        break;
+                    }
                     case "exit": {
-                        blockchain.saveBlockchain(filename);
+                        if (rpc != null) rpc.close();
+                        if (node != null) node.close();
+                        blockchain.close();
                         System.out.println("Blockchain saved. Exiting...");
                         scanner.close();
                         return;
@@ -74,4 +158,11 @@ public class Main {
             }
         }
     }
-}
\ No newline at end of file
+
+    // host:port -> outbound peer
+    private static void connectPeer(PeerNode node, String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 1) throw new IllegalArgumentException("Expected host:port, got " + address);
+        node.connect(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+}
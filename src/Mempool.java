@@ -0,0 +1,370 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+//   Mempool holds validated, unconfirmed transactions:
+//   - spentBy: outpoint -> pending tx spending it, for O(1) double-spend detection
+//   - created: outputs of pending txs, so a pending tx may spend another (parent/child chains)
+//   - byFeeRate: all entries ordered by fee per byte (fee = inputs - outputs), best first
+//   - A size limit; when full, the lowest fee-rate tx (and its descendants) is evicted
+//   Block templates walk byFeeRate from the top and only include a child after its parents,
+//   so building a k-tx template costs O(k log n) rather than a pass over the whole pool.
+//   Safe for concurrent use; admission of txs with disjoint inputs runs in parallel.
+//   addAll() admits a burst: stateless checks in parallel, then one ordered admission pass.
+public class Mempool {
+
+    //   Why a transaction was not admitted.
+    public enum Rejection {
+        COINBASE,          // coinbases are only created by miners
+        DUPLICATE,         // already in the mempool
+        MALFORMED,         // missing inputs/outputs or bad outpoint reference
+        INVALID_ID,        // transactionId does not match the tx contents
+        DUPLICATE_INPUT,   // same outpoint spent twice within the tx
+        MISSING_INPUT,     // referenced output is neither confirmed nor pending
+        BAD_SIGNATURE,     // an input is not signed by the key locking the output it spends
+        CONFLICT,          // referenced output is already spent by another pending tx
+        INVALID_AMOUNT,    // an output is not a valid amount (see Amounts.isValid), or the amounts overflow
+        OVERSPEND,         // outputs exceed inputs
+        MEMPOOL_FULL       // pool is full and the fee rate does not beat the lowest entry
+    }
+
+    // One pending transaction and its in-mempool relatives.
+    static final class Entry {
+        final Transaction tx;
+        final long fee;       // fixed-point units
+        final int size;       // estimated serialized bytes
+        final double feeRate; // units per byte
+        final long sequence;  // arrival order, breaks fee-rate ties
+        final Set<Entry> parents = new HashSet<>();
+        final Set<Entry> children = new HashSet<>();
+
+        Entry(Transaction tx, long fee, int size, long sequence) {
+            this.tx = tx;
+            this.fee = fee;
+            this.size = size;
+            this.feeRate = (double) fee / size;
+            this.sequence = sequence;
+        }
+    }
+
+    // Outcome of precheck(): a rejection, or the parsed inputs and output total
+    private static final class Prechecked {
+        final Rejection rejection;
+        final Set<OutPoint> inputs;
+        final long outputUnits;
+
+        Prechecked(Rejection rejection, Set<OutPoint> inputs, long outputUnits) {
+            this.rejection = rejection;
+            this.inputs = inputs;
+            this.outputUnits = outputUnits;
+        }
+
+        static Prechecked rejected(Rejection rejection) {
+            return new Prechecked(rejection, null, 0);
+        }
+    }
+
+    // Batches smaller than this are prechecked on the calling thread
+    private static final int PARALLEL_BATCH = 64;
+
+    private static final Comparator<Entry> BEST_FIRST =
+            Comparator.comparingDouble((Entry e) -> -e.feeRate).thenComparingLong(e -> e.sequence);
+
+    private final int maxSize;
+    private final SignatureVerifier verifier = SignatureVerifier.getDefault();
+
+    // Lookups are concurrent maps so admission can read them outside the monitor;
+    // every mutation happens while holding the monitor
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<OutPoint, Entry> spentBy = new ConcurrentHashMap<>();
+    private final Map<OutPoint, Transaction.TxOutput> created = new ConcurrentHashMap<>();
+    private final TreeSet<Entry> byFeeRate = new TreeSet<>(BEST_FIRST);
+    private long nextSequence;
+
+    // Admission locks, striped by outpoint: two txs spending the same output never validate at once
+    private final ReentrantLock[] stripes = new ReentrantLock[64];
+
+    public Mempool() {
+        this(100_000);
+    }
+
+    public Mempool(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be >= 1");
+        this.maxSize = maxSize;
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new ReentrantLock();
+    }
+
+    //   Validate tx against the confirmed UTXO set plus pending outputs, and admit it.
+    //   Returns null if accepted, otherwise the reason for rejection.
+    //   Thread-safe: txs touching different outpoints validate concurrently (striped locks per
+    //   outpoint); only the final insert into the ordered indexes is serialized.
+    //   The caller must keep `confirmed` stable for the duration of the call.
+    public Rejection add(Transaction tx, UTXOSet confirmed) {
+        return admit(tx, precheck(tx, confirmed), confirmed);
+    }
+
+    //   Admit a burst of transactions; the result list holds one entry per tx, in order
+    //   (null if accepted, otherwise the reason for rejection).
+    //   - Stateless checks (id, output amounts, duplicate inputs) and the signatures of inputs that
+    //     spend confirmed outputs run in parallel across the batch
+    //   - Admission against UTXOs and pending txs is then a single ordered pass, so a tx may spend
+    //     the outputs of an earlier tx in the same batch, and of two conflicting txs the first wins
+    //   Same locking contract as add().
+    public List<Rejection> addAll(List<Transaction> txs, UTXOSet confirmed) {
+        Prechecked[] checked = new Prechecked[txs.size()];
+        IntStream indexes = IntStream.range(0, txs.size());
+        if (txs.size() >= PARALLEL_BATCH) indexes = indexes.parallel();
+        indexes.forEach(i -> checked[i] = precheck(txs.get(i), confirmed));
+
+        List<Rejection> results = new ArrayList<>(txs.size());
+        for (int i = 0; i < txs.size(); i++) {
+            results.add(admit(txs.get(i), checked[i], confirmed));
+        }
+        return results;
+    }
+
+    // Checks that need only the transaction itself, plus signatures of inputs spending confirmed
+    // outputs (their keys cannot change while the caller holds `confirmed` stable); safe to run on
+    // any thread. Verified signatures land in the verifier's cache, so admit() does not redo them.
+    private Prechecked precheck(Transaction tx, UTXOSet confirmed) {
+        if (tx.isCoinbase) return Prechecked.rejected(Rejection.COINBASE);
+        if (tx.inputs == null || tx.inputs.isEmpty() || tx.outputs == null || tx.outputs.isEmpty()) {
+            return Prechecked.rejected(Rejection.MALFORMED);
+        }
+        if (tx.transactionId == null || !tx.transactionId.equals(tx.computeId())) {
+            return Prechecked.rejected(Rejection.INVALID_ID);
+        }
+        Set<OutPoint> inputs = new HashSet<>();
+        for (Transaction.TxInput in : tx.inputs) {
+            OutPoint op;
+            try {
+                op = in.outPoint();
+            } catch (IllegalArgumentException e) {
+                return Prechecked.rejected(Rejection.MALFORMED);
+            }
+            if (!inputs.add(op)) return Prechecked.rejected(Rejection.DUPLICATE_INPUT);
+        }
+        for (int i = 0; i < tx.inputs.size(); i++) {
+            Transaction.TxOutput referenced = confirmed.get(tx.inputs.get(i).outPoint());
+            if (referenced != null && referenced.publicKey != null && !verifier.verify(tx, i, referenced.publicKey)) {
+                return Prechecked.rejected(Rejection.BAD_SIGNATURE);
+            }
+        }
+        long outputUnits = 0;
+        for (Transaction.TxOutput out : tx.outputs) {
+            if (!Amounts.isValid(out.amount)) return Prechecked.rejected(Rejection.INVALID_AMOUNT);
+            try {
+                outputUnits = Math.addExact(outputUnits, Amounts.toUnits(out.amount));
+            } catch (ArithmeticException e) {
+                return Prechecked.rejected(Rejection.INVALID_AMOUNT);
+            }
+        }
+        return new Prechecked(null, inputs, outputUnits);
+    }
+
+    // Checks against confirmed and pending state, then insert.
+    private Rejection admit(Transaction tx, Prechecked checked, UTXOSet confirmed) {
+        if (checked.rejection != null) return checked.rejection;
+        if (byId.containsKey(tx.transactionId)) return Rejection.DUPLICATE;
+
+        // Lock the stripes of every input, in index order to avoid deadlock
+        int[] stripeIds = checked.inputs.stream().mapToInt(op -> (op.hashCode() & 0x7fffffff) % stripes.length)
+                .distinct().sorted().toArray();
+        for (int id : stripeIds) stripes[id].lock();
+        try {
+            long inputUnits = 0;
+            Set<Entry> parents = new HashSet<>();
+            List<SignatureVerifier.Check> signatures = new ArrayList<>();
+            for (int i = 0; i < tx.inputs.size(); i++) {
+                OutPoint op = tx.inputs.get(i).outPoint();
+                if (spentBy.containsKey(op)) return Rejection.CONFLICT;
+                Transaction.TxOutput referenced = confirmed.get(op);
+                if (referenced == null) {
+                    referenced = created.get(op);
+                    Entry parent = referenced == null ? null : byId.get(op.txId());
+                    if (parent == null) return Rejection.MISSING_INPUT;
+                    parents.add(parent);
+                }
+                if (referenced.publicKey != null) signatures.add(new SignatureVerifier.Check(tx, i, referenced.publicKey));
+                try {
+                    inputUnits = Math.addExact(inputUnits, Amounts.toUnits(referenced.amount));
+                } catch (ArithmeticException e) {
+                    return Rejection.INVALID_AMOUNT;
+                }
+            }
+            if (checked.outputUnits > inputUnits) return Rejection.OVERSPEND;
+            if (!verifier.verifyAll(signatures)) return Rejection.BAD_SIGNATURE;
+            return insert(tx, inputUnits - checked.outputUnits, parents);
+        } finally {
+            for (int id : stripeIds) stripes[id].unlock();
+        }
+    }
+
+    //   Rebuild the pool after a reorg: transactions of disconnected blocks (`returning`, in block
+    //   order) come back first, then the previously pending ones, all revalidated against the new
+    //   `confirmed` set. Txs whose inputs are still missing are retried while others get admitted,
+    //   so children admitted before their returning parents are not lost. Same locking contract as add().
+    //   Returns the number of pending transactions afterwards.
+    public int readmit(List<Transaction> returning, UTXOSet confirmed) {
+        List<Transaction> pending = new ArrayList<>(returning);
+        pending.addAll(transactions());
+        clear();
+        while (!pending.isEmpty()) {
+            List<Rejection> results = addAll(pending, confirmed);
+            List<Transaction> retry = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i++) {
+                if (results.get(i) == Rejection.MISSING_INPUT) retry.add(pending.get(i));
+            }
+            if (retry.size() == pending.size()) break; // no progress
+            pending = retry;
+        }
+        return size();
+    }
+
+    //   Pick up to maxTxs transactions for a block, best fee rate first, parents before children.
+    public synchronized List<Transaction> selectForBlock(int maxTxs) {
+        List<Transaction> selected = new ArrayList<>();
+        Set<Entry> included = new HashSet<>();
+        PriorityQueue<Entry> readyChildren = new PriorityQueue<>(BEST_FIRST);
+        Iterator<Entry> sorted = byFeeRate.iterator();
+        Entry nextSorted = sorted.hasNext() ? sorted.next() : null;
+
+        while (selected.size() < maxTxs && (nextSorted != null || !readyChildren.isEmpty())) {
+            Entry candidate;
+            if (nextSorted != null && (readyChildren.isEmpty() || BEST_FIRST.compare(nextSorted, readyChildren.peek()) <= 0)) {
+                candidate = nextSorted;
+                nextSorted = sorted.hasNext() ? sorted.next() : null;
+            } else {
+                candidate = readyChildren.poll();
+            }
+            // Already taken, or waiting on a parent: it comes back through readyChildren later
+            if (included.contains(candidate) || !included.containsAll(candidate.parents)) continue;
+
+            included.add(candidate);
+            selected.add(candidate.tx);
+            for (Entry child : candidate.children) {
+                if (included.containsAll(child.parents)) readyChildren.add(child);
+            }
+        }
+        return selected;
+    }
+
+    //   Drop transactions confirmed by a block, plus any pending tx that conflicts with it.
+    public synchronized void removeForBlock(List<Transaction> blockTxs) {
+        for (Transaction tx : blockTxs) {
+            Entry confirmed = byId.get(tx.transactionId);
+            if (confirmed != null) {
+                // Its children now spend confirmed outputs; they stay in the pool
+                for (Entry child : confirmed.children) child.parents.remove(confirmed);
+                confirmed.children.clear();
+                remove(confirmed);
+                continue;
+            }
+            if (tx.isCoinbase) continue;
+            for (Transaction.TxInput in : tx.inputs) {
+                Entry conflicting = spentBy.get(in.outPoint());
+                if (conflicting != null) removeWithDescendants(conflicting);
+            }
+        }
+    }
+
+    //   Remove a pending transaction (and everything that spends its outputs).
+    public synchronized boolean remove(String txId) {
+        Entry entry = byId.get(txId);
+        if (entry == null) return false;
+        removeWithDescendants(entry);
+        return true;
+    }
+
+    public boolean contains(String txId) {
+        return byId.containsKey(txId);
+    }
+
+    //   True if a pending transaction already spends op.
+    public boolean isSpent(OutPoint op) {
+        return spentBy.containsKey(op);
+    }
+
+    //   Fee of a pending transaction in fixed-point units, or -1 if unknown.
+    public long feeOf(String txId) {
+        Entry entry = byId.get(txId);
+        return entry == null ? -1 : entry.fee;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    //   Pending transactions, best fee rate first.
+    public synchronized List<Transaction> transactions() {
+        List<Transaction> txs = new ArrayList<>(byFeeRate.size());
+        for (Entry e : byFeeRate) txs.add(e.tx);
+        return txs;
+    }
+
+    public synchronized void clear() {
+        byId.clear();
+        spentBy.clear();
+        created.clear();
+        byFeeRate.clear();
+    }
+
+    //   Serialized size used for fee rates: the tx's exact canonical encoding.
+    static int estimateSize(Transaction tx) {
+        return BinaryCodec.sizeOf(tx);
+    }
+
+    // Link a validated tx into every index, then evict down to maxSize.
+    private synchronized Rejection insert(Transaction tx, long fee, Set<Entry> parents) {
+        if (byId.containsKey(tx.transactionId)) return Rejection.DUPLICATE;
+        for (Entry parent : parents) {
+            // A parent evicted or confirmed-and-conflicted since validation took its outputs with it
+            if (byId.get(parent.tx.transactionId) != parent) return Rejection.MISSING_INPUT;
+        }
+        Entry entry = new Entry(tx, fee, estimateSize(tx), nextSequence++);
+        if (byId.size() >= maxSize && BEST_FIRST.compare(entry, byFeeRate.last()) >= 0) {
+            return Rejection.MEMPOOL_FULL;
+        }
+
+        byId.put(tx.transactionId, entry);
+        byFeeRate.add(entry);
+        for (Transaction.TxInput in : tx.inputs) spentBy.put(in.outPoint(), entry);
+        for (int i = 0; i < tx.outputs.size(); i++) created.put(tx.outPoint(i), tx.outputs.get(i));
+        for (Entry parent : parents) {
+            entry.parents.add(parent);
+            parent.children.add(entry);
+        }
+
+        while (byId.size() > maxSize) {
+            removeWithDescendants(byFeeRate.last());
+        }
+        // Evicted along with a low fee-rate ancestor: it was not admitted after all
+        if (byId.get(tx.transactionId) != entry) return Rejection.MEMPOOL_FULL;
+        return null;
+    }
+
+    private void removeWithDescendants(Entry entry) {
+        Deque<Entry> pending = new ArrayDeque<>();
+        pending.push(entry);
+        while (!pending.isEmpty()) {
+            Entry e = pending.pop();
+            if (!byId.containsKey(e.tx.transactionId)) continue;
+            pending.addAll(e.children);
+            remove(e);
+        }
+    }
+
+    // Unlink one entry from every index.
+    private void remove(Entry entry) {
+        Transaction tx = entry.tx;
+        byId.remove(tx.transactionId);
+        byFeeRate.remove(entry);
+        for (Transaction.TxInput in : tx.inputs) spentBy.remove(in.outPoint());
+        for (int i = 0; i < tx.outputs.size(); i++) created.remove(tx.outPoint(i));
+        for (Entry parent : entry.parents) parent.children.remove(entry);
+    }
+}
@@ -0,0 +1,103 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.security.MessageDigest;
+import java.util.*;
+
+//   MerkleTree commits to a block's transaction ids:
+//   - Leaves are the raw 32-byte transaction ids; each parent is SHA-256(left || right)
+//   - An odd node at any level is paired with itself (as in Bitcoin), so [a, b, c] and
+//     [a, b, c, c] share a root (CVE-2012-2459): ChainValidator.checkBlock rejects blocks that
+//     repeat a transaction id before it compares roots
+//   - Inclusion proofs list the sibling hash at each level, so a light client can check that a
+//     transaction is in a block from the block header alone
+public final class MerkleTree {
+
+    //   Proof that the leaf at `index` belongs to a tree: sibling hashes from the leaf level upwards.
+    public static final class Proof {
+        public final int index;
+        public final List<String> siblings;
+
+        public Proof(int index, List<String> siblings) {
+            this.index = index;
+            this.siblings = Collections.unmodifiableList(new ArrayList<>(siblings));
+        }
+    }
+
+    private MerkleTree() {
+    }
+
+    //   Merkle root (hex) of the given transaction ids. An empty list has an all-zero root.
+    public static String root(List<String> txIds) {
+        if (txIds.isEmpty()) return HashUtil.toHex(new byte[32]);
+        List<byte[]> level = leaves(txIds);
+        MessageDigest digest = sha256();
+        while (level.size() > 1) {
+            level = parentLevel(level, digest);
+        }
+        return HashUtil.toHex(level.get(0));
+    }
+
+    //   Build an inclusion proof for txIds.get(index).
+    public static Proof proof(List<String> txIds, int index) {
+        if (index < 0 || index >= txIds.size()) throw new IndexOutOfBoundsException("index " + index);
+        List<byte[]> level = leaves(txIds);
+        MessageDigest digest = sha256();
+        List<String> siblings = new ArrayList<>();
+        int position = index;
+        while (level.size() > 1) {
+            int sibling = position ^ 1;
+            siblings.add(HashUtil.toHex(level.get(Math.min(sibling, level.size() - 1))));
+            level = parentLevel(level, digest);
+            position >>= 1;
+        }
+        return new Proof(index, siblings);
+    }
+
+    //   Check that txId is included under root according to proof.
+    public static boolean verify(String txId, Proof proof, String root) {
+        try {
+            byte[] node = HashUtil.fromHex(txId);
+            MessageDigest digest = sha256();
+            int position = proof.index;
+            for (String siblingHex : proof.siblings) {
+                byte[] sibling = HashUtil.fromHex(siblingHex);
+                node = (position & 1) == 0 ? combine(digest, node, sibling) : combine(digest, sibling, node);
+                position >>= 1;
+            }
+            return position == 0 && HashUtil.toHex(node).equals(root);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static List<byte[]> leaves(List<String> txIds) {
+        List<byte[]> level = new ArrayList<>(txIds.size());
+        for (String id : txIds) level.add(HashUtil.fromHex(id));
+        return level;
+    }
+
+    private static List<byte[]> parentLevel(List<byte[]> level, MessageDigest digest) {
+        List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+        for (int i = 0; i < level.size(); i += 2) {
+            byte[] left = level.get(i);
+            byte[] right = i + 1 < level.size() ? level.get(i + 1) : left;
+            parents.add(combine(digest, left, right));
+        }
+        return parents;
+    }
+
+    private static byte[] combine(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(left);
+        digest.update(right);
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+//   Miner is a parallel proof-of-work engine:
+//   - Splits the nonce space into stripes, one per worker thread (worker i tries i, i + n, i + 2n, ...)
+//   - Hashes the nonce-independent header prefix once; each attempt copies that midstate and only
+//     feeds the encoded nonce, then checks leading zero bits on the raw digest (no Strings per try)
+//   - Stops every worker as soon as one of them finds a valid hash
+//   - Can be cancelled from another thread, e.g. when a new tip arrives
+//   - Refreshes the block timestamp and searches again if the whole int nonce space is exhausted
+//   - Counts the hashes it tries (each worker adds its total once per search, not per hash)
+public class Miner {
+
+    private static Miner defaultMiner;
+
+    private final int threads;
+    private final ExecutorService workers;
+    private final LongAdder hashes = new LongAdder();
+
+    // The job currently being mined, if any; read by cancel() without taking the mining lock
+    private volatile Job current;
+
+    //   Create a miner with one worker per available core.
+    public Miner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public Miner(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be >= 1");
+        this.threads = threads;
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "miner-worker");
+            t.setDaemon(true); // never keep the CLI alive just because the pool exists
+            return t;
+        });
+    }
+
+    //   Shared miner used by Block.mineBlock(int).
+    public static synchronized Miner getDefault() {
+        if (defaultMiner == null) defaultMiner = new Miner();
+        return defaultMiner;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    //   Hashes tried since this miner was created.
+    public long getHashes() {
+        return hashes.sum();
+    }
+
+    //   Search for a nonce giving at least `difficultyBits` leading zero bits.
+    //   On success sets block.nonce and block.hash and returns true.
+    //   Returns false (leaving the block untouched) if cancel() was called first.
+    public synchronized boolean mine(Block block, int difficultyBits) {
+        Job job = new Job(difficultyBits);
+        current = job;
+        try {
+            while (true) {
+                job.prepare(block);
+                List<Callable<Void>> stripes = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    final int start = i;
+                    stripes.add(() -> {
+                        search(job, start, threads);
+                        return null;
+                    });
+                }
+                try {
+                    workers.invokeAll(stripes);
+                } catch (InterruptedException e) {
+                    job.stop();
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+
+                if (job.winningHash != null) {
+                    block.nonce = job.winningNonce;
+                    block.hash = HashUtil.toHex(job.winningHash); // only the winner is hex-encoded
+                    return true;
+                }
+                if (job.cancelled) return false;
+
+                // Every int nonce failed: change the header and start over
+                block.timestamp = System.currentTimeMillis();
+            }
+        } finally {
+            current = null;
+        }
+    }
+
+    //   Cancel the block currently being mined (no-op if idle).
+    public void cancel() {
+        Job job = current;
+        if (job != null) {
+            job.cancelled = true;
+            job.stop();
+        }
+    }
+
+    //   Release the worker threads.
+    public void shutdown() {
+        cancel();
+        workers.shutdownNow();
+    }
+
+    // One worker's stripe of the nonce space.
+    private void search(Job job, int start, int stride) {
+        Sha256 sha = new Sha256();
+        byte[] out = new byte[32];
+        byte[] nonceBytes = new byte[11];
+        long tried = 0;
+        try {
+            for (long n = start; n <= Integer.MAX_VALUE && !job.stopped; n += stride) {
+                int len = Block.encodeNonce(job.version, (int) n, nonceBytes);
+                sha.copyFrom(job.midstate);
+                sha.update(nonceBytes, nonceBytes.length - len, len);
+                sha.digest(out, 0);
+                tried++;
+                if (HashUtil.leadingZeroBits(out) >= job.difficultyBits) {
+                    job.offer((int) n, out.clone());
+                    return;
+                }
+            }
+        } finally {
+            hashes.add(tried);
+        }
+    }
+
+    // Shared state for one mining run.
+    private static final class Job {
+        final int difficultyBits;
+        final Sha256 midstate = new Sha256(); // read-only while workers run
+        int version;
+        volatile boolean stopped;
+        volatile boolean cancelled;
+        int winningNonce;
+        byte[] winningHash;
+
+        Job(int difficultyBits) {
+            this.difficultyBits = difficultyBits;
+        }
+
+        // Hash the nonce-independent part of the header once per search round
+        void prepare(Block block) {
+            version = block.version;
+            midstate.reset();
+            midstate.update(block.headerPrefix());
+        }
+
+        // First valid nonce wins; everyone else stops at their next check
+        synchronized void offer(int nonce, byte[] hash) {
+            if (winningHash != null || cancelled) return;
+            winningNonce = nonce;
+            winningHash = hash;
+            stopped = true;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import jdk.jfr.*;
+
+//   NodeEvents are the JDK Flight Recorder events emitted by NodeMetrics. They cost next to
+//   nothing unless a recording is running, e.g.
+//     java -XX:StartFlightRecording=filename=node.jfr ... Main
+//     jfr print --categories Blockchain node.jfr
+//   or a jdk.jfr.consumer.RecordingStream inside the process. TransactionRejected fires per
+//   transaction, so it is disabled by default; enable blockchain.TransactionRejected in the
+//   recording settings to see it.
+final class NodeEvents {
+
+    private NodeEvents() {
+    }
+
+    @Name("blockchain.BlockMined")
+    @Label("Block Mined")
+    @Category({"Blockchain", "Mining"})
+    @Description("A locally mined block was connected to the chain")
+    static final class BlockMined extends Event {
+        @Label("Height")
+        int height;
+
+        @Label("Transactions")
+        int transactions;
+
+        @Label("Nonces Tried")
+        long nonces;
+
+        @Label("Proof of Work Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long powTime;
+
+        @Label("Mining Latency")
+        @Description("From building the template to the connected block")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("blockchain.TransactionRejected")
+    @Label("Transaction Rejected")
+    @Category({"Blockchain", "Mempool"})
+    @Enabled(false)
+    static final class TransactionRejected extends Event {
+        @Label("Transaction Id")
+        String transactionId;
+
+        @Label("Reason")
+        String reason;
+    }
+
+    @Name("blockchain.Storage")
+    @Label("Storage Operation")
+    @Category({"Blockchain", "Storage"})
+    @Description("A save or load of blocks, UTXO snapshots or JSON exports")
+    static final class Storage extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("blockchain.Sync")
+    @Label("Chain Sync")
+    @Category({"Blockchain", "Peers"})
+    @Description("A sync round that connected blocks or failed")
+    static final class Sync extends Event {
+        @Label("Blocks Connected")
+        int connected;
+
+        @Label("Switched Branch")
+        boolean switched;
+
+        @Label("Error")
+        String error;
+    }
+
+    @Name("blockchain.Warning")
+    @Label("Warning")
+    @Category({"Blockchain"})
+    @Description("Something failed or was found damaged, and the node carried on")
+    static final class Warning extends Event {
+        @Label("Kind")
+        String kind;
+
+        @Label("Message")
+        String message;
+    }
+
+    @Name("blockchain.NodeStatistics")
+    @Label("Node Statistics")
+    @Category({"Blockchain"})
+    @Period("1 s")
+    static final class NodeStatistics extends Event {
+        @Label("Node")
+        String node;
+
+        @Label("Chain Height")
+        int height;
+
+        @Label("Mempool Size")
+        int mempoolSize;
+
+        @Label("UTXO Set Size")
+        long utxoSetSize;
+
+        @Label("Hashes")
+        long hashes;
+
+        @Label("Hash Rate")
+        @Description("Hashes per second of proof-of-work time")
+        double hashRate;
+
+        @Label("Transactions Rejected")
+        long rejected;
+    }
+}
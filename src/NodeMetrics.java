@@ -0,0 +1,389 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import javax.management.*;
+import jdk.jfr.FlightRecorder;
+
+//   NodeMetrics collects the runtime metrics of one Blockchain:
+//   - Mining: hashes tried and proof-of-work time (hash rate), nonces per block, and mining
+//     latency from building the template to the connected block
+//   - Blocks from peers: accepted, rejected and how long validation took
+//   - Mempool admission: accepted transactions and rejects by Mempool.Rejection reason
+//   - Gauges read on demand: mempool size, UTXO set size, chain height, blocks waiting to be written
+//   - Saves and loads (Storage): count, bytes and duration per operation
+//   - Peer sync rounds: blocks connected and failed rounds
+//   - Warnings: failures the node recovered from, counted per Warning kind and also logged through
+//     the System.Logger "blockchain" (the node itself never writes to stdout)
+//   Counters are LongAdders and distributions are Histograms, so recording never takes a lock
+//   and stays on in production. register() exposes them as a JMX MXBean; every record also
+//   emits a NodeEvents JFR event when a flight recording is running.
+public final class NodeMetrics implements NodeMetricsMXBean {
+
+    //   Instrumented save and load operations.
+    public enum Storage {
+        BLOCK_WRITE,         // one block appended to the block store (with its undo data)
+        BLOCK_COMMIT,        // one group commit of the block writer, including the force
+        UTXO_SNAPSHOT_SAVE,
+        UTXO_SNAPSHOT_LOAD,
+        PRUNE,               // one pruning pass, including the UTXO checkpoint (bytes = reclaimed)
+        CHAIN_LOAD,          // opening a store-backed chain, including the UTXO snapshot and replay
+        JSON_SAVE,
+        JSON_LOAD
+    }
+
+    //   Failures the node carries on from.
+    public enum Warning {
+        SNAPSHOT_MISMATCH,   // the UTXO snapshot is not on the stored chain; replayed instead
+        SNAPSHOT_WRITE,      // a UTXO snapshot or pruning pass failed; retried later
+        UNDO_UNREADABLE,     // a reorg fell back to replaying the chain
+        JSON_LOAD,           // an import failed; a new chain was started
+        PEER_SERVER          // the peer server's selector failed
+    }
+
+    private static final System.Logger LOG = System.getLogger("blockchain");
+
+    private final LongAdder blocksMined = new LongAdder();
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder powNanos = new LongAdder();
+    private final Histogram noncesPerBlock = new Histogram();
+    private final Histogram miningLatencyMicros = new Histogram();
+
+    private final LongAdder blocksAccepted = new LongAdder();
+    private final LongAdder blocksRejected = new LongAdder();
+    private final Histogram blockValidationMicros = new Histogram();
+
+    private final LongAdder transactionsAccepted = new LongAdder();
+    private final LongAdder[] rejects = new LongAdder[Mempool.Rejection.values().length];
+
+    private final LongAdder[] storageBytes = new LongAdder[Storage.values().length];
+    private final Histogram[] storageMicros = new Histogram[Storage.values().length];
+
+    private final LongAdder syncRounds = new LongAdder();
+    private final LongAdder blocksSynced = new LongAdder();
+    private final LongAdder syncFailures = new LongAdder();
+    private final LongAdder[] warnings = new LongAdder[Warning.values().length];
+
+    private final IntSupplier mempoolSize;
+    private final LongSupplier utxoSetSize;
+    private final IntSupplier chainHeight;
+    private final IntSupplier pendingWrites;
+
+    // Set while registered with JMX / JFR
+    private ObjectName objectName;
+    private Runnable statisticsHook;
+
+    public NodeMetrics(IntSupplier mempoolSize, LongSupplier utxoSetSize, IntSupplier chainHeight, IntSupplier pendingWrites) {
+        this.mempoolSize = mempoolSize;
+        this.utxoSetSize = utxoSetSize;
+        this.chainHeight = chainHeight;
+        this.pendingWrites = pendingWrites;
+        for (int i = 0; i < rejects.length; i++) rejects[i] = new LongAdder();
+        for (int i = 0; i < warnings.length; i++) warnings[i] = new LongAdder();
+        for (int i = 0; i < storageBytes.length; i++) {
+            storageBytes[i] = new LongAdder();
+            storageMicros[i] = new Histogram();
+        }
+    }
+
+    //   Proof-of-work time spent by the miner, whether or not it produced a block.
+    public void recordHashing(long nonces, long nanos) {
+        hashes.add(nonces);
+        powNanos.add(nanos);
+    }
+
+    //   A locally mined block was connected: nonces tried for it, its proof-of-work time and the
+    //   latency from template to connect.
+    public void recordBlockMined(Block block, long nonces, long powNanos, long latencyNanos) {
+        blocksMined.increment();
+        noncesPerBlock.record(nonces);
+        miningLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        NodeEvents.BlockMined event = new NodeEvents.BlockMined();
+        if (event.shouldCommit()) {
+            event.height = block.index;
+            event.transactions = block.transactions.size();
+            event.nonces = nonces;
+            event.powTime = powNanos;
+            event.latency = latencyNanos;
+            event.commit();
+        }
+    }
+
+    //   A block from a peer was validated (and connected if valid).
+    public void recordBlockReceived(boolean valid, long validationNanos) {
+        (valid ? blocksAccepted : blocksRejected).increment();
+        blockValidationMicros.record(TimeUnit.NANOSECONDS.toMicros(validationNanos));
+    }
+
+    //   Outcome of one mempool admission (null = accepted).
+    public void recordAdmission(Transaction tx, Mempool.Rejection rejection) {
+        if (rejection == null) {
+            transactionsAccepted.increment();
+            return;
+        }
+        rejects[rejection.ordinal()].increment();
+        NodeEvents.TransactionRejected event = new NodeEvents.TransactionRejected();
+        if (event.shouldCommit()) {
+            event.transactionId = tx.transactionId;
+            event.reason = rejection.name();
+            event.commit();
+        }
+    }
+
+    //   One save or load of `bytes` that took `nanos`.
+    public void recordStorage(Storage operation, long bytes, long nanos) {
+        storageBytes[operation.ordinal()].add(bytes);
+        storageMicros[operation.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        NodeEvents.Storage event = new NodeEvents.Storage();
+        if (event.shouldCommit()) {
+            event.operation = operation.name();
+            event.bytes = bytes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+
+    //   The outcome of one peer sync round.
+    public void recordSync(ChainSync.Outcome outcome) {
+        syncRounds.increment();
+        blocksSynced.add(outcome.connected);
+        if (outcome.error != null) syncFailures.increment();
+        if (outcome.connected == 0 && outcome.error == null) return;
+        NodeEvents.Sync event = new NodeEvents.Sync();
+        if (event.shouldCommit()) {
+            event.connected = outcome.connected;
+            event.switched = outcome.switched;
+            event.error = outcome.error;
+            event.commit();
+        }
+    }
+
+    //   A failure the node recovered from.
+    public void recordWarning(Warning kind, String message) {
+        warnings[kind.ordinal()].increment();
+        LOG.log(System.Logger.Level.WARNING, message);
+        NodeEvents.Warning event = new NodeEvents.Warning();
+        if (event.shouldCommit()) {
+            event.kind = kind.name();
+            event.message = message;
+            event.commit();
+        }
+    }
+
+    public long warnings(Warning kind) {
+        return warnings[kind.ordinal()].sum();
+    }
+
+    //   Rejects so far for one reason.
+    public long rejects(Mempool.Rejection reason) {
+        return rejects[reason.ordinal()].sum();
+    }
+
+    //   Count, bytes and duration histogram (microseconds) of one storage operation.
+    public long storageCount(Storage operation) {
+        return storageMicros[operation.ordinal()].count();
+    }
+
+    public long storageBytes(Storage operation) {
+        return storageBytes[operation.ordinal()].sum();
+    }
+
+    public Histogram storageMicros(Storage operation) {
+        return storageMicros[operation.ordinal()];
+    }
+
+    //   Expose these metrics as the MXBean blockchain:type=Node,name=<name> on the platform MBean
+    //   server and publish a NodeStatistics JFR event every second while recording.
+    public synchronized void register(String name) {
+        if (objectName != null) throw new IllegalStateException("Already registered as " + objectName);
+        try {
+            ObjectName on = new ObjectName("blockchain:type=Node,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register metrics for " + name, e);
+        }
+        statisticsHook = () -> {
+            NodeEvents.NodeStatistics event = new NodeEvents.NodeStatistics();
+            event.node = name;
+            event.height = getChainHeight();
+            event.mempoolSize = getMempoolSize();
+            event.utxoSetSize = getUtxoSetSize();
+            event.hashes = getHashes();
+            event.hashRate = getHashRate();
+            long rejected = 0;
+            for (LongAdder r : rejects) rejected += r.sum();
+            event.rejected = rejected;
+            event.commit();
+        };
+        FlightRecorder.addPeriodicEvent(NodeEvents.NodeStatistics.class, statisticsHook);
+    }
+
+    //   Undo register(); no-op if not registered.
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        FlightRecorder.removePeriodicEvent(statisticsHook);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already gone
+        }
+        objectName = null;
+        statisticsHook = null;
+    }
+
+    @Override public long getBlocksMined() {
+        return blocksMined.sum();
+    }
+
+    @Override public long getHashes() {
+        return hashes.sum();
+    }
+
+    @Override public double getHashRate() {
+        long nanos = powNanos.sum();
+        return nanos == 0 ? 0 : hashes.sum() * 1e9 / nanos;
+    }
+
+    @Override public double getMeanNoncesPerBlock() {
+        return noncesPerBlock.mean();
+    }
+
+    @Override public long getNoncesPerBlockP99() {
+        return noncesPerBlock.percentile(99);
+    }
+
+    @Override public double getMeanMiningLatencyMicros() {
+        return miningLatencyMicros.mean();
+    }
+
+    @Override public long getMiningLatencyP50Micros() {
+        return miningLatencyMicros.percentile(50);
+    }
+
+    @Override public long getMiningLatencyP99Micros() {
+        return miningLatencyMicros.percentile(99);
+    }
+
+    @Override public long getMiningLatencyMaxMicros() {
+        return miningLatencyMicros.max();
+    }
+
+    @Override public long getBlocksAccepted() {
+        return blocksAccepted.sum();
+    }
+
+    @Override public long getBlocksRejected() {
+        return blocksRejected.sum();
+    }
+
+    @Override public long getBlockValidationP99Micros() {
+        return blockValidationMicros.percentile(99);
+    }
+
+    @Override public int getMempoolSize() {
+        return mempoolSize.getAsInt();
+    }
+
+    @Override public long getTransactionsAccepted() {
+        return transactionsAccepted.sum();
+    }
+
+    @Override public Map<String, Long> getRejectsByReason() {
+        Map<String, Long> byReason = new LinkedHashMap<>();
+        for (Mempool.Rejection reason : Mempool.Rejection.values()) byReason.put(reason.name(), rejects(reason));
+        return byReason;
+    }
+
+    @Override public long getUtxoSetSize() {
+        return utxoSetSize.getAsLong();
+    }
+
+    @Override public int getChainHeight() {
+        return chainHeight.getAsInt();
+    }
+
+    @Override public int getPendingWrites() {
+        return pendingWrites.getAsInt();
+    }
+
+    @Override public Map<String, Long> getStorageCount() {
+        return byStorage(this::storageCount);
+    }
+
+    @Override public Map<String, Long> getStorageBytes() {
+        return byStorage(this::storageBytes);
+    }
+
+    @Override public Map<String, Long> getStorageTotalMicros() {
+        return byStorage(op -> storageMicros(op).sum());
+    }
+
+    @Override public Map<String, Long> getStorageP99Micros() {
+        return byStorage(op -> storageMicros(op).percentile(99));
+    }
+
+    @Override public long getSyncRounds() {
+        return syncRounds.sum();
+    }
+
+    @Override public long getBlocksSynced() {
+        return blocksSynced.sum();
+    }
+
+    @Override public long getSyncFailures() {
+        return syncFailures.sum();
+    }
+
+    @Override public Map<String, Long> getWarnings() {
+        Map<String, Long> byKind = new LinkedHashMap<>();
+        for (Warning kind : Warning.values()) byKind.put(kind.name(), warnings(kind));
+        return byKind;
+    }
+
+    @Override public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("mining: %d blocks, %d hashes, %.0f H/s, nonces/block %s%n",
+                getBlocksMined(), getHashes(), getHashRate(), noncesPerBlock));
+        sb.append("mining latency (us): ").append(miningLatencyMicros).append('\n');
+        sb.append(String.format("peer blocks: %d accepted, %d rejected, validation (us) %s%n",
+                getBlocksAccepted(), getBlocksRejected(), blockValidationMicros));
+        sb.append(String.format("mempool: %d pending, %d accepted, rejects %s%n",
+                getMempoolSize(), getTransactionsAccepted(), nonZero(getRejectsByReason())));
+        sb.append(String.format("chain: height %d, %d UTXOs, %d blocks waiting to be written%n",
+                getChainHeight(), getUtxoSetSize(), getPendingWrites()));
+        for (Storage op : Storage.values()) {
+            if (storageCount(op) == 0) continue;
+            sb.append(String.format("%s: %d bytes, (us) %s%n", op.name().toLowerCase(Locale.ROOT), storageBytes(op), storageMicros(op)));
+        }
+        if (getSyncRounds() > 0) {
+            sb.append(String.format("sync: %d rounds, %d blocks connected, %d failed%n", getSyncRounds(), getBlocksSynced(), getSyncFailures()));
+        }
+        Map<String, Long> warned = nonZero(getWarnings());
+        if (!warned.isEmpty()) sb.append("warnings: ").append(warned).append('\n');
+        return sb.toString().trim();
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static Map<String, Long> byStorage(ToLongFunction<Storage> value) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (Storage op : Storage.values()) map.put(op.name(), value.applyAsLong(op));
+        return map;
+    }
+
+    private static Map<String, Long> nonZero(Map<String, Long> counts) {
+        Map<String, Long> map = new LinkedHashMap<>(counts);
+        map.values().removeIf(v -> v == 0);
+        return map;
+    }
+}
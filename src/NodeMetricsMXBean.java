@@ -0,0 +1,48 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.Map;
+
+//   JMX view of NodeMetrics (see NodeMetrics.register). Latencies are in microseconds unless
+//   the name says otherwise; per-operation maps are keyed by NodeMetrics.Storage names.
+public interface NodeMetricsMXBean {
+
+    // Mining
+    long getBlocksMined();
+    long getHashes();
+    double getHashRate();
+    double getMeanNoncesPerBlock();
+    long getNoncesPerBlockP99();
+    double getMeanMiningLatencyMicros();
+    long getMiningLatencyP50Micros();
+    long getMiningLatencyP99Micros();
+    long getMiningLatencyMaxMicros();
+
+    // Blocks from peers
+    long getBlocksAccepted();
+    long getBlocksRejected();
+    long getBlockValidationP99Micros();
+
+    // Mempool and UTXO set
+    int getMempoolSize();
+    long getTransactionsAccepted();
+    Map<String, Long> getRejectsByReason();
+    long getUtxoSetSize();
+    int getChainHeight();
+
+    // Saves and loads
+    int getPendingWrites();
+    Map<String, Long> getStorageCount();
+    Map<String, Long> getStorageBytes();
+    Map<String, Long> getStorageTotalMicros();
+    Map<String, Long> getStorageP99Micros();
+
+    // Peers and recovered failures (keyed by NodeMetrics.Warning names)
+    long getSyncRounds();
+    long getBlocksSynced();
+    long getSyncFailures();
+    Map<String, Long> getWarnings();
+
+    //   Every metric as text, one line per group.
+    String summary();
+}
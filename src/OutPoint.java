@@ -0,0 +1,65 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.Arrays;
+
+//   OutPoint identifies a transaction output by (txId, output index).
+//   - Backed by the 32 raw bytes of the transaction hash instead of a 64-char hex String
+//   - Hash code is computed once at construction, so map lookups never rehash the bytes
+//   The hash array is shared, not copied (see Transaction.idBytes()); callers must not modify it.
+public final class OutPoint {
+    private final byte[] txHash;
+    public final int index;
+    private final int hash;
+
+    public OutPoint(byte[] txHash, int index) {
+        if (txHash.length != 32) throw new IllegalArgumentException("txHash must be 32 bytes");
+        this.txHash = txHash;
+        this.index = index;
+        this.hash = 31 * Arrays.hashCode(txHash) + index;
+    }
+
+    //   Parse a hex transaction id. Throws IllegalArgumentException if it is not a 32-byte hash.
+    public static OutPoint of(String txId, int index) {
+        return new OutPoint(HashUtil.fromHex(txId), index);
+    }
+
+    public String txId() {
+        return HashUtil.toHex(txHash);
+    }
+
+    //   Big-endian 64-bit word i (0..3) of the transaction hash.
+    public long hashWord(int i) {
+        long w = 0;
+        for (int b = 0; b < 8; b++) w = (w << 8) | (txHash[i * 8 + b] & 0xff);
+        return w;
+    }
+
+    //   Rebuild an outpoint from the four words returned by hashWord().
+    public static OutPoint fromWords(long w0, long w1, long w2, long w3, int index) {
+        byte[] bytes = new byte[32];
+        long[] words = {w0, w1, w2, w3};
+        for (int i = 0; i < 4; i++) {
+            for (int b = 7; b >= 0; b--) {
+                bytes[i * 8 + b] = (byte) words[i];
+                words[i] >>>= 8;
+            }
+        }
+        return new OutPoint(bytes, index);
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OutPoint)) return false;
+        OutPoint other = (OutPoint) o;
+        return hash == other.hash && index == other.index && Arrays.equals(txHash, other.txHash);
+    }
+
+    @Override public int hashCode() {
+        return hash;
+    }
+
+    @Override public String toString() {
+        return txId() + ":" + index;
+    }
+}
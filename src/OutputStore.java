@@ -0,0 +1,31 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+//   Storage backend for the unspent outputs of a UTXOSet.
+//   - HashMapOutputStore: plain HashMap of objects, the default
+//   - CompactOutputStore: open-addressing primitive arrays for very large sets
+public interface OutputStore {
+
+    Transaction.TxOutput get(OutPoint op);
+
+    boolean contains(OutPoint op);
+
+    //   Store an output; returns the output previously stored under op, or null.
+    Transaction.TxOutput put(OutPoint op, Transaction.TxOutput out);
+
+    //   Remove an output; returns it, or null if it was not present.
+    Transaction.TxOutput remove(OutPoint op);
+
+    int size();
+
+    void clear();
+
+    void forEach(BiConsumer<OutPoint, Transaction.TxOutput> action);
+
+    //   Outpoints of the stored outputs paying to receiver, oldest first. Only valid until the
+    //   store next changes.
+    Collection<OutPoint> outputsOf(String receiver);
+}
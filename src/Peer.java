@@ -0,0 +1,95 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+
+//   Peer is an outbound connection to another node:
+//   - one blocking SocketChannel carrying one request at a time (requests are synchronized), so
+//     parallel downloads use several peers rather than several requests per peer
+//   - replies are read with a timeout; any I/O or protocol error closes the channel, and the
+//     next request reconnects
+public final class Peer implements Closeable {
+    public final String host;
+    public final int port;
+    public int timeoutMillis = 10_000;
+
+    private SocketChannel channel;
+    private DataInputStream in;
+
+    public Peer(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    //   The peer's height, tip and chain work.
+    PeerProtocol.Status status() throws IOException {
+        return PeerProtocol.readStatus(request(PeerProtocol.getStatus(), PeerProtocol.STATUS));
+    }
+
+    //   Up to max headers following the first locator hash the peer knows.
+    List<Block> headers(List<String> locator, int max) throws IOException {
+        return PeerProtocol.readHeaders(request(PeerProtocol.getHeaders(locator, max), PeerProtocol.HEADERS));
+    }
+
+    //   The blocks with these hashes, in order, up to the first one the peer does not have
+    //   (or fewer, if the reply would be too large).
+    List<Block> blocks(List<String> hashes) throws IOException {
+        return PeerProtocol.readBlocks(request(PeerProtocol.getBlocks(hashes), PeerProtocol.BLOCKS));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already broken
+        }
+        channel = null;
+        in = null;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+
+    // Send one frame and return the body of the reply, which must be of type `expected`.
+    private synchronized ByteBuffer request(ByteBuffer frame, byte expected) throws IOException {
+        try {
+            if (channel == null) open();
+            while (frame.hasRemaining()) channel.write(frame);
+            int length = in.readInt();
+            if (length < 1) throw new IOException("Bad frame length " + length + " from " + this);
+            byte type = in.readByte();
+            if (type != expected && type != PeerProtocol.ERROR) throw new IOException("Unexpected reply type " + type + " from " + this);
+            if (length > PeerProtocol.maxFrame(type)) throw new IOException("Bad frame length " + length + " for type " + type + " from " + this);
+            byte[] reply = new byte[length - 1];
+            in.readFully(reply);
+            ByteBuffer body = ByteBuffer.wrap(reply);
+            if (type == PeerProtocol.ERROR) throw new IOException(this + " refused: " + BinaryCodec.readString(body));
+            return body;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Malformed reply from " + this, e);
+        }
+    }
+
+    private void open() throws IOException {
+        SocketChannel ch = SocketChannel.open();
+        try {
+            ch.socket().connect(new InetSocketAddress(host, port), timeoutMillis);
+            ch.socket().setSoTimeout(timeoutMillis);
+            ch.socket().setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(ch.socket().getInputStream(), 1 << 16));
+            channel = ch;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+}
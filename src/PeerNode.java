@@ -0,0 +1,247 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+//   PeerNode connects a Blockchain to other nodes over TCP (loopback by default, for a local cluster):
+//   - One NIO selector thread serves every inbound connection: frames are parsed from
+//     non-blocking reads and answered from the chain's lock-free snapshot, so serving peers
+//     never takes the chain's state lock. A connection is not read again until its previous
+//     reply has been written (per-connection backpressure)
+//   - Outbound peers are blocking request/response connections (Peer), driven by ChainSync
+//   - A sync thread asks the peers every syncIntervalMillis and moves this node to the heaviest
+//     valid chain they offer; syncNow() does the same on demand
+public final class PeerNode implements Closeable {
+    public final Blockchain blockchain;
+    public long syncIntervalMillis = 2000;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private final ChainSync sync;
+    private final LongAdder blocksServed = new LongAdder();
+    private Thread ioThread;
+    private ScheduledExecutorService syncTimer;
+    private volatile boolean closed;
+
+    // Read buffer and pending replies of one inbound connection
+    private static final class Connection {
+        ByteBuffer in = ByteBuffer.allocate(1 << 12);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    }
+
+    //   Listen on the loopback interface; port 0 picks a free port (see getPort()).
+    public PeerNode(Blockchain blockchain, int port) throws IOException {
+        this(blockchain, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public PeerNode(Blockchain blockchain, InetSocketAddress bindAddress) throws IOException {
+        this.blockchain = blockchain;
+        this.sync = new ChainSync(blockchain);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(bindAddress);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+    }
+
+    //   The port this node listens on.
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //   Start serving peers and the periodic sync.
+    public synchronized void start() {
+        if (ioThread != null) return;
+        ioThread = new Thread(this::serve, "peer-io-" + getPort());
+        ioThread.setDaemon(true);
+        ioThread.start();
+        syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "peer-sync-" + getPort());
+            t.setDaemon(true);
+            return t;
+        });
+        syncTimer.scheduleWithFixedDelay(this::syncNow, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //   Add an outbound peer (connected lazily, on the next sync).
+    public Peer connect(String host, int port) {
+        Peer peer = new Peer(host, port);
+        peers.add(peer);
+        return peer;
+    }
+
+    public List<Peer> getPeers() {
+        return Collections.unmodifiableList(peers);
+    }
+
+    //   Blocks sent to peers in BLOCKS replies since this node started.
+    public long getBlocksServed() {
+        return blocksServed.sum();
+    }
+
+    //   Sync with every peer now; one sync runs at a time. The outcome is recorded in the chain's metrics.
+    public synchronized ChainSync.Outcome syncNow() {
+        ChainSync.Outcome outcome;
+        try {
+            outcome = sync.sync(peers);
+        } catch (RuntimeException e) {
+            outcome = ChainSync.Outcome.failed(e.toString());
+        }
+        blockchain.metrics.recordSync(outcome);
+        return outcome;
+    }
+
+    //   Stop syncing and serving; the Blockchain stays open.
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            if (syncTimer != null) syncTimer.shutdownNow();
+        }
+        selector.wakeup();
+        if (ioThread != null) {
+            try {
+                ioThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Peer peer : peers) peer.close();
+        sync.close();
+        for (SelectionKey key : selector.keys()) key.channel().close();
+        selector.close();
+    }
+
+    // Selector loop: accept, read requests, write replies.
+    private void serve() {
+        while (!closed) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        key.cancel();
+                        key.channel().close();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) blockchain.metrics.recordWarning(NodeMetrics.Warning.PEER_SERVER, "Peer server error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(conn.in) < 0) {
+            key.cancel();
+            channel.close();
+            return;
+        }
+        ByteBuffer in = conn.in;
+        in.flip();
+        // A frame is at least the length and the type byte, which sets its cap
+        while (in.remaining() >= 5) {
+            int length = in.getInt(in.position());
+            byte type = in.get(in.position() + 4);
+            if (length < 1 || length > PeerProtocol.maxFrame(type)) throw new IOException("Bad frame length " + length + " for type " + type);
+            if (in.remaining() < 4 + length) {
+                if (in.capacity() < 4 + length) {
+                    conn.in = ByteBuffer.allocate(4 + length).put(in);
+                    in = conn.in;
+                    in.flip();
+                }
+                break;
+            }
+            ByteBuffer frame = in.slice(in.position() + 4, length);
+            in.position(in.position() + 4 + length);
+            conn.out.add(handle(frame.get(), frame.slice()));
+        }
+        in.compact();
+        // Hold further requests until the replies are out
+        if (!conn.out.isEmpty()) key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        while (!conn.out.isEmpty()) {
+            ByteBuffer head = conn.out.peekFirst();
+            channel.write(head);
+            if (head.hasRemaining()) return;
+            conn.out.removeFirst();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    // Answer one request frame.
+    private ByteBuffer handle(byte type, ByteBuffer body) {
+        try {
+            switch (type) {
+                case PeerProtocol.GET_STATUS: {
+                    Block tip = blockchain.getLatestBlock();
+                    return PeerProtocol.status(new PeerProtocol.Status(tip.index, tip.hash, blockchain.getGenesisHash(), blockchain.getChainWork()));
+                }
+                case PeerProtocol.GET_HEADERS: {
+                    int max = (int) Math.min(BinaryCodec.readVarint(body), PeerProtocol.MAX_HEADERS);
+                    List<String> locator = PeerProtocol.readHashes(body, PeerProtocol.MAX_LOCATOR);
+                    return PeerProtocol.headers(blockchain.getHeaders(locator, max));
+                }
+                case PeerProtocol.GET_BLOCKS: {
+                    List<Block> blocks = new ArrayList<>();
+                    long bytes = 0;
+                    for (String hash : PeerProtocol.readHashes(body, PeerProtocol.MAX_BLOCKS)) {
+                        Block block = blockchain.getBlockByHash(hash);
+                        if (block == null || block.pruned) break; // a pruned node cannot serve old bodies
+                        blocks.add(block);
+                        bytes += BinaryCodec.sizeOf(block);
+                        if (bytes >= PeerProtocol.SOFT_BLOCKS_BYTES) break;
+                    }
+                    blocksServed.add(blocks.size());
+                    return PeerProtocol.blocks(blocks);
+                }
+                default:
+                    return PeerProtocol.error("unknown request type " + type);
+            }
+        } catch (RuntimeException e) {
+            return PeerProtocol.error("bad request: " + e.getMessage());
+        }
+    }
+}
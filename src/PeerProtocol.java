@@ -0,0 +1,177 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+//   PeerProtocol is the node-to-node wire format. Every message is one frame:
+//   [int length][byte type][body], where length counts the type byte and the body.
+//   Bodies use BinaryCodec primitives:
+//   - GET_STATUS: empty                          -> STATUS: varint height | field tipHash |
+//                                                   field genesisHash | string work
+//   - GET_HEADERS: varint max | varint n | n x field locator hash
+//                                                -> HEADERS: varint n | n x block header
+//   - GET_BLOCKS: varint n | n x field hash      -> BLOCKS: varint n | n x block (the requested
+//     prefix the peer has, possibly cut short to keep the frame small; ask again for the rest)
+//   - ERROR: string message (reply to a request the peer could not serve)
+//   Each type has its own frame cap (maxFrame()): only BLOCKS may approach MAX_FRAME, so a peer
+//   cannot make the other side buffer megabytes by announcing a huge request or header list.
+final class PeerProtocol {
+    static final byte GET_STATUS = 1;
+    static final byte STATUS = 2;
+    static final byte GET_HEADERS = 3;
+    static final byte HEADERS = 4;
+    static final byte GET_BLOCKS = 5;
+    static final byte BLOCKS = 6;
+    static final byte ERROR = 7;
+
+    static final int MAX_FRAME = 1 << 26;
+    static final int MAX_HEADERS = 2000;
+    static final int MAX_BLOCKS = 16;
+    static final int MAX_LOCATOR = 128;
+    // A BLOCKS reply stops adding blocks once it is this large
+    static final int SOFT_BLOCKS_BYTES = 1 << 24;
+    static final int MAX_ERROR_LENGTH = 1024;
+    // Encoded size bounds: a hash field (tag, length, 32 bytes) and a block header
+    private static final int HASH_BYTES = 34;
+    private static final int HEADER_BYTES = 5 + 5 + 10 + 3 * HASH_BYTES + 4;
+
+    //   A peer's view of its own chain.
+    static final class Status {
+        final int height;
+        final String tipHash;
+        final String genesisHash;
+        final BigInteger work;
+
+        Status(int height, String tipHash, String genesisHash, BigInteger work) {
+            this.height = height;
+            this.tipHash = tipHash;
+            this.genesisHash = genesisHash;
+            this.work = work;
+        }
+    }
+
+    private PeerProtocol() {
+    }
+
+    static ByteBuffer getStatus() {
+        return start(GET_STATUS, 0).flip();
+    }
+
+    static ByteBuffer status(Status status) {
+        String work = status.work.toString();
+        ByteBuffer buf = start(STATUS, BinaryCodec.varintSize(status.height) + BinaryCodec.fieldSize(status.tipHash)
+                + BinaryCodec.fieldSize(status.genesisHash) + BinaryCodec.stringSize(work));
+        BinaryCodec.writeVarint(buf, status.height);
+        BinaryCodec.writeField(buf, status.tipHash);
+        BinaryCodec.writeField(buf, status.genesisHash);
+        BinaryCodec.writeString(buf, work);
+        return buf.flip();
+    }
+
+    static Status readStatus(ByteBuffer body) {
+        int height = (int) BinaryCodec.readVarint(body);
+        String tipHash = BinaryCodec.readField(body);
+        String genesisHash = BinaryCodec.readField(body);
+        return new Status(height, tipHash, genesisHash, new BigInteger(BinaryCodec.readString(body)));
+    }
+
+    static ByteBuffer getHeaders(List<String> locator, int max) {
+        ByteBuffer buf = start(GET_HEADERS, BinaryCodec.varintSize(max) + hashesSize(locator));
+        BinaryCodec.writeVarint(buf, max);
+        writeHashes(buf, locator);
+        return buf.flip();
+    }
+
+    static ByteBuffer headers(List<Block> headers) {
+        int size = BinaryCodec.varintSize(headers.size());
+        for (Block header : headers) size += BinaryCodec.headerSizeOf(header);
+        ByteBuffer buf = start(HEADERS, size);
+        BinaryCodec.writeVarint(buf, headers.size());
+        for (Block header : headers) BinaryCodec.writeHeader(buf, header);
+        return buf.flip();
+    }
+
+    static List<Block> readHeaders(ByteBuffer body) {
+        int n = count(body, MAX_HEADERS);
+        List<Block> headers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) headers.add(BinaryCodec.readHeader(body));
+        return headers;
+    }
+
+    static ByteBuffer getBlocks(List<String> hashes) {
+        ByteBuffer buf = start(GET_BLOCKS, hashesSize(hashes));
+        writeHashes(buf, hashes);
+        return buf.flip();
+    }
+
+    static ByteBuffer blocks(List<Block> blocks) {
+        int size = BinaryCodec.varintSize(blocks.size());
+        for (Block block : blocks) size += BinaryCodec.sizeOf(block);
+        ByteBuffer buf = start(BLOCKS, size);
+        BinaryCodec.writeVarint(buf, blocks.size());
+        for (Block block : blocks) BinaryCodec.writeBlock(buf, block);
+        return buf.flip();
+    }
+
+    static List<Block> readBlocks(ByteBuffer body) {
+        int n = count(body, MAX_BLOCKS);
+        List<Block> blocks = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) blocks.add(BinaryCodec.readBlock(body));
+        return blocks;
+    }
+
+    static ByteBuffer error(String message) {
+        if (message.length() > MAX_ERROR_LENGTH) message = message.substring(0, MAX_ERROR_LENGTH);
+        ByteBuffer buf = start(ERROR, BinaryCodec.stringSize(message));
+        BinaryCodec.writeString(buf, message);
+        return buf.flip();
+    }
+
+    //   Hashes of a GET_HEADERS locator or a GET_BLOCKS request, at most `max` of them.
+    static List<String> readHashes(ByteBuffer body, int max) {
+        int n = count(body, max);
+        List<String> hashes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) hashes.add(BinaryCodec.readField(body));
+        return hashes;
+    }
+
+    //   The largest length (type byte plus body) a well-formed frame of this type can have; readers
+    //   check it before buffering the body. Unknown types may not carry a body.
+    static int maxFrame(byte type) {
+        switch (type) {
+            case GET_STATUS: return 1;
+            case STATUS: return 1 + 5 + 2 * HASH_BYTES + 512;
+            case GET_HEADERS: return 1 + 5 + 2 + MAX_LOCATOR * HASH_BYTES;
+            case HEADERS: return 1 + 2 + MAX_HEADERS * HEADER_BYTES;
+            case GET_BLOCKS: return 1 + 1 + MAX_BLOCKS * HASH_BYTES;
+            case BLOCKS: return MAX_FRAME;
+            case ERROR: return 1 + 2 + 3 * MAX_ERROR_LENGTH;
+            default: return 1;
+        }
+    }
+
+    // A frame buffer with its length and type already written.
+    private static ByteBuffer start(byte type, int bodySize) {
+        if (bodySize + 1 > maxFrame(type)) throw new IllegalArgumentException("Frame too large: " + bodySize);
+        return ByteBuffer.allocate(5 + bodySize).putInt(1 + bodySize).put(type);
+    }
+
+    private static int hashesSize(List<String> hashes) {
+        int size = BinaryCodec.varintSize(hashes.size());
+        for (String hash : hashes) size += BinaryCodec.fieldSize(hash);
+        return size;
+    }
+
+    private static void writeHashes(ByteBuffer buf, List<String> hashes) {
+        BinaryCodec.writeVarint(buf, hashes.size());
+        for (String hash : hashes) BinaryCodec.writeField(buf, hash);
+    }
+
+    private static int count(ByteBuffer body, int max) {
+        long n = BinaryCodec.readVarint(body);
+        if (n > max) throw new IllegalArgumentException("Too many entries: " + n);
+        return (int) n;
+    }
+}
@@ -0,0 +1,437 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+//   RpcServer serves a Blockchain to wallet clients over HTTP on the JDK's built-in server
+//   (loopback by default):
+//   - POST /rpc takes JSON-RPC 2.0 calls with named params, one per request or a batch (a JSON
+//     array of up to MAX_BATCH calls, answered in order). Methods:
+//       getChainInfo, getBalance {address}, getBalances {addresses}, getBlock {height | hash},
+//       getBlocks {from, limit}, getTransaction {txId}, getHistory {address, cursor, limit},
+//       send {from, to, amount, fee, coinSelection}, sendMany {payments}, submitTransactions {transactions}
+//     (coinSelection: "standard", "largest-first" or "consolidate"; the node's default if absent)
+//   - GET /blocks?from=&to= streams blocks [from, to) as one JSON array, written block by block,
+//     so a full chain export never sits in memory
+//   - Reads go to the chain's lock-free snapshot; pages are capped at MAX_PAGE blocks
+//   Backpressure:
+//   - Requests run on a fixed pool of worker threads with a bounded queue; once that is full the
+//     server's dispatcher thread runs the request itself, so it stops accepting connections until
+//     a worker frees up instead of queueing without bound
+//   - At most maxSubmissions transactions are admitted at once; a send that would exceed that
+//     fails fast with SERVER_BUSY (HTTP 503 and Retry-After for a single call) and the client
+//     retries. A full mempool shows up as the MEMPOOL_FULL rejection
+//   - Sends from one address are serialized, so concurrent sends never pick the same outputs
+public final class RpcServer implements Closeable {
+    public static final int DEFAULT_THREADS = 32;
+    public static final int DEFAULT_QUEUE = 256;
+    public static final int DEFAULT_SUBMISSIONS = 4096;
+    public static final int MAX_BATCH = 1000;
+    public static final int MAX_PAGE = 100;
+    public static final int MAX_BODY = 4 << 20;
+    public static final int CONSOLIDATE_INPUTS = 100; // inputs per "consolidate" send
+
+    // JSON-RPC error codes
+    public static final int PARSE_ERROR = -32700;
+    public static final int INVALID_REQUEST = -32600;
+    public static final int METHOD_NOT_FOUND = -32601;
+    public static final int INVALID_PARAMS = -32602;
+    public static final int INTERNAL_ERROR = -32603;
+    public static final int REJECTED = -32000;     // the chain refused the call (e.g. insufficient funds)
+    public static final int SERVER_BUSY = -32001;  // too many transactions in flight; retry later
+
+    // A call that failed with a JSON-RPC error
+    private static final class RpcException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        RpcException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    public final Blockchain blockchain;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    // Package-private so tests can hold permits
+    final Semaphore submissions;
+    private final int maxSubmissions;
+    private final ReentrantLock[] senderLocks = new ReentrantLock[64];
+    private final Gson gson = new Gson();
+
+    //   Listen on the loopback interface; port 0 picks a free port (see getPort()).
+    public RpcServer(Blockchain blockchain, int port) throws IOException {
+        this(blockchain, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_THREADS, DEFAULT_QUEUE, DEFAULT_SUBMISSIONS);
+    }
+
+    public RpcServer(Blockchain blockchain, InetSocketAddress bindAddress, int threads, int queue, int maxSubmissions) throws IOException {
+        if (threads < 1 || queue < 1) throw new IllegalArgumentException("threads and queue must be >= 1");
+        if (maxSubmissions < MAX_BATCH) throw new IllegalArgumentException("maxSubmissions must be >= " + MAX_BATCH);
+        this.blockchain = blockchain;
+        this.maxSubmissions = maxSubmissions;
+        this.submissions = new Semaphore(maxSubmissions);
+        for (int i = 0; i < senderLocks.length; i++) senderLocks[i] = new ReentrantLock();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread t = new Thread(r, "rpc-worker");
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(bindAddress, 0);
+        server.setExecutor(workers);
+        server.createContext("/rpc", this::handleRpc);
+        server.createContext("/blocks", this::handleBlocks);
+    }
+
+    //   The port this server listens on.
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    //   Stop accepting requests and finish the running ones (up to a second); the Blockchain stays open.
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdownNow();
+    }
+
+    // POST /rpc: one call or a batch.
+    private void handleRpc(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            JsonElement request;
+            try {
+                request = JsonParser.parseString(new String(body, StandardCharsets.UTF_8));
+            } catch (JsonParseException e) {
+                reply(exchange, 200, error(JsonNull.INSTANCE, PARSE_ERROR, "Parse error: " + e.getMessage()));
+                return;
+            }
+            if (!request.isJsonArray()) {
+                JsonObject response = call(request);
+                if (response == null) {
+                    exchange.sendResponseHeaders(204, -1); // notification
+                } else if (isBusy(response)) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    reply(exchange, 503, response);
+                } else {
+                    reply(exchange, 200, response);
+                }
+                return;
+            }
+            JsonArray batch = request.getAsJsonArray();
+            if (batch.size() == 0 || batch.size() > MAX_BATCH) {
+                reply(exchange, 200, error(JsonNull.INSTANCE, INVALID_REQUEST, "A batch holds 1 to " + MAX_BATCH + " calls"));
+                return;
+            }
+            JsonArray responses = new JsonArray();
+            for (JsonElement each : batch) {
+                JsonObject response = call(each);
+                if (response != null) responses.add(response);
+            }
+            if (responses.size() == 0) exchange.sendResponseHeaders(204, -1);
+            else reply(exchange, 200, responses);
+        }
+    }
+
+    // GET /blocks?from=&to=: stream the blocks as a JSON array.
+    private void handleBlocks(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            List<Block> blocks = blockchain.getChain(); // one snapshot for the whole stream
+            Map<String, String> query = query(exchange.getRequestURI());
+            int from;
+            int to;
+            try {
+                from = Integer.parseInt(query.getOrDefault("from", "0"));
+                to = Math.min(blocks.size(), Integer.parseInt(query.getOrDefault("to", String.valueOf(blocks.size()))));
+            } catch (NumberFormatException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            if (from < 0 || from > to) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16))) {
+                writer.beginArray();
+                for (int h = from; h < to; h++) gson.toJson(blocks.get(h), Block.class, writer);
+                writer.endArray();
+            }
+        }
+    }
+
+    // One JSON-RPC call; null for a notification (no id).
+    private JsonObject call(JsonElement request) {
+        if (!request.isJsonObject()) return error(JsonNull.INSTANCE, INVALID_REQUEST, "A call must be a JSON object");
+        JsonObject call = request.getAsJsonObject();
+        JsonElement id = call.has("id") ? call.get("id") : null;
+        JsonElement method = call.get("method");
+        if (method == null || !method.isJsonPrimitive() || !method.getAsJsonPrimitive().isString()) {
+            return error(id == null ? JsonNull.INSTANCE : id, INVALID_REQUEST, "method must be a string");
+        }
+        JsonElement params = call.has("params") ? call.get("params") : new JsonObject();
+        JsonObject response;
+        try {
+            if (!params.isJsonObject()) throw new RpcException(INVALID_PARAMS, "params must be an object");
+            JsonObject result = new JsonObject();
+            result.addProperty("jsonrpc", "2.0");
+            result.add("result", dispatch(method.getAsString(), params.getAsJsonObject()));
+            result.add("id", id == null ? JsonNull.INSTANCE : id);
+            response = result;
+        } catch (RpcException e) {
+            response = error(id == null ? JsonNull.INSTANCE : id, e.code, e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            response = error(id == null ? JsonNull.INSTANCE : id, REJECTED, e.getMessage());
+        } catch (RuntimeException e) {
+            response = error(id == null ? JsonNull.INSTANCE : id, INTERNAL_ERROR, e.toString());
+        }
+        return id == null ? null : response;
+    }
+
+    private JsonElement dispatch(String method, JsonObject params) {
+        switch (method) {
+            case "getChainInfo": {
+                Block tip = blockchain.getLatestBlock();
+                JsonObject info = new JsonObject();
+                info.addProperty("height", tip.index);
+                info.addProperty("tipHash", tip.hash);
+                info.addProperty("chainWork", blockchain.getChainWork().toString());
+                info.addProperty("mempoolSize", blockchain.mempool.size());
+                return info;
+            }
+            case "getBalance":
+                return new JsonPrimitive(blockchain.checkBalance(string(params, "address")));
+            case "getBalances": {
+                JsonArray addresses = array(params, "addresses");
+                JsonObject balances = new JsonObject();
+                for (JsonElement address : addresses) {
+                    if (!address.isJsonPrimitive()) throw new RpcException(INVALID_PARAMS, "addresses must be strings");
+                    balances.addProperty(address.getAsString(), blockchain.checkBalance(address.getAsString()));
+                }
+                return balances;
+            }
+            case "getBlock": {
+                Block block = params.has("hash")
+                        ? blockchain.getBlockByHash(string(params, "hash"))
+                        : blockchain.getBlock(integer(params, "height", -1));
+                return block == null ? JsonNull.INSTANCE : gson.toJsonTree(block);
+            }
+            case "getBlocks": {
+                List<Block> blocks = blockchain.getChain();
+                int from = integer(params, "from", 0);
+                int limit = integer(params, "limit", MAX_PAGE);
+                if (from < 0 || limit < 1 || limit > MAX_PAGE) throw new RpcException(INVALID_PARAMS, "from must be >= 0 and limit 1.." + MAX_PAGE);
+                int to = (int) Math.min(blocks.size(), (long) from + limit);
+                JsonArray page = new JsonArray();
+                for (int h = from; h < to; h++) page.add(gson.toJsonTree(blocks.get(h)));
+                JsonObject result = new JsonObject();
+                result.add("blocks", page);
+                result.addProperty("next", to < blocks.size() ? to : -1);
+                return result;
+            }
+            case "getTransaction": {
+                Transaction tx = blockchain.getTransaction(string(params, "txId"));
+                return tx == null ? JsonNull.INSTANCE : gson.toJsonTree(tx);
+            }
+            case "getHistory": {
+                int limit = integer(params, "limit", MAX_PAGE);
+                if (limit < 1 || limit > MAX_PAGE) throw new RpcException(INVALID_PARAMS, "limit must be 1.." + MAX_PAGE);
+                AddressIndex.Page page = blockchain.getHistory(string(params, "address"), params.has("cursor") ? number(params, "cursor").longValue() : 0, limit);
+                JsonObject result = new JsonObject();
+                result.add("entries", gson.toJsonTree(page.entries));
+                result.addProperty("nextCursor", page.nextCursor);
+                return result;
+            }
+            case "send": {
+                acquire(1);
+                try {
+                    return send(params);
+                } finally {
+                    submissions.release(1);
+                }
+            }
+            case "sendMany": {
+                JsonArray payments = array(params, "payments");
+                acquire(payments.size());
+                try {
+                    JsonArray results = new JsonArray();
+                    for (JsonElement payment : payments) {
+                        try {
+                            if (!payment.isJsonObject()) throw new RpcException(INVALID_PARAMS, "payments must be objects");
+                            results.add(send(payment.getAsJsonObject()));
+                        } catch (RpcException e) {
+                            results.add(errorObject(e.code, e.getMessage()));
+                        } catch (IllegalArgumentException e) {
+                            results.add(errorObject(REJECTED, e.getMessage()));
+                        }
+                    }
+                    return results;
+                } finally {
+                    submissions.release(payments.size());
+                }
+            }
+            case "submitTransactions": {
+                JsonArray raw = array(params, "transactions");
+                List<Transaction> txs = new ArrayList<>(raw.size());
+                try {
+                    for (JsonElement each : raw) txs.add(gson.fromJson(each, Transaction.class));
+                } catch (JsonParseException e) {
+                    throw new RpcException(INVALID_PARAMS, "Malformed transaction: " + e.getMessage());
+                }
+                if (txs.contains(null)) throw new RpcException(INVALID_PARAMS, "transactions must be objects");
+                acquire(txs.size());
+                try {
+                    List<Mempool.Rejection> rejections = blockchain.addTransactions(txs);
+                    JsonArray results = new JsonArray();
+                    for (int i = 0; i < txs.size(); i++) results.add(admission(txs.get(i), rejections.get(i)));
+                    return results;
+                } finally {
+                    submissions.release(txs.size());
+                }
+            }
+            default:
+                throw new RpcException(METHOD_NOT_FOUND, "Unknown method " + method);
+        }
+    }
+
+    // Create, sign and admit one payment {from, to, amount, fee}; the caller holds its submission permit.
+    private JsonObject send(JsonObject payment) {
+        String from = string(payment, "from");
+        String to = string(payment, "to");
+        double amount = number(payment, "amount").doubleValue();
+        double fee = payment.has("fee") ? number(payment, "fee").doubleValue() : 0.0;
+        CoinSelector selector = payment.has("coinSelection") ? selector(string(payment, "coinSelection")) : blockchain.coinSelector;
+        ReentrantLock lock = senderLocks[Math.floorMod(from.hashCode(), senderLocks.length)];
+        lock.lock();
+        try {
+            Transaction tx = blockchain.createSpend(from, to, amount, fee, selector);
+            return admission(tx, blockchain.submitTransaction(tx));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static CoinSelector selector(String name) {
+        switch (name) {
+            case "standard": return CoinSelector.standard();
+            case "largest-first": return new CoinSelector.LargestFirst();
+            case "consolidate": return new CoinSelector.Consolidating(CONSOLIDATE_INPUTS);
+            default: throw new RpcException(INVALID_PARAMS, "Unknown coinSelection " + name);
+        }
+    }
+
+    private static JsonObject admission(Transaction tx, Mempool.Rejection rejection) {
+        JsonObject result = new JsonObject();
+        result.addProperty("txId", tx.transactionId);
+        result.addProperty("accepted", rejection == null);
+        if (rejection != null) result.addProperty("rejection", rejection.name());
+        return result;
+    }
+
+    // Take permits for n transactions, or fail fast when too many are being admitted.
+    private void acquire(int n) {
+        if (n > MAX_BATCH) throw new RpcException(INVALID_PARAMS, "At most " + MAX_BATCH + " transactions per call");
+        if (!submissions.tryAcquire(n)) {
+            throw new RpcException(SERVER_BUSY, "Server busy: " + maxSubmissions + " transactions in flight, retry later");
+        }
+    }
+
+    private static String string(JsonObject params, String name) {
+        JsonElement value = params.get(name);
+        if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+            throw new RpcException(INVALID_PARAMS, name + " must be a string");
+        }
+        return value.getAsString();
+    }
+
+    private static Number number(JsonObject params, String name) {
+        JsonElement value = params.get(name);
+        if (value == null || !value.isJsonPrimitive() || !value.getAsJsonPrimitive().isNumber()) {
+            throw new RpcException(INVALID_PARAMS, name + " must be a number");
+        }
+        return value.getAsNumber();
+    }
+
+    private static int integer(JsonObject params, String name, int missing) {
+        if (!params.has(name)) return missing;
+        double value = number(params, name).doubleValue();
+        if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE) throw new RpcException(INVALID_PARAMS, name + " must be an integer");
+        return (int) value;
+    }
+
+    private static JsonArray array(JsonObject params, String name) {
+        JsonElement value = params.get(name);
+        if (value == null || !value.isJsonArray()) throw new RpcException(INVALID_PARAMS, name + " must be an array");
+        return value.getAsJsonArray();
+    }
+
+    private static JsonObject error(JsonElement id, int code, String message) {
+        JsonObject response = new JsonObject();
+        response.addProperty("jsonrpc", "2.0");
+        response.add("error", errorObject(code, message));
+        response.add("id", id);
+        return response;
+    }
+
+    private static JsonObject errorObject(int code, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", message);
+        return error;
+    }
+
+    private static boolean isBusy(JsonObject response) {
+        return response.has("error") && response.getAsJsonObject("error").get("code").getAsInt() == SERVER_BUSY;
+    }
+
+    private void reply(HttpExchange exchange, int status, JsonElement body) throws IOException {
+        byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // name=value pairs of a query string (no repeated names; values are not URL-encoded here).
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> pairs = new HashMap<>();
+        String raw = uri.getRawQuery();
+        if (raw == null) return pairs;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) pairs.put(pair.substring(0, eq), pair.substring(eq + 1));
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,140 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+//   Sha256 is a small, allocation-free SHA-256 implementation for the mining hot path.
+//   - Exposes its internal state so a precomputed midstate can be copied into a worker instance
+//   - update()/digest() write into caller-owned buffers; nothing is allocated per hash
+//   MessageDigest is still used everywhere else; this class exists only because
+//   MessageDigest cannot be cheaply rewound to a midstate without clone().
+public final class Sha256 {
+
+    private static final int[] K = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private final int[] state = new int[8];
+    private final byte[] buffer = new byte[64];
+    private final int[] w = new int[64];
+    private int bufferLength;
+    private long totalBytes;
+
+    public Sha256() {
+        reset();
+    }
+
+    //   Return to the initial SHA-256 state.
+    public void reset() {
+        state[0] = 0x6a09e667;
+        state[1] = 0xbb67ae85;
+        state[2] = 0x3c6ef372;
+        state[3] = 0xa54ff53a;
+        state[4] = 0x510e527f;
+        state[5] = 0x9b05688c;
+        state[6] = 0x1f83d9ab;
+        state[7] = 0x5be0cd19;
+        bufferLength = 0;
+        totalBytes = 0;
+    }
+
+    //   Copy another instance's state (typically a precomputed midstate) into this one.
+    public void copyFrom(Sha256 other) {
+        System.arraycopy(other.state, 0, state, 0, 8);
+        System.arraycopy(other.buffer, 0, buffer, 0, other.bufferLength);
+        bufferLength = other.bufferLength;
+        totalBytes = other.totalBytes;
+    }
+
+    public void update(byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        totalBytes += length;
+        while (length > 0) {
+            int n = Math.min(64 - bufferLength, length);
+            System.arraycopy(data, offset, buffer, bufferLength, n);
+            bufferLength += n;
+            offset += n;
+            length -= n;
+            if (bufferLength == 64) {
+                compress();
+                bufferLength = 0;
+            }
+        }
+    }
+
+    //   Finish the hash, write the 32-byte digest into out[offset..], and reset.
+    public void digest(byte[] out, int offset) {
+        long bitLength = totalBytes * 8;
+        buffer[bufferLength++] = (byte) 0x80;
+        if (bufferLength > 56) {
+            while (bufferLength < 64) buffer[bufferLength++] = 0;
+            compress();
+            bufferLength = 0;
+        }
+        while (bufferLength < 56) buffer[bufferLength++] = 0;
+        for (int i = 7; i >= 0; i--) {
+            buffer[bufferLength++] = (byte) (bitLength >>> (i * 8));
+        }
+        compress();
+        for (int i = 0; i < 8; i++) {
+            int s = state[i];
+            out[offset + i * 4] = (byte) (s >>> 24);
+            out[offset + i * 4 + 1] = (byte) (s >>> 16);
+            out[offset + i * 4 + 2] = (byte) (s >>> 8);
+            out[offset + i * 4 + 3] = (byte) s;
+        }
+        reset();
+    }
+
+    // Process the 64-byte buffer into the state.
+    private void compress() {
+        for (int i = 0; i < 16; i++) {
+            w[i] = ((buffer[i * 4] & 0xff) << 24)
+                    | ((buffer[i * 4 + 1] & 0xff) << 16)
+                    | ((buffer[i * 4 + 2] & 0xff) << 8)
+                    | (buffer[i * 4 + 3] & 0xff);
+        }
+        for (int i = 16; i < 64; i++) {
+            int x = w[i - 15];
+            int y = w[i - 2];
+            int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+            int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+
+        int a = state[0], b = state[1], c = state[2], d = state[3];
+        int e = state[4], f = state[5], g = state[6], h = state[7];
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+}
@@ -0,0 +1,92 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//   SignatureVerifier checks input signatures against the public key locking the spent output:
+//   - verifyAll() spreads a list of checks over all cores once it is large enough
+//   - A bounded cache remembers (txId, input, signature) triples that already verified, so a tx
+//     checked on mempool admission is not verified again when it is mined or re-validated
+//   - Entries are evicted oldest-first once the cache is full
+//   The JDK's Ed25519 has no batch-verify API, so a "batch" here is a parallel pass over the checks.
+public class SignatureVerifier {
+
+    //   One signature to check: input `input` of tx, spending an output locked to publicKey.
+    public static final class Check {
+        final Transaction tx;
+        final int input;
+        final String publicKey;
+
+        public Check(Transaction tx, int input, String publicKey) {
+            this.tx = tx;
+            this.input = input;
+            this.publicKey = publicKey;
+        }
+    }
+
+    // Lists shorter than this are verified on the calling thread
+    private static final int PARALLEL_CHECKS = 16;
+
+    private static SignatureVerifier defaultVerifier;
+
+    private final int capacity;
+    // "txId:input" -> the signature that verified for it
+    private final ConcurrentHashMap<String, String> verified = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    public SignatureVerifier(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must be >= 0");
+        this.capacity = capacity;
+    }
+
+    //   Shared verifier (and cache) used by UTXOSet, Mempool and ChainValidator.
+    public static synchronized SignatureVerifier getDefault() {
+        if (defaultVerifier == null) defaultVerifier = new SignatureVerifier(200_000);
+        return defaultVerifier;
+    }
+
+    //   Verify one input's signature, consulting the cache first.
+    public boolean verify(Transaction tx, int input, String publicKey) {
+        String signature = tx.inputs.get(input).signature;
+        if (signature == null) return false;
+        String key = tx.transactionId + ":" + input;
+        // A hit must be for the same signature: ids do not cover signatures
+        if (signature.equals(verified.get(key))) return true;
+        if (!Signatures.verify(publicKey, tx.idBytes(), signature)) return false;
+        remember(key, signature);
+        return true;
+    }
+
+    public boolean verify(Check check) {
+        return verify(check.tx, check.input, check.publicKey);
+    }
+
+    //   True if every check passes; large lists are verified in parallel.
+    public boolean verifyAll(List<Check> checks) {
+        if (checks.isEmpty()) return true;
+        if (checks.size() < PARALLEL_CHECKS) {
+            for (Check c : checks) {
+                if (!verify(c)) return false;
+            }
+            return true;
+        }
+        return checks.parallelStream().allMatch(this::verify);
+    }
+
+    //   Number of cached verifications.
+    public int cacheSize() {
+        return verified.size();
+    }
+
+    private void remember(String key, String signature) {
+        if (capacity == 0) return;
+        if (verified.put(key, signature) == null) insertionOrder.add(key);
+        while (verified.size() > capacity) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) break;
+            verified.remove(oldest);
+        }
+    }
+}
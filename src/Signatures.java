@@ -0,0 +1,86 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.security.*;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+//   Ed25519 helpers on the JDK's built-in provider (no external crypto library):
+//   - Public keys travel as 64 hex chars (the raw 32-byte key), signatures as 128 hex chars
+//   - An input signs the 32 raw bytes of its transaction's id, which commits to every input and output
+//   - Signature/KeyFactory instances are per thread, so parallel verification never shares one
+public final class Signatures {
+    // DER prefix of an X.509-encoded Ed25519 public key; the raw 32-byte key follows it
+    private static final byte[] X509_PREFIX = HashUtil.decodeHex("302a300506032b6570032100");
+
+    private static final ThreadLocal<Signature> ED25519 = ThreadLocal.withInitial(() -> instance(() -> Signature.getInstance("Ed25519")));
+    private static final ThreadLocal<KeyFactory> KEYS = ThreadLocal.withInitial(() -> instance(() -> KeyFactory.getInstance("Ed25519")));
+
+    private Signatures() {
+    }
+
+    //   Generate a fresh key pair.
+    public static KeyPair generateKeyPair() {
+        try {
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //   Raw 32-byte public key as hex.
+    public static String publicKeyHex(PublicKey key) {
+        byte[] encoded = key.getEncoded();
+        return HashUtil.toHex(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length));
+    }
+
+    public static PublicKey decodePublicKey(String hex) throws GeneralSecurityException {
+        byte[] raw = HashUtil.fromHex(hex);
+        byte[] encoded = Arrays.copyOf(X509_PREFIX, X509_PREFIX.length + raw.length);
+        System.arraycopy(raw, 0, encoded, X509_PREFIX.length, raw.length);
+        return KEYS.get().generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    public static PrivateKey decodePrivateKey(String pkcs8Hex) throws GeneralSecurityException {
+        return KEYS.get().generatePrivate(new PKCS8EncodedKeySpec(HashUtil.decodeHex(pkcs8Hex)));
+    }
+
+    //   Sign message, returning the signature as hex.
+    public static String sign(PrivateKey key, byte[] message) {
+        try {
+            Signature signer = ED25519.get();
+            signer.initSign(key);
+            signer.update(message);
+            return HashUtil.toHex(signer.sign());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //   True if signatureHex is a valid signature of message by publicKeyHex.
+    //   Malformed keys or signatures simply fail verification.
+    public static boolean verify(String publicKeyHex, byte[] message, String signatureHex) {
+        if (publicKeyHex == null || signatureHex == null) return false;
+        try {
+            Signature verifier = ED25519.get();
+            verifier.initVerify(decodePublicKey(publicKeyHex));
+            verifier.update(message);
+            return verifier.verify(HashUtil.decodeHex(signatureHex));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T instance(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,17 +2,28 @@
 //sID: s4028018
 
 import java.util.*;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
 
 //   Transaction with:
-//   - Inputs: references to previous UTXOs (by txId and output index) and a placeholder signature
-//   - Outputs: payments to receivers with amounts
-//   - Coinbase flag: special transaction with no inputs that mints new coins
-//   - Deterministic transactionId derived from inputs/outputs
+//   - Inputs: references to previous UTXOs (by txId and output index) and an Ed25519 signature
+//   - Outputs: payments to receivers with amounts, locked to the owner's public key
+//   - Coinbase flag: special transaction that mints new coins; its only input spends nothing and
+//     carries the block height, so every coinbase has its own id
+//   - Deterministic transactionId derived from inputs/outputs:
+//     version 1 hashes the canonical BinaryCodec preimage; version 0 (txs saved before the codec)
+//     keeps the original text encoding so their stored ids still verify
 public class Transaction {
+    public static final int LEGACY_VERSION = 0;
+    public static final int CURRENT_VERSION = 1;
+
     public static class TxInput {
         public String prevTxId;
         public int outputIndex;
-        public String signature; // placeholder; not verifying cryptographically in this minimal version
+        public String signature; // hex Ed25519 signature of the tx id by the spent output's key
+
+        // Parsed form of prevTxId:outputIndex, computed on first use (not serialized)
+        private transient OutPoint outPoint;
 
         public TxInput(String prevTxId, int outputIndex, String signature) {
             this.prevTxId = prevTxId;
@@ -20,19 +31,34 @@ public class Transaction {
             this.signature = signature;
         }
 
+        //   The output this input spends.
+        //   Throws IllegalArgumentException if prevTxId is not a valid hash.
+        public OutPoint outPoint() {
+            if (outPoint == null) outPoint = OutPoint.of(prevTxId, outputIndex);
+            return outPoint;
+        }
+
         @Override public String toString() {
             return "in{" + prevTxId + ":" + outputIndex + "}";
         }
     }
 
     //   Output paying an amount to a receiver (address string).
+    //   publicKey (hex) is the key whose signature spends it; outputs created before signatures
+    //   have none and can still be spent without a signature.
     public static class TxOutput {
         public String receiver;
         public double amount;
+        public String publicKey;
 
         public TxOutput(String receiver, double amount) {
+            this(receiver, amount, null);
+        }
+
+        public TxOutput(String receiver, double amount, String publicKey) {
             this.receiver = receiver;
             this.amount = amount;
+            this.publicKey = publicKey;
         }
 
         @Override public String toString() {
@@ -43,6 +69,9 @@ public class Transaction {
     // Deterministic identifier for the transaction (hash of content)
     public String transactionId;
 
+    // Encoding version; absent (0) in JSON written before the binary codec
+    public int version;
+
     // List of inputs and outputs
     public List<TxInput> inputs = new ArrayList<>();
     public List<TxOutput> outputs = new ArrayList<>();
@@ -50,11 +79,23 @@ public class Transaction {
     // True if this is a coinbase transaction
     public boolean isCoinbase;
 
-    //   Create a coinbase transaction that mints new coins to receiver.
-    //   No inputs; one output for the minted amount.
-    public static Transaction coinbase(String receiver, double amount) {
+    // Raw bytes of transactionId, computed on first use (not serialized)
+    private transient byte[] idBytes;
+
+    //   Create the coinbase of the block at height, minting amount to receiver.
+    //   One input with no prevTxId whose outputIndex is the height (the height commitment: without
+    //   it, two coinbases paying the same miner the same amount would share an id, and the later
+    //   one would overwrite the earlier one's UTXO); one output for the minted amount.
+    public static Transaction coinbase(String receiver, double amount, int height) {
+        return coinbase(receiver, amount, null, height);
+    }
+
+    //   Coinbase whose output is locked to publicKey.
+    public static Transaction coinbase(String receiver, double amount, String publicKey, int height) {
+        if (height < 0) throw new IllegalArgumentException("height must not be negative");
         Transaction tx = new Transaction(true);
-        tx.outputs.add(new TxOutput(receiver, amount));
+        tx.inputs.add(new TxInput(null, height, null));
+        tx.outputs.add(new TxOutput(receiver, amount, publicKey));
         tx.finalizeId();
         return tx;
     }
@@ -62,6 +103,7 @@ public class Transaction {
     //   Regular transaction with specified inputs and outputs.
     public Transaction(List<TxInput> inputs, List<TxOutput> outputs) {
         this.isCoinbase = false;
+        this.version = CURRENT_VERSION;
         this.inputs.addAll(inputs);
         this.outputs.addAll(outputs);
         finalizeId();
@@ -69,17 +111,68 @@ public class Transaction {
 
     private Transaction(boolean coinbase) {
         this.isCoinbase = coinbase;
+        this.version = CURRENT_VERSION;
+    }
+
+    //   Recreate a stored transaction exactly as it was written, keeping its stored id.
+    //   Used by storage codecs; validation re-derives ids separately.
+    static Transaction restore(int version, String transactionId, boolean coinbase, List<TxInput> inputs, List<TxOutput> outputs) {
+        Transaction tx = new Transaction(coinbase);
+        tx.version = version;
+        tx.inputs.addAll(inputs);
+        tx.outputs.addAll(outputs);
+        tx.transactionId = transactionId;
+        return tx;
     }
 
-    //   Compute a deterministic transactionId by hashing a simple serialization
-    //   of inputs and outputs. For a production system, include versions, locktime,
-    //   scripts, and use canonical encoding.
+    //   Compute a deterministic transactionId by hashing the canonical encoding of inputs and outputs.
+    //   Signatures are not part of the id (each one signs it); output keys are.
     private void finalizeId() {
+        this.transactionId = computeId();
+        this.idBytes = null;
+    }
+
+    //   Re-derive the id from the current contents without changing transactionId.
+    //   Validation compares this against the stored id.
+    public String computeId() {
+        if (version != LEGACY_VERSION) {
+            try {
+                return HashUtil.toHex(MessageDigest.getInstance("SHA-256").digest(BinaryCodec.idPreimage(this)));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
         StringBuilder sb = new StringBuilder();
         sb.append(isCoinbase ? "coinbase|" : "tx|");
         for (TxInput in : inputs) sb.append(in.prevTxId).append(":").append(in.outputIndex).append("|");
-        for (TxOutput out : outputs) sb.append(out.receiver).append(":").append(out.amount).append("|");
-        this.transactionId = HashUtil.sha256(sb.toString());
+        for (TxOutput out : outputs) {
+            sb.append(out.receiver).append(":").append(out.amount);
+            if (out.publicKey != null) sb.append(":").append(out.publicKey);
+            sb.append("|");
+        }
+        return HashUtil.sha256(sb.toString());
+    }
+
+    //   Sign input `index` with key: the signature covers the transaction id.
+    public void signInput(int index, PrivateKey key) {
+        inputs.get(index).signature = Signatures.sign(key, idBytes());
+    }
+
+    //   The 32 raw bytes of transactionId. Shared by the OutPoints of this tx's outputs; do not modify.
+    public byte[] idBytes() {
+        if (idBytes == null) idBytes = HashUtil.fromHex(transactionId);
+        return idBytes;
+    }
+
+    //   Height a coinbase commits to, or -1 (not a coinbase, or a legacy coinbase without inputs).
+    public int coinbaseHeight() {
+        if (!isCoinbase || inputs.size() != 1 || inputs.get(0).prevTxId != null) return -1;
+        return inputs.get(0).outputIndex;
+    }
+
+    //   Outpoint of this transaction's output at index.
+    public OutPoint outPoint(int index) {
+        return new OutPoint(idBytes(), index);
     }
 
     @Override
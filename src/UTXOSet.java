@@ -1,104 +1,270 @@
 //Name: On Tuan Huy
 //sID: s4028018
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 //   UTXOSet tracks unspent transaction outputs and supports:
-//   - Validation of transactions against current UTXOs and reserved inputs
-//   - Reservation of inputs when txs enter mempool to avoid conflicts
+//   - Validation of transactions against current UTXOs, including the signature of every input
+//     spending a key-locked output (pending-tx conflicts are tracked by Mempool)
 //   - Applying transactions (spend inputs, add outputs)
-//   - Rebuild from chain by replaying all blocks and transactions
+//   - Rebuild from chain by replaying all blocks and transactions (only needed at load time)
+//   - Copy-on-write overlays for block-local validation without touching or cloning the live set
+//   - A running balance per address, so balance lookups are O(1), and the store's per-address
+//     index (OutputStore.outputsOf), so coin selection only visits the sender's own outputs
+//   - Binary snapshots tagged with (height, tip hash) so startup only replays blocks after the snapshot
 
-//   Keys are in the form "txId:index" for simplicity.
+//   Keys are OutPoints (raw 32-byte tx hash + index). Outputs live in a pluggable OutputStore;
+//   pass a CompactOutputStore for very large sets.
 public class UTXOSet {
+    private static final int SNAPSHOT_MAGIC = 0x5554584f; // "UTXO"
+    private static final int SNAPSHOT_VERSION = 2; // 2: outputs carry their public key
 
-    // UTXO map: "txId:index" -> TxOutput
-    private final Map<String, Transaction.TxOutput> utxos = new HashMap<>();
+    //   The chain tip a snapshot was taken at.
+    public static final class SnapshotTag {
+        public final int height;
+        public final String tipHash;
 
-    // Reserved inputs by mempool txs to prevent double spends before mining
-    private final Set<String> reserved = new HashSet<>();
+        SnapshotTag(int height, String tipHash) {
+            this.height = height;
+            this.tipHash = tipHash;
+        }
+    }
+
+    // UTXO store: outpoint -> TxOutput (for an overlay: only outputs created in the overlay)
+    private final OutputStore utxos;
+
+    // Receiver -> sum of its unspent outputs in units (for an overlay: the delta against the parent)
+    private final Map<String, Long> balances = new HashMap<>();
+
+    // Overlay support: the set this one sits on top of, and parent outputs spent in the overlay
+    private final UTXOSet parent;
+    private final Set<OutPoint> spent = new HashSet<>();
+
+    public UTXOSet() {
+        this(new HashMapOutputStore());
+    }
+
+    public UTXOSet(OutputStore store) {
+        this(store, null);
+    }
+
+    private UTXOSet(OutputStore store, UTXOSet parent) {
+        this.utxos = store;
+        this.parent = parent;
+    }
+
+    //   Create a copy-on-write overlay over this set.
+    //   Reads fall through to this set; spends and new outputs are recorded only in the overlay
+    //   until commit().
+    public UTXOSet overlay() {
+        return new UTXOSet(new HashMapOutputStore(), this);
+    }
+
+    //   Push an overlay's spends and new outputs down into its parent, in O(changes).
+    public void commit() {
+        if (parent == null) throw new IllegalStateException("Not an overlay");
+        for (OutPoint op : spent) {
+            parent.removeOutput(op);
+        }
+        utxos.forEach(parent::addOutput);
+        spent.clear();
+        utxos.clear();
+        balances.clear();
+    }
+
+    //   Outputs of the parent set that this overlay spends, i.e. the undo data of the block applied
+    //   to it: disconnecting that block means removing its outputs and restoring these. Call before commit().
+    public Map<OutPoint, Transaction.TxOutput> spentFromParent() {
+        if (parent == null) throw new IllegalStateException("Not an overlay");
+        Map<OutPoint, Transaction.TxOutput> outputs = new LinkedHashMap<>();
+        for (OutPoint op : spent) outputs.put(op, parent.get(op));
+        return outputs;
+    }
+
+    //   Undo a block applied earlier: remove every output it created, then restore the outputs it
+    //   spent (`undo`, as captured by spentFromParent()).
+    public void disconnectBlock(Block block, Map<OutPoint, Transaction.TxOutput> undo) {
+        for (int t = block.transactions.size() - 1; t >= 0; t--) {
+            Transaction tx = block.transactions.get(t);
+            for (int i = 0; i < tx.outputs.size(); i++) removeOutput(tx.outPoint(i));
+        }
+        undo.forEach(this::addOutput);
+    }
 
     // Add UTXOs for a coinbase or after applying a block/tx
     public void addOutput(String txId, int index, Transaction.TxOutput out) {
-        utxos.put(txId + ":" + index, out);
+        addOutput(OutPoint.of(txId, index), out);
+    }
+
+    public void addOutput(OutPoint op, Transaction.TxOutput out) {
+        if (parent != null && spent.remove(op)) {
+            // Restoring a parent output spent in this overlay (a disconnect, or the same tx in a
+            // new branch): cancel the spend so a later spend is recorded against the parent again
+            adjustBalance(out.receiver, Amounts.toUnits(out.amount));
+            return;
+        }
+        Transaction.TxOutput previous = utxos.put(op, out);
+        if (previous != null) adjustBalance(previous.receiver, -Amounts.toUnits(previous.amount));
+        spent.remove(op);
+        adjustBalance(out.receiver, Amounts.toUnits(out.amount));
     }
 
     // Remove UTXO when it’s spent
     public void removeOutput(String txId, int index) {
-        utxos.remove(txId + ":" + index);
-        reserved.remove(txId + ":" + index);
+        removeOutput(OutPoint.of(txId, index));
+    }
+
+    public void removeOutput(OutPoint op) {
+        Transaction.TxOutput removed = utxos.remove(op);
+        if (removed != null) {
+            adjustBalance(removed.receiver, -Amounts.toUnits(removed.amount));
+        } else if (parent != null && !spent.contains(op)) {
+            Transaction.TxOutput inherited = parent.get(op);
+            if (inherited != null) {
+                spent.add(op);
+                adjustBalance(inherited.receiver, -Amounts.toUnits(inherited.amount));
+            }
+        }
     }
 
     public boolean exists(String txId, int index) {
-        return utxos.containsKey(txId + ":" + index);
+        return get(OutPoint.of(txId, index)) != null;
     }
 
     public Transaction.TxOutput get(String txId, int index) {
-        return utxos.get(txId + ":" + index);
+        return get(OutPoint.of(txId, index));
     }
 
-    // Validate a transaction against the UTXO set and mempool reservations
+    public Transaction.TxOutput get(OutPoint op) {
+        Transaction.TxOutput out = utxos.get(op);
+        if (out == null && parent != null && !spent.contains(op)) {
+            out = parent.get(op);
+        }
+        return out;
+    }
+
+    //   Number of unspent outputs (live set only).
+    public int size() {
+        return utxos.size();
+    }
+
+    //   Sum of unspent outputs paying to address, in O(1).
+    //   On an overlay this includes the overlay's own spends and outputs.
+    public double balanceOf(String address) {
+        return Amounts.toCoins(balanceUnitsOf(address));
+    }
+
+    //   Same as balanceOf, in fixed-point units.
+    public long balanceUnitsOf(String address) {
+        long own = balances.getOrDefault(address, 0L);
+        return parent == null ? own : parent.balanceUnitsOf(address) + own;
+    }
+
+    //   Addresses whose balance this overlay changes (call before commit()).
+    public Set<String> touchedAddresses() {
+        if (parent == null) throw new IllegalStateException("Not an overlay");
+        return new HashSet<>(balances.keySet());
+    }
+
+    //   Visit every address balance of the live set, in fixed-point units.
+    public void forEachBalance(BiConsumer<String, Long> action) {
+        if (parent != null) throw new IllegalStateException("forEachBalance() is not supported on an overlay");
+        balances.forEach(action);
+    }
+
+    //   The unspent outpoints paying to address, in insertion order, until the set next changes.
+    //   Only available on the live set, not on overlays.
+    public Collection<OutPoint> outputsOf(String address) {
+        if (parent != null) throw new IllegalStateException("outputsOf() is not supported on an overlay");
+        return utxos.outputsOf(address);
+    }
+
+    // A zero balance of the live set reads the same as no entry, so it is dropped
+    private void adjustBalance(String address, long delta) {
+        long updated = balances.getOrDefault(address, 0L) + delta;
+        if (parent == null && updated == 0) {
+            balances.remove(address);
+        } else {
+            balances.put(address, updated);
+        }
+    }
+
+    // Validate a transaction against the UTXO set
     public boolean validateTransaction(Transaction tx) {
+        List<SignatureVerifier.Check> signatures = new ArrayList<>();
+        return validateTransaction(tx, signatures) && SignatureVerifier.getDefault().verifyAll(signatures);
+    }
+
+    //   Same checks, except that signatures are only collected into `signatures` for the caller
+    //   to verify (e.g. in bulk and in parallel). True means "valid if those signatures verify".
+    public boolean validateTransaction(Transaction tx, List<SignatureVerifier.Check> signatures) {
         if (tx.isCoinbase) {
             // No inputs, only check outputs are sane
-            return tx.outputs != null && !tx.outputs.isEmpty() && tx.outputs.stream().allMatch(o -> o.amount > 0);
+            return tx.outputs != null && !tx.outputs.isEmpty() && tx.outputs.stream().allMatch(o -> Amounts.isValid(o.amount));
         }
 
-        // All inputs must exist and not be reserved
-        double inputSum = 0.0;
-        Set<String> seenInputs = new HashSet<>();
-        for (Transaction.TxInput in : tx.inputs) {
-            String key = in.prevTxId + ":" + in.outputIndex;
+        // All inputs must exist; sums are in units, as in the mempool, so doubles never round apart,
+        // and overflow-checked, so no set of amounts can wrap around and pass the comparison below
+        long inputUnits = 0;
+        Set<OutPoint> seenInputs = new HashSet<>();
+        for (int i = 0; i < tx.inputs.size(); i++) {
+            OutPoint key;
+            try {
+                key = tx.inputs.get(i).outPoint();
+            } catch (IllegalArgumentException e) {
+                return false; // malformed prevTxId
+            }
 
             // No duplicates within this tx
             if (!seenInputs.add(key)) return false;
 
-            // Must exist and not be reserved already (by other pending tx)
-            Transaction.TxOutput referenced = utxos.get(key);
+            // Must exist
+            Transaction.TxOutput referenced = get(key);
             if (referenced == null) return false;
-            if (reserved.contains(key)) return false;
 
-            // Minimal ownership/signature verification skipped here
-            inputSum += referenced.amount;
+            // Must be signed by the output's key (outputs from before signatures have none)
+            if (referenced.publicKey != null) {
+                signatures.add(new SignatureVerifier.Check(tx, i, referenced.publicKey));
+            }
+            try {
+                inputUnits = Math.addExact(inputUnits, Amounts.toUnits(referenced.amount));
+            } catch (ArithmeticException e) {
+                return false;
+            }
         }
 
-        // Outputs must be positive and not exceed inputs
+        // Outputs must be valid amounts and not exceed inputs
         if (tx.outputs == null || tx.outputs.isEmpty()) return false;
-        double outputSum = 0.0;
+        long outputUnits = 0;
         for (Transaction.TxOutput out : tx.outputs) {
-            if (out.amount <= 0) return false;
-            outputSum += out.amount;
+            if (!Amounts.isValid(out.amount)) return false;
+            try {
+                outputUnits = Math.addExact(outputUnits, Amounts.toUnits(out.amount));
+            } catch (ArithmeticException e) {
+                return false;
+            }
         }
-        if (outputSum > inputSum) return false;
+        if (outputUnits > inputUnits) return false;
 
         return true;
     }
 
-    // Reserve inputs when adding tx to mempool
-    public void reserveInputs(Transaction tx) {
-        if (tx.isCoinbase) return;
-        for (Transaction.TxInput in : tx.inputs) {
-            reserved.add(in.prevTxId + ":" + in.outputIndex);
-        }
-    }
-
-    // Release reservations (e.g., if tx removed from mempool)
-    public void releaseInputs(Transaction tx) {
-        if (tx.isCoinbase) return;
-        for (Transaction.TxInput in : tx.inputs) {
-            reserved.remove(in.prevTxId + ":" + in.outputIndex);
-        }
-    }
-
     // Apply a validated transaction to the UTXO set
     public void applyTransaction(Transaction tx) {
         if (!tx.isCoinbase) {
             for (Transaction.TxInput in : tx.inputs) {
-                removeOutput(in.prevTxId, in.outputIndex);
+                removeOutput(in.outPoint());
             }
         }
         for (int i = 0; i < tx.outputs.size(); i++) {
-            addOutput(tx.transactionId, i, tx.outputs.get(i));
+            addOutput(tx.outPoint(i), tx.outputs.get(i));
         }
     }
 
@@ -109,24 +275,99 @@ public class UTXOSet {
         }
     }
 
+    //   Write every unspent output to file, tagged with the block it reflects.
+    //   Goes through a temp file and an atomic rename, so a crash never leaves a half-written snapshot.
+    public void writeSnapshot(Path file, int height, String tipHash) throws IOException {
+        if (parent != null) throw new IllegalStateException("Cannot snapshot an overlay");
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fos, crc), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(height);
+            out.writeUTF(tipHash);
+            out.writeInt(utxos.size());
+            IOException[] failure = new IOException[1];
+            utxos.forEach((op, o) -> {
+                if (failure[0] != null) return;
+                try {
+                    for (int i = 0; i < 4; i++) out.writeLong(op.hashWord(i));
+                    out.writeInt(op.index);
+                    out.writeUTF(o.receiver);
+                    out.writeLong(Amounts.toUnits(o.amount));
+                    out.writeUTF(o.publicKey == null ? "" : o.publicKey);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            out.flush();
+            // Trailer is written outside the checksum it records
+            new DataOutputStream(fos).writeInt((int) crc.getValue());
+            fos.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //   The tag of a snapshot file without loading it (or checking its checksum), or null if the
+    //   file is missing or not a snapshot.
+    public static SnapshotTag readSnapshotTag(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) return null;
+            return new SnapshotTag(in.readInt(), in.readUTF());
+        } catch (EOFException | UTFDataFormatException e) {
+            return null;
+        }
+    }
+
+    //   Replace the contents of this set with a snapshot.
+    //   Returns the snapshot's tag, or null (leaving the set empty) if the file is missing or corrupt.
+    public SnapshotTag loadSnapshot(Path file) throws IOException {
+        if (parent != null) throw new IllegalStateException("Cannot load a snapshot into an overlay");
+        clearAll();
+        if (!Files.exists(file)) return null;
+        CRC32 crc = new CRC32();
+        try (FileInputStream fis = new FileInputStream(file.toFile());
+             DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(fis, 1 << 16), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) return null;
+            int height = in.readInt();
+            String tipHash = in.readUTF();
+            int count = in.readInt();
+            for (int n = 0; n < count; n++) {
+                OutPoint op = OutPoint.fromWords(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt());
+                String receiver = in.readUTF();
+                double amount = Amounts.toCoins(in.readLong());
+                String publicKey = in.readUTF();
+                addOutput(op, new Transaction.TxOutput(receiver, amount, publicKey.isEmpty() ? null : publicKey));
+            }
+            // Everything up to here went through the checksum; the trailer is the last 4 bytes
+            int expected = (int) crc.getValue();
+            byte[] trailer = in.readAllBytes();
+            if (trailer.length != 4 || ByteBuffer.wrap(trailer).getInt() != expected) {
+                clearAll();
+                return null;
+            }
+            return new SnapshotTag(height, tipHash);
+        } catch (EOFException | UTFDataFormatException e) {
+            clearAll();
+            return null;
+        }
+    }
+
+    private void clearAll() {
+        utxos.clear();
+        balances.clear();
+    }
+
     // Rebuild from chain when loading
     public void rebuildFromChain(List<Block> chain) {
-        utxos.clear();
-        reserved.clear();
+        if (parent != null) throw new IllegalStateException("Cannot rebuild an overlay");
+        clearAll();
         for (Block b : chain) {
-            // Expect transactions serialized in block; adapt if your Block stores differently
-            for (Object obj : b.transactions) {
-                Transaction tx = (Transaction) obj;
-                // Spend inputs
-                if (!tx.isCoinbase) {
-                    for (Transaction.TxInput in : tx.inputs) {
-                        removeOutput(in.prevTxId, in.outputIndex);
-                    }
-                }
-                // Add outputs
-                for (int i = 0; i < tx.outputs.size(); i++) {
-                    addOutput(tx.transactionId, i, tx.outputs.get(i));
-                }
+            for (Transaction tx : b.transactions) {
+                applyTransaction(tx);
             }
         }
     }
@@ -0,0 +1,249 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//   UndoLog keeps, for each recently connected block, the outputs that block spent, so a reorg can
+//   disconnect blocks in O(block) instead of replaying the chain from genesis:
+//   - Record payload: varint n | n x (4 longs txId | varint outputIndex | string receiver
+//     | varint amount units | field publicKey), written with BinaryCodec primitives
+//   - On disk (undo/ next to the block store): one file per SEGMENT_BLOCKS heights, each holding
+//     [int height][int length][int crc32][payload] records in height order. Whole segments
+//     below tip - depth are deleted, so the log stays bounded; a torn tail is dropped on open
+//   - In memory (no directory): the encoded records in a map, pruned the same way
+//   Heights without a record (older than `depth`, or connected before the log existed) simply
+//   cannot be disconnected cheaply; the caller falls back to a full replay.
+public final class UndoLog implements Closeable {
+    public static final int DEFAULT_DEPTH = 1024;
+    private static final int SEGMENT_BLOCKS = 256;
+    private static final int RECORD_HEADER = 12;
+
+    private final Path directory; // null = in memory
+    private final int depth;
+    private final int syncEvery;
+    // height -> encoded record (memory) or record offset within its segment file (disk)
+    private final TreeMap<Integer, byte[]> records = new TreeMap<>();
+    private final TreeMap<Integer, Long> offsets = new TreeMap<>();
+    private final Map<Integer, FileChannel> segments = new HashMap<>();
+    private final Set<FileChannel> unsynced = new HashSet<>();
+    private int appendsSinceSync;
+
+    //   In-memory log keeping the last depth blocks' undo data.
+    public UndoLog(int depth) {
+        if (depth < 1) throw new IllegalArgumentException("depth must be >= 1");
+        this.directory = null;
+        this.depth = depth;
+        this.syncEvery = 1;
+    }
+
+    //   File-backed log in directory, recovering any torn tail.
+    public UndoLog(Path directory, int depth, int syncEvery) throws IOException {
+        if (depth < 1 || syncEvery < 1) throw new IllegalArgumentException("depth and syncEvery must be >= 1");
+        this.directory = directory;
+        this.depth = depth;
+        this.syncEvery = syncEvery;
+        Files.createDirectories(directory);
+        List<Integer> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(f -> {
+                String name = f.getFileName().toString();
+                if (name.startsWith("undo-") && name.endsWith(".dat")) {
+                    try {
+                        found.add(Integer.parseInt(name.substring(5, name.length() - 4)));
+                    } catch (NumberFormatException ignored) {
+                        // not ours
+                    }
+                }
+            });
+        }
+        Collections.sort(found);
+        for (int segment : found) recoverSegment(segment);
+    }
+
+    //   Record the undo data of the block connected at height, replacing any records at or above it.
+    public synchronized void append(int height, Map<OutPoint, Transaction.TxOutput> spent) throws IOException {
+        truncate(height);
+        byte[] payload = encode(spent);
+        if (directory == null) {
+            records.put(height, payload);
+        } else {
+            FileChannel segment = segment(height / SEGMENT_BLOCKS);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+            record.putInt(height).putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            long offset = segment.size();
+            while (record.hasRemaining()) offset += segment.write(record, offset);
+            offsets.put(height, offset - RECORD_HEADER - payload.length);
+            unsynced.add(segment);
+            if (++appendsSinceSync >= syncEvery) sync();
+        }
+        prune(height - depth);
+    }
+
+    //   Undo data of the block at height, or null if it is not in the log.
+    public synchronized Map<OutPoint, Transaction.TxOutput> read(int height) throws IOException {
+        if (directory == null) {
+            byte[] payload = records.get(height);
+            return payload == null ? null : decode(ByteBuffer.wrap(payload));
+        }
+        Long offset = offsets.get(height);
+        if (offset == null) return null;
+        FileChannel segment = segment(height / SEGMENT_BLOCKS);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(segment, header, offset);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(4));
+        readFully(segment, payload, offset + RECORD_HEADER);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != header.getInt(8)) throw new IOException("Checksum mismatch in undo record " + height);
+        return decode(payload.flip());
+    }
+
+    //   True if every height in [from, to] has undo data.
+    public synchronized boolean covers(int from, int to) {
+        NavigableMap<Integer, ?> range = (directory == null ? records : offsets).subMap(from, true, to, true);
+        return range.size() == to - from + 1;
+    }
+
+    //   Drop the records of every height >= height.
+    public synchronized void truncate(int height) throws IOException {
+        if (directory == null) {
+            records.tailMap(height, true).clear();
+            return;
+        }
+        NavigableMap<Integer, Long> dropped = offsets.tailMap(height, true);
+        if (dropped.isEmpty()) return;
+        int firstSegment = height / SEGMENT_BLOCKS;
+        for (int segment : new ArrayList<>(segments.keySet())) {
+            if (segment > firstSegment) deleteSegment(segment);
+        }
+        Map.Entry<Integer, Long> first = dropped.firstEntry();
+        if (first.getKey() / SEGMENT_BLOCKS == firstSegment) {
+            FileChannel segment = segment(firstSegment);
+            segment.truncate(first.getValue());
+            segment.force(true);
+        }
+        dropped.clear();
+    }
+
+    //   Force appended records to disk.
+    public synchronized void sync() throws IOException {
+        for (FileChannel segment : unsynced) segment.force(false);
+        unsynced.clear();
+        appendsSinceSync = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        for (FileChannel segment : segments.values()) segment.close();
+        segments.clear();
+    }
+
+    // Drop records below minHeight: whole segment files on disk.
+    private void prune(int minHeight) throws IOException {
+        if (minHeight <= 0) return;
+        if (directory == null) {
+            records.headMap(minHeight).clear();
+            return;
+        }
+        for (int segment : new ArrayList<>(segments.keySet())) {
+            if ((segment + 1) * SEGMENT_BLOCKS <= minHeight) deleteSegment(segment);
+        }
+    }
+
+    private void deleteSegment(int segment) throws IOException {
+        FileChannel channel = segments.remove(segment);
+        if (channel != null) {
+            unsynced.remove(channel);
+            channel.close();
+        }
+        Files.deleteIfExists(segmentPath(segment));
+        offsets.subMap(segment * SEGMENT_BLOCKS, true, (segment + 1) * SEGMENT_BLOCKS, false).clear();
+    }
+
+    private FileChannel segment(int segment) throws IOException {
+        FileChannel channel = segments.get(segment);
+        if (channel == null) {
+            channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(segment, channel);
+        }
+        return channel;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("undo-%08d.dat", segment));
+    }
+
+    // Index the intact records of one segment file and cut off anything after the first bad one.
+    private void recoverSegment(int segment) throws IOException {
+        FileChannel channel = segment(segment);
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (offset + RECORD_HEADER <= size) {
+            header.clear();
+            readFully(channel, header, offset);
+            int height = header.getInt(0);
+            int length = header.getInt(4);
+            if (length < 0 || offset + RECORD_HEADER + length > size || height / SEGMENT_BLOCKS != segment) break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, offset + RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(8)) break;
+            offsets.put(height, offset);
+            offset += RECORD_HEADER + length;
+        }
+        if (offset < size) {
+            channel.truncate(offset);
+            channel.force(true);
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+        }
+    }
+
+    static byte[] encode(Map<OutPoint, Transaction.TxOutput> spent) {
+        int size = BinaryCodec.varintSize(spent.size());
+        for (Map.Entry<OutPoint, Transaction.TxOutput> e : spent.entrySet()) {
+            Transaction.TxOutput out = e.getValue();
+            size += 32 + BinaryCodec.varintSize(e.getKey().index & 0xffffffffL) + BinaryCodec.stringSize(out.receiver)
+                    + BinaryCodec.varintSize(Amounts.toUnits(out.amount)) + BinaryCodec.fieldSize(out.publicKey);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        BinaryCodec.writeVarint(buf, spent.size());
+        spent.forEach((op, out) -> {
+            for (int i = 0; i < 4; i++) buf.putLong(op.hashWord(i));
+            BinaryCodec.writeVarint(buf, op.index & 0xffffffffL);
+            BinaryCodec.writeString(buf, out.receiver);
+            BinaryCodec.writeVarint(buf, Amounts.toUnits(out.amount));
+            BinaryCodec.writeField(buf, out.publicKey);
+        });
+        return buf.array();
+    }
+
+    static Map<OutPoint, Transaction.TxOutput> decode(ByteBuffer buf) {
+        int n = (int) BinaryCodec.readVarint(buf);
+        Map<OutPoint, Transaction.TxOutput> spent = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            OutPoint op = OutPoint.fromWords(buf.getLong(), buf.getLong(), buf.getLong(), buf.getLong(), (int) BinaryCodec.readVarint(buf));
+            String receiver = BinaryCodec.readString(buf);
+            double amount = Amounts.toCoins(BinaryCodec.readVarint(buf));
+            spent.put(op, new Transaction.TxOutput(receiver, amount, BinaryCodec.readField(buf)));
+        }
+        return spent;
+    }
+}
@@ -0,0 +1,85 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//   Wallet holds this node's Ed25519 key pairs, one per address name:
+//   - Keys are created on first use (e.g. the first time an address receives coins)
+//   - createSpend signs with the sender's key; new outputs are locked to the receiver's public key
+//   - A file-backed wallet appends each new key as "name privateKeyHex publicKeyHex" and fsyncs it,
+//     since losing a key means losing the coins locked to it
+public class Wallet {
+    private final Map<String, KeyPair> keys = new ConcurrentHashMap<>();
+    private final Path file; // null for an in-memory wallet
+
+    //   In-memory wallet; keys are lost when the process exits.
+    public Wallet() {
+        this.file = null;
+    }
+
+    private Wallet(Path file) {
+        this.file = file;
+    }
+
+    //   Open (or create) a wallet file.
+    public static Wallet open(Path file) throws IOException {
+        Wallet wallet = new Wallet(file);
+        if (!Files.exists(file)) return wallet;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 3) continue; // torn last line from a crash
+            try {
+                PrivateKey priv = Signatures.decodePrivateKey(parts[1]);
+                PublicKey pub = Signatures.decodePublicKey(parts[2]);
+                wallet.keys.put(parts[0], new KeyPair(pub, priv));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                throw new IOException("Corrupt wallet entry for " + parts[0], e);
+            }
+        }
+        return wallet;
+    }
+
+    //   Key pair of address, created (and persisted) if this wallet has none yet.
+    public synchronized KeyPair keyPair(String address) {
+        KeyPair pair = keys.get(address);
+        if (pair != null) return pair;
+        pair = Signatures.generateKeyPair();
+        if (file != null) persist(address, pair);
+        keys.put(address, pair);
+        return pair;
+    }
+
+    //   Hex public key that outputs paying address are locked to.
+    public String publicKeyOf(String address) {
+        return Signatures.publicKeyHex(keyPair(address).getPublic());
+    }
+
+    //   True if this wallet holds the private key for publicKeyHex under address.
+    public boolean canSign(String address, String publicKeyHex) {
+        KeyPair pair = keys.get(address);
+        return pair != null && Signatures.publicKeyHex(pair.getPublic()).equals(publicKeyHex);
+    }
+
+    public boolean contains(String address) {
+        return keys.containsKey(address);
+    }
+
+    private void persist(String address, KeyPair pair) {
+        if (address.isEmpty() || address.chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Address must not contain whitespace: '" + address + "'");
+        }
+        String line = address + " " + HashUtil.toHex(pair.getPrivate().getEncoded())
+                + " " + Signatures.publicKeyHex(pair.getPublic()) + "\n";
+        try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to save key for " + address, e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Amount validity and spends built from whole units.
+class AmountsTest {
+
+    @Test
+    void validAmountsAreAtLeastOneUnit() {
+        assertTrue(Amounts.isValid(0.00000001));
+        assertTrue(Amounts.isValid(0.000000006)); // rounds up to one unit
+        assertFalse(Amounts.isValid(0.000000004)); // rounds to a zero-value output
+        assertFalse(Amounts.isValid(0));
+        assertFalse(Amounts.isValid(-1));
+        assertFalse(Amounts.isValid(Double.NaN));
+        assertFalse(Amounts.isValid(Double.POSITIVE_INFINITY));
+        assertTrue(Amounts.isValid(Amounts.toCoins(Amounts.MAX_MONEY)));
+        assertFalse(Amounts.isValid(Amounts.toCoins(Amounts.MAX_MONEY + 1)));
+    }
+
+    @Test
+    void spendsPayTheRoundedAmount() {
+        Blockchain chain = new Blockchain();
+        Transaction tx = chain.createSpend("genesis", "alice", 1.000000004, 0.1);
+        assertEquals(1.0, tx.outputs.get(0).amount);
+        assertEquals(Amounts.toUnits(1000.0 - 1.0 - 0.1), Amounts.toUnits(tx.outputs.get(1).amount));
+        assertNull(chain.submitTransaction(tx));
+        assertThrows(IllegalArgumentException.class, () -> chain.createSpend("genesis", "alice", 0.000000001));
+    }
+}
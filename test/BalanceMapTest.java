@@ -0,0 +1,72 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   BalanceMap against a HashMap, and snapshots keeping their balances while newer ones are published.
+class BalanceMapTest {
+
+    @Test
+    void matchesAHashMapAndNeverChangesPublishedMaps() {
+        Random random = new Random(11);
+        Map<String, Long> expected = new HashMap<>();
+        BalanceMap map = BalanceMap.EMPTY;
+        List<BalanceMap> versions = new ArrayList<>();
+        List<Map<String, Long>> expectedVersions = new ArrayList<>();
+        for (int round = 0; round < 200; round++) {
+            BalanceMap.Builder builder = new BalanceMap.Builder(map);
+            for (int i = 0; i < 50; i++) {
+                String key = "addr" + random.nextInt(3000);
+                long units = random.nextInt(1_000_000);
+                builder.put(key, units);
+                expected.put(key, units);
+            }
+            map = builder.build();
+            versions.add(map);
+            expectedVersions.add(new HashMap<>(expected));
+        }
+        for (int v = 0; v < versions.size(); v++) {
+            BalanceMap version = versions.get(v);
+            Map<String, Long> want = expectedVersions.get(v);
+            assertEquals(want.size(), version.size());
+            for (Map.Entry<String, Long> e : want.entrySet()) assertEquals(e.getValue().longValue(), version.get(e.getKey()), e.getKey());
+        }
+        assertEquals(0, map.get("nobody"));
+    }
+
+    @Test
+    void keysWithTheSameHashAreKeptApart() {
+        // "Aa" and "BB" have the same String.hashCode()
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        BalanceMap one = BalanceMap.EMPTY.with("Aa", 1).with("BB", 2);
+        BalanceMap two = one.with("Aa", 3).with("AaBB", 4).with("BBAa", 5);
+        assertEquals(1, one.get("Aa"));
+        assertEquals(2, one.get("BB"));
+        assertEquals(0, one.get("AaBB"));
+        assertEquals(3, two.get("Aa"));
+        assertEquals(2, two.get("BB"));
+        assertEquals(4, two.get("AaBB"));
+        assertEquals(5, two.get("BBAa"));
+        assertEquals(2, one.size());
+        assertEquals(4, two.size());
+    }
+
+    @Test
+    void anOldSnapshotKeepsItsBalancesAcrossBlocks() {
+        Blockchain chain = new Blockchain();
+        chain.difficultyBits = 0;
+        chain.minePendingTransactions("alice");
+        ChainSnapshot held = chain.getSnapshot();
+        // alice's balance changes twice after the held snapshot
+        chain.minePendingTransactions("alice");
+        chain.minePendingTransactions("alice");
+        assertEquals(30.0, chain.checkBalance("alice"));
+        assertEquals(10.0, held.balanceOf("alice"));
+        assertEquals(1000.0, held.balanceOf("genesis"));
+        assertEquals(1, held.height);
+    }
+}
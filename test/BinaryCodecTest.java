@@ -0,0 +1,150 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Round trips of legacy and version 1 transactions and blocks, varint edge cases, and truncated
+//   or overlong input failing as IllegalArgumentException.
+class BinaryCodecTest {
+
+    @Test
+    void versionOneTransactionsRoundTrip() {
+        Blockchain chain = new Blockchain();
+        Transaction tx = chain.createSpend("genesis", "alice", 12.5, 0.1);
+        byte[] bytes = BinaryCodec.encode(tx);
+        assertEquals(BinaryCodec.sizeOf(tx), bytes.length);
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        Transaction read = BinaryCodec.readTransaction(buf);
+        assertFalse(buf.hasRemaining());
+        assertSameTransaction(tx, read);
+        assertEquals(tx.transactionId, read.computeId());
+        assertEquals(12.5, read.outputs.get(0).amount);
+    }
+
+    @Test
+    void legacyTransactionsKeepTheirExactDoubles() {
+        // 0.1 + 0.2 is not a whole number of units; a legacy tx keeps the exact double its id was computed from
+        double amount = 0.1 + 0.2;
+        Transaction legacy = Transaction.restore(Transaction.LEGACY_VERSION, null, false,
+                List.of(new Transaction.TxInput("ab".repeat(32), 3, "Not-Hex signature")),
+                List.of(new Transaction.TxOutput("bob", amount, null)));
+        legacy.transactionId = legacy.computeId();
+        Transaction read = BinaryCodec.readTransaction(ByteBuffer.wrap(BinaryCodec.encode(legacy)));
+        assertSameTransaction(legacy, read);
+        assertEquals(amount, read.outputs.get(0).amount);
+        assertEquals(legacy.transactionId, read.computeId());
+        assertEquals(BinaryCodec.sizeOf(legacy), BinaryCodec.encode(legacy).length);
+    }
+
+    @Test
+    void blocksRoundTrip() {
+        Blockchain chain = new Blockchain();
+        Block genesis = chain.getBlock(0);
+        Transaction spend = chain.createSpend("genesis", "alice", 5.0, 0.1);
+        Block block = new Block(1, List.of(Transaction.coinbase("miner", 10.1, 1), spend), genesis.hash);
+        Block legacy = Block.restore(Block.LEGACY_VERSION, 2, 1755800987773L, List.of(Transaction.coinbase("miner", 10.0, 2)),
+                block.hash, null, null, 41);
+        legacy.hash = legacy.calculateHash();
+
+        for (Block original : List.of(genesis, block, legacy)) {
+            byte[] bytes = BinaryCodec.encode(original);
+            assertEquals(BinaryCodec.sizeOf(original), bytes.length);
+            Block read = BinaryCodec.decodeBlock(bytes);
+            assertEquals(original.version, read.version);
+            assertEquals(original.index, read.index);
+            assertEquals(original.timestamp, read.timestamp);
+            assertEquals(original.previousHash, read.previousHash);
+            assertEquals(original.merkleRoot, read.merkleRoot);
+            assertEquals(original.hash, read.hash);
+            assertEquals(original.nonce, read.nonce);
+            assertEquals(original.hash, read.calculateHash());
+            assertEquals(original.transactions.size(), read.transactions.size());
+            for (int i = 0; i < read.transactions.size(); i++) assertSameTransaction(original.transactions.get(i), read.transactions.get(i));
+
+            Block header = BinaryCodec.readHeader(ByteBuffer.wrap(bytes));
+            assertEquals(original.hash, header.hash);
+            assertTrue(header.transactions.isEmpty());
+            assertEquals(original.transactions.get(original.transactions.size() - 1).transactionId,
+                    BinaryCodec.readBlockTransaction(ByteBuffer.wrap(bytes), original.transactions.size() - 1).transactionId);
+            assertNull(BinaryCodec.readBlockTransaction(ByteBuffer.wrap(bytes), original.transactions.size()));
+        }
+    }
+
+    @Test
+    void varintEdgeCases() {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 0xffffffffL, Long.MAX_VALUE, Long.MIN_VALUE, -1};
+        for (long value : values) {
+            ByteBuffer buf = ByteBuffer.allocate(10);
+            BinaryCodec.writeVarint(buf, value);
+            assertEquals(BinaryCodec.varintSize(value), buf.position(), "size of " + value);
+            buf.flip();
+            assertEquals(value, BinaryCodec.readVarint(buf));
+            assertFalse(buf.hasRemaining());
+        }
+        assertEquals(10, BinaryCodec.varintSize(-1));
+
+        // Nine continuation bytes leave one bit for the tenth
+        byte[] overflow = new byte[10];
+        Arrays.fill(overflow, (byte) 0xff);
+        overflow[9] = 0x02;
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readVarint(ByteBuffer.wrap(overflow)));
+        overflow[9] = 0x7f;
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readVarint(ByteBuffer.wrap(overflow)));
+        byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readVarint(ByteBuffer.wrap(tooLong)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readVarint(ByteBuffer.wrap(new byte[] {(byte) 0x80})));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readVarint(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    void truncatedInputIsMalformedNotAnUnderflow() {
+        Blockchain chain = new Blockchain();
+        Transaction spend = chain.createSpend("genesis", "alice", 5.0, 0.1);
+        Transaction legacy = Transaction.restore(Transaction.LEGACY_VERSION, "cd".repeat(32), false,
+                List.of(new Transaction.TxInput("ab".repeat(32), 0, null)), List.of(new Transaction.TxOutput("bob", 1.5, null)));
+        Block block = new Block(1, List.of(Transaction.coinbase("miner", 10.1, 1), spend), chain.getBlock(0).hash);
+
+        for (Transaction tx : List.of(spend, legacy)) {
+            byte[] bytes = BinaryCodec.encode(tx);
+            for (int length = 0; length < bytes.length; length++) {
+                ByteBuffer cut = ByteBuffer.wrap(bytes, 0, length);
+                assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readTransaction(cut), "tx cut at " + length);
+            }
+        }
+        byte[] bytes = BinaryCodec.encode(block);
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] cut = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodeBlock(cut), "block cut at " + length);
+            assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readBlockTransaction(ByteBuffer.wrap(cut), 1), "block cut at " + length);
+        }
+
+        // A length running past the end of the buffer
+        ByteBuffer field = ByteBuffer.wrap(new byte[] {1, 40, 0, 0});
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readField(field));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readField(ByteBuffer.wrap(new byte[] {9})));
+    }
+
+    private static void assertSameTransaction(Transaction expected, Transaction actual) {
+        assertEquals(expected.version, actual.version);
+        assertEquals(expected.transactionId, actual.transactionId);
+        assertEquals(expected.isCoinbase, actual.isCoinbase);
+        assertEquals(expected.inputs.size(), actual.inputs.size());
+        for (int i = 0; i < expected.inputs.size(); i++) {
+            assertEquals(expected.inputs.get(i).prevTxId, actual.inputs.get(i).prevTxId);
+            assertEquals(expected.inputs.get(i).outputIndex, actual.inputs.get(i).outputIndex);
+            assertEquals(expected.inputs.get(i).signature, actual.inputs.get(i).signature);
+        }
+        assertEquals(expected.outputs.size(), actual.outputs.size());
+        for (int i = 0; i < expected.outputs.size(); i++) {
+            assertEquals(expected.outputs.get(i).receiver, actual.outputs.get(i).receiver);
+            assertEquals(expected.outputs.get(i).amount, actual.outputs.get(i).amount);
+            assertEquals(expected.outputs.get(i).publicKey, actual.outputs.get(i).publicKey);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Coin selectors on hand-built coin lists: changeless matches, fallbacks and the dust rule.
+class CoinSelectorTest {
+
+    @Test
+    void branchAndBoundPrefersAnExactMatch() {
+        CoinSelector.Selection s = new CoinSelector.BranchAndBound(CoinSelector.BranchAndBound.DEFAULT_TRIES, null)
+                .select(coins(50, 26, 25), 75, 5);
+        assertEquals(List.of(50L, 25L), values(s));
+        assertEquals(0, s.changeUnits);
+
+        // One input beats three of the same total
+        s = CoinSelector.standard().select(coins(30, 20, 60, 10), 60, 0);
+        assertEquals(List.of(60L), values(s));
+    }
+
+    @Test
+    void branchAndBoundLeavesAnExcessWithinDustToTheFee() {
+        CoinSelector.Selection s = new CoinSelector.BranchAndBound(CoinSelector.BranchAndBound.DEFAULT_TRIES, null)
+                .select(coins(60, 45, 30), 74, 2);
+        assertEquals(List.of(45L, 30L), values(s));
+        assertEquals(0, s.changeUnits);
+    }
+
+    @Test
+    void branchAndBoundFallsBackWithoutAMatch() {
+        List<CoinSelector.Coin> coins = coins(60, 45, 30);
+        assertNull(new CoinSelector.BranchAndBound(CoinSelector.BranchAndBound.DEFAULT_TRIES, null).select(coins, 80, 2));
+        CoinSelector.Selection s = CoinSelector.standard().select(coins, 80, 2);
+        assertEquals(List.of(60L, 45L), values(s));
+        assertEquals(25, s.changeUnits);
+
+        // Not enough in total: no selector finds anything
+        assertNull(CoinSelector.standard().select(coins, 136, 2));
+    }
+
+    @Test
+    void equalValueCoinsAreTriedOnce() {
+        // 3 + 2k is odd, so the match leaves the 3 out; trying every subset of the twos under it
+        // would take far more than a thousand steps
+        List<Long> values = new ArrayList<>();
+        values.add(3L);
+        for (int i = 0; i < 20; i++) values.add(2L);
+        CoinSelector.Selection s = new CoinSelector.BranchAndBound(1_000, null).select(coins(values), 40, 0);
+        assertNotNull(s);
+        assertEquals(20, s.inputs.size());
+        assertFalse(values(s).contains(3L));
+    }
+
+    @Test
+    void branchAndBoundStopsAfterItsTries() {
+        List<Long> values = new ArrayList<>();
+        values.add(3L);
+        for (int i = 0; i < 20; i++) values.add(2L);
+        List<CoinSelector.Coin> coins = coins(values);
+        assertNull(new CoinSelector.BranchAndBound(5, null).select(coins, 40, 0));
+        // The fallback pays 3 + 19 x 2 and returns the 1 unit excess as change
+        CoinSelector.Selection s = new CoinSelector.BranchAndBound(5, new CoinSelector.LargestFirst()).select(coins, 40, 0);
+        assertEquals(20, s.inputs.size());
+        assertEquals(1, s.changeUnits);
+    }
+
+    @Test
+    void largestFirstUsesTheFewestCoins() {
+        CoinSelector.Selection s = new CoinSelector.LargestFirst().select(coins(5, 70, 20, 40), 100, 1);
+        assertEquals(List.of(70L, 40L), values(s));
+        assertEquals(10, s.changeUnits);
+        assertNull(new CoinSelector.LargestFirst().select(coins(5, 70), 100, 1));
+    }
+
+    @Test
+    void consolidatingSweepsTheSmallestCoins() {
+        List<CoinSelector.Coin> coins = coins(50, 1, 40, 5, 3);
+        CoinSelector.Selection s = new CoinSelector.Consolidating(3).select(coins, 60, 2);
+        assertEquals(List.of(50L, 40L, 1L), values(s));
+        assertEquals(31, s.changeUnits);
+
+        s = new CoinSelector.Consolidating(10).select(coins, 60, 2);
+        assertEquals(List.of(50L, 40L, 1L, 3L, 5L), values(s));
+        assertEquals(39, s.changeUnits);
+        assertNull(new CoinSelector.Consolidating(10).select(coins, 100, 2));
+    }
+
+    @Test
+    void changeBelowTheDustThresholdGoesToTheFee() {
+        assertEquals(0, new CoinSelector.LargestFirst().select(coins(100), 95, 10).changeUnits);
+        assertEquals(10, new CoinSelector.LargestFirst().select(coins(100), 90, 10).changeUnits);
+        assertEquals(0, new CoinSelector.Consolidating(5).select(coins(100, 4), 98, 10).changeUnits);
+        assertEquals(0, CoinSelector.Selection.of(coins(7, 3), 9, 2).changeUnits);
+        assertThrows(IllegalArgumentException.class, () -> CoinSelector.Selection.of(coins(7), 9, 2));
+    }
+
+    private static List<CoinSelector.Coin> coins(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long v : values) list.add(v);
+        return coins(list);
+    }
+
+    // Coins with distinct out points and the given values, in order
+    private static List<CoinSelector.Coin> coins(List<Long> values) {
+        List<CoinSelector.Coin> coins = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) coins.add(new CoinSelector.Coin(new OutPoint(new byte[32], i), values.get(i)));
+        return coins;
+    }
+
+    private static List<Long> values(CoinSelector.Selection selection) {
+        List<Long> values = new ArrayList<>();
+        for (CoinSelector.Coin coin : selection.inputs) values.add(coin.units);
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   CompactOutputStore against HashMapOutputStore under inserts, deletes and reinserts (probe runs
+//   shifted back, tables resized), including the per-receiver lists.
+class CompactOutputStoreTest {
+
+    @Test
+    void matchesAHashMapStoreThroughDeletesAndReinserts() {
+        Random random = new Random(5);
+        List<OutPoint> points = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) points.add(outPoint(random, i % 3));
+        CompactOutputStore compact = new CompactOutputStore(16);
+        HashMapOutputStore expected = new HashMapOutputStore();
+        for (int round = 0; round < 60_000; round++) {
+            OutPoint op = points.get(random.nextInt(points.size()));
+            if (random.nextInt(3) == 0) {
+                assertEquals(output(expected.remove(op)), output(compact.remove(op)));
+            } else {
+                Transaction.TxOutput out = new Transaction.TxOutput("r" + random.nextInt(20), random.nextInt(10_000) + 1,
+                        random.nextBoolean() ? null : "ab" + random.nextInt(5));
+                assertEquals(output(expected.put(op, out)), output(compact.put(op, out)));
+            }
+            if (round % 5_000 == 0) assertSameContents(expected, compact);
+        }
+        assertSameContents(expected, compact);
+
+        compact.clear();
+        assertEquals(0, compact.size());
+        assertTrue(compact.outputsOf("r1").isEmpty());
+        compact.put(points.get(0), new Transaction.TxOutput("r1", 1.0, null));
+        assertEquals(List.of(points.get(0)), new ArrayList<>(compact.outputsOf("r1")));
+    }
+
+    @Test
+    void entriesAfterADeletedSlotStayReachable() {
+        CompactOutputStore compact = new CompactOutputStore(16);
+        Random random = new Random(9);
+        List<OutPoint> points = new ArrayList<>();
+        // Nine entries in a table of 16 (it resizes at 10): long probe runs
+        for (int i = 0; i < 9; i++) {
+            OutPoint op = outPoint(random, 0);
+            points.add(op);
+            compact.put(op, new Transaction.TxOutput("r", i + 1, null));
+        }
+        for (int removed = 0; removed < points.size(); removed++) {
+            assertEquals(removed + 1, compact.remove(points.get(removed)).amount);
+            assertNull(compact.get(points.get(removed)));
+            for (int i = removed + 1; i < points.size(); i++) assertEquals(i + 1, compact.get(points.get(i)).amount);
+            assertEquals(points.subList(removed + 1, points.size()), new ArrayList<>(compact.outputsOf("r")));
+        }
+        // Reinserted outputs go to the end of their receiver's list
+        compact.put(points.get(3), new Transaction.TxOutput("r", 4, null));
+        compact.put(points.get(1), new Transaction.TxOutput("r", 2, null));
+        assertEquals(List.of(points.get(3), points.get(1)), new ArrayList<>(compact.outputsOf("r")));
+        assertEquals(2, compact.size());
+    }
+
+    @Test
+    void aUtxoSetOnEitherStoreGivesTheSameResults() {
+        Blockchain chain = new Blockchain();
+        chain.difficultyBits = 0;
+        for (int i = 0; i < 12; i++) {
+            if (i % 3 == 1) assertNull(chain.submitTransaction(chain.createSpend("genesis", "payee" + i, 2.5, 0.1)));
+            chain.minePendingTransactions(i % 2 == 0 ? "alice" : "bob");
+        }
+        UTXOSet compact = new UTXOSet(new CompactOutputStore(16));
+        compact.rebuildFromChain(chain.getChain());
+        UTXOSet hashMap = new UTXOSet();
+        hashMap.rebuildFromChain(chain.getChain());
+        assertEquals(hashMap.size(), compact.size());
+        for (String address : List.of("genesis", "alice", "bob", "payee1", "payee4", "nobody")) {
+            assertEquals(hashMap.balanceUnitsOf(address), compact.balanceUnitsOf(address), address);
+            assertEquals(new ArrayList<>(hashMap.outputsOf(address)), new ArrayList<>(compact.outputsOf(address)), address);
+        }
+    }
+
+    private static void assertSameContents(HashMapOutputStore expected, CompactOutputStore compact) {
+        assertEquals(expected.size(), compact.size());
+        Set<String> receivers = new HashSet<>();
+        expected.forEach((op, out) -> {
+            assertEquals(output(out), output(compact.get(op)));
+            assertTrue(compact.contains(op));
+            receivers.add(out.receiver);
+        });
+        int[] visited = new int[1];
+        compact.forEach((op, out) -> {
+            assertEquals(output(expected.get(op)), output(out));
+            visited[0]++;
+        });
+        assertEquals(expected.size(), visited[0]);
+        for (String receiver : receivers) {
+            assertEquals(new ArrayList<>(expected.outputsOf(receiver)), new ArrayList<>(compact.outputsOf(receiver)), receiver);
+        }
+    }
+
+    private static OutPoint outPoint(Random random, int index) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        return new OutPoint(hash, index);
+    }
+
+    // Comparable form of an output (the compact store materializes new objects)
+    private static String output(Transaction.TxOutput out) {
+        return out == null ? null : out.receiver + " " + Amounts.toUnits(out.amount) + " " + out.publicKey;
+    }
+}
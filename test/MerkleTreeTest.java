@@ -0,0 +1,96 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Merkle roots and inclusion proofs for every leaf count up to 17, and blocks repeating a
+//   transaction (whose root still matches).
+class MerkleTreeTest {
+
+    @Test
+    void aSingleLeafIsItsOwnRoot() {
+        String id = id(1);
+        assertEquals(id, MerkleTree.root(List.of(id)));
+        MerkleTree.Proof proof = MerkleTree.proof(List.of(id), 0);
+        assertTrue(proof.siblings.isEmpty());
+        assertTrue(MerkleTree.verify(id, proof, id));
+        assertFalse(MerkleTree.verify(id(2), proof, id));
+    }
+
+    @Test
+    void anOddLeafIsPairedWithItself() throws Exception {
+        List<String> ids = List.of(id(1), id(2), id(3));
+        String expected = hash(hash(id(1), id(2)), hash(id(3), id(3)));
+        assertEquals(expected, MerkleTree.root(ids));
+    }
+
+    @Test
+    void everyLeafHasAProofForOddAndEvenCounts() {
+        for (int n = 1; n <= 17; n++) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < n; i++) ids.add(id(i));
+            String root = MerkleTree.root(ids);
+            for (int i = 0; i < n; i++) {
+                MerkleTree.Proof proof = MerkleTree.proof(ids, i);
+                assertTrue(MerkleTree.verify(ids.get(i), proof, root), n + " leaves, leaf " + i);
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> MerkleTree.proof(List.of(id(1)), 1));
+    }
+
+    @Test
+    void aWrongIndexOrSiblingIsRejected() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) ids.add(id(i));
+        String root = MerkleTree.root(ids);
+        MerkleTree.Proof proof = MerkleTree.proof(ids, 2);
+
+        assertFalse(MerkleTree.verify(ids.get(2), new MerkleTree.Proof(3, proof.siblings), root));
+        assertFalse(MerkleTree.verify(ids.get(2), new MerkleTree.Proof(6, proof.siblings), root));
+        List<String> siblings = new ArrayList<>(proof.siblings);
+        siblings.set(1, id(99));
+        assertFalse(MerkleTree.verify(ids.get(2), new MerkleTree.Proof(2, siblings), root));
+        assertFalse(MerkleTree.verify(ids.get(2), new MerkleTree.Proof(2, proof.siblings.subList(0, 2)), root));
+        assertFalse(MerkleTree.verify(ids.get(2), new MerkleTree.Proof(2, List.of("not hex")), root));
+        assertFalse(MerkleTree.verify(ids.get(3), proof, root));
+    }
+
+    @Test
+    void blocksRepeatingATransactionAreRejected() {
+        Blockchain chain = new Blockchain();
+        Block genesis = chain.getBlock(0);
+        Transaction coinbase = Transaction.coinbase("miner", 10.0, 1);
+        Transaction toAlice = chain.createSpend("genesis", "alice", 5.0, 0.1);
+        Transaction toBob = chain.createSpend("genesis", "bob", 1.0, 0.1);
+        Block block = new Block(1, List.of(coinbase, toAlice, toBob), genesis.hash);
+        assertNull(ChainValidator.checkBlock(block, genesis, 1, 0));
+
+        // [a, b, c] is padded to [a, b, c, c], so repeating the last transaction keeps the root
+        // and with it the block hash
+        Block repeated = Block.restore(block.version, block.index, block.timestamp, List.of(coinbase, toAlice, toBob, toBob),
+                block.previousHash, block.merkleRoot, block.hash, block.nonce);
+        assertEquals(block.merkleRoot, repeated.computeMerkleRoot());
+        assertEquals(block.hash, repeated.calculateHash());
+        assertEquals("duplicate transaction " + toBob.transactionId, ChainValidator.checkBlock(repeated, genesis, 1, 0));
+    }
+
+    // A distinct 32-byte id
+    private static String id(int n) {
+        byte[] bytes = new byte[32];
+        bytes[0] = (byte) n;
+        bytes[31] = (byte) (n * 7 + 1);
+        return HashUtil.toHex(bytes);
+    }
+
+    private static String hash(String left, String right) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(HashUtil.fromHex(left));
+        digest.update(HashUtil.fromHex(right));
+        return HashUtil.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,184 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Nodes on loopback syncing from each other: headers first, bodies from every peer, and
+//   reorganizing to a heavier branch. The chains share a genesis block, like nodes started from
+//   the same blockchain.json; a node on another genesis is ignored.
+class PeerNodeTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<Blockchain> chains = new ArrayList<>();
+    private final List<PeerNode> nodes = new ArrayList<>();
+
+    @AfterEach
+    void close() throws IOException {
+        // Nodes first: they serve from the chains
+        for (PeerNode node : nodes) node.close();
+        for (Blockchain chain : chains) chain.close();
+    }
+
+    @Test
+    void headersFirstSyncFromAnEmptyChain() throws IOException {
+        Blockchain a = chain("a");
+        Blockchain b = chain("b");
+        // More than one GET_HEADERS batch
+        mine(a, PeerProtocol.MAX_HEADERS + 100, "a");
+        PeerNode na = node(a);
+        PeerNode nb = node(b);
+        nb.connect("localhost", na.getPort());
+
+        ChainSync.Outcome outcome = nb.syncNow();
+        assertNull(outcome.error, outcome::toString);
+        assertEquals(PeerProtocol.MAX_HEADERS + 100, outcome.connected);
+        assertEquals(a.getLatestBlock().hash, b.getLatestBlock().hash);
+        assertEquals(a.checkBalance("genesis"), b.checkBalance("genesis"));
+        assertTrue(b.validateChain().valid);
+        assertEquals(0, nb.syncNow().connected);
+        assertEquals(2, b.metrics.getSyncRounds());
+        assertEquals(PeerProtocol.MAX_HEADERS + 100, b.metrics.getBlocksSynced());
+        assertEquals(0, b.metrics.getSyncFailures());
+    }
+
+    @Test
+    void headersAreCheckedBeforeAnyBodyIsFetched() throws IOException {
+        Blockchain a = chain("a");
+        Blockchain b = chain("b");
+        mine(a, 40, "a");
+        // a's blocks were mined at difficulty 0; b wants 4 bits, and a's 41 blocks still claim
+        // more work than b's lone genesis at that difficulty
+        b.difficultyBits = 4;
+        PeerNode na = node(a);
+        PeerNode nb = node(b);
+        nb.connect("localhost", na.getPort());
+
+        ChainSync.Outcome outcome = nb.syncNow();
+        assertNotNull(outcome.error);
+        assertTrue(outcome.error.contains("insufficient proof of work"), outcome::toString);
+        assertEquals(1, b.metrics.getSyncFailures());
+        assertEquals(0, na.getBlocksServed());
+        assertEquals(0, b.getLatestBlock().index);
+    }
+
+    @Test
+    void bodiesComeFromEveryPeer() throws IOException {
+        Blockchain a = chain("a");
+        Blockchain b = chain("b");
+        Blockchain c = chain("c");
+        mine(a, 300, "a");
+        PeerNode na = node(a);
+        PeerNode nb = node(b);
+        PeerNode nc = node(c);
+        nb.connect("localhost", na.getPort());
+        assertNull(nb.syncNow().error);
+        long servedByA = na.getBlocksServed();
+
+        nc.connect("localhost", na.getPort());
+        nc.connect("localhost", nb.getPort());
+        ChainSync.Outcome outcome = nc.syncNow();
+        assertNull(outcome.error, outcome::toString);
+        assertEquals(300, outcome.connected);
+        assertEquals(a.getLatestBlock().hash, c.getLatestBlock().hash);
+        // Chunks are spread over both peers, so each served part of the bodies
+        long fromA = na.getBlocksServed() - servedByA;
+        long fromB = nb.getBlocksServed();
+        assertTrue(fromA > 0 && fromB > 0, "from a " + fromA + ", from b " + fromB);
+        assertEquals(300, fromA + fromB);
+    }
+
+    @Test
+    void peersOnAnotherGenesisAreIgnored() throws IOException {
+        Blockchain a = chain("a");
+        Blockchain other = open("other", null);
+        mine(other, 20, "o");
+        assertNotEquals(a.getGenesisHash(), other.getGenesisHash());
+        PeerNode na = node(a);
+        PeerNode no = node(other);
+        na.connect("localhost", no.getPort());
+
+        ChainSync.Outcome outcome = na.syncNow();
+        assertNull(outcome.error, outcome::toString);
+        assertEquals(0, outcome.connected);
+        assertEquals(0, no.getBlocksServed());
+
+        // Handed over directly, the other genesis and the blocks on it are rejected as well
+        assertFalse(a.acceptBlock(other.getBlock(0)).valid);
+        assertFalse(a.acceptBlock(other.getBlock(1)).valid);
+        assertFalse(a.switchToBranch(-1, other.getChain()).valid);
+        assertEquals(0, a.getLatestBlock().index);
+        assertEquals(other.getBlock(0).hash, other.getGenesisHash());
+    }
+
+    @Test
+    void switchesToTheHeavierBranch() throws IOException {
+        Blockchain a = chain("a");
+        Blockchain b = chain("b");
+        mine(a, 10, "a");
+        PeerNode na = node(a);
+        PeerNode nb = node(b);
+        nb.connect("localhost", na.getPort());
+        assertNull(nb.syncNow().error);
+
+        // Both extend the shared chain; b's branch is longer
+        mine(a, 2, "fa");
+        mine(b, 4, "fb");
+        na.connect("localhost", nb.getPort());
+        ChainSync.Outcome outcome = na.syncNow();
+        assertNull(outcome.error, outcome::toString);
+        assertTrue(outcome.switched);
+        assertEquals(4, outcome.connected);
+        assertEquals(b.getLatestBlock().hash, a.getLatestBlock().hash);
+        assertEquals(0.0, a.checkBalance("fa0"));
+        assertEquals(10.0, a.checkBalance("fb0"));
+        assertTrue(a.validateChain().valid);
+
+        // b is already on the heavier chain and stays there
+        assertEquals(0, nb.syncNow().connected);
+        assertEquals(b.getLatestBlock().hash, a.getLatestBlock().hash);
+    }
+
+    // The first chain gets a new genesis block; later ones import it
+    private Blockchain chain(String name) throws IOException {
+        Path genesis = dir.resolve("genesis.json");
+        if (Files.exists(genesis)) return open(name, genesis.toString());
+        Blockchain blockchain = open(name, null);
+        blockchain.saveBlockchain(genesis.toString());
+        return blockchain;
+    }
+
+    private Blockchain open(String name, String importJson) throws IOException {
+        Blockchain blockchain = Blockchain.openBlockchain(dir.resolve(name).toString(), importJson);
+        blockchain.difficultyBits = 0;
+        chains.add(blockchain);
+        return blockchain;
+    }
+
+    // Sync only on demand, so each test controls every round
+    private PeerNode node(Blockchain blockchain) throws IOException {
+        PeerNode node = new PeerNode(blockchain, 0);
+        node.syncIntervalMillis = 3_600_000;
+        node.start();
+        nodes.add(node);
+        return node;
+    }
+
+    // Mine `blocks` blocks to prefix0, prefix1, ..., with a genesis spend in every fifth one
+    private static void mine(Blockchain chain, int blocks, String prefix) {
+        for (int i = 0; i < blocks; i++) {
+            if (i % 5 == 4) assertNull(chain.submitTransaction(chain.createSpend("genesis", prefix + "-payee" + i, 1.0, 0.1)));
+            assertTrue(chain.minePendingTransactions(prefix + i));
+        }
+    }
+}
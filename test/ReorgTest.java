@@ -0,0 +1,155 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   Reorgs through the undo log must leave exactly the UTXO set that replaying the new chain
+//   from genesis gives.
+class ReorgTest {
+
+    @TempDir
+    Path dir;
+
+    private Blockchain chain;
+
+    @AfterEach
+    void close() throws IOException {
+        if (chain != null) chain.close();
+    }
+
+    @Test
+    void coinbasesToTheSameMinerSurviveAReorg() throws IOException {
+        chain = open();
+        chain.minePendingTransactions("alice");
+        chain.minePendingTransactions("alice");
+
+        // A heavier branch forking at height 1 disconnects alice's second coinbase only
+        Block b2 = block(chain.getBlock(1), "bob");
+        Block b3 = block(b2, "bob");
+        assertValid(chain.acceptBlock(b2));
+        assertValid(chain.acceptBlock(b3));
+
+        assertEquals(b3.hash, chain.getLatestBlock().hash);
+        assertEquals(10.0, chain.checkBalance("alice"));
+        assertEquals(20.0, chain.checkBalance("bob"));
+        assertMatchesReplay(chain);
+    }
+
+    @Test
+    void reorgsBackAndForthMatchReplay() throws IOException {
+        chain = open();
+        for (int i = 0; i < 12; i++) {
+            if (i % 3 == 2) assertNull(chain.submitTransaction(chain.createSpend("genesis", "payee" + i, 1.5, 0.1)));
+            chain.minePendingTransactions(i % 2 == 0 ? "alice" : "bob");
+        }
+        int forkHeight = chain.getLatestBlock().index - 4;
+        Block fork = chain.getBlock(forkHeight);
+        List<Block> original = new ArrayList<>(chain.getChain().subList(forkHeight + 1, chain.getChain().size()));
+
+        // Branch: the same miners again, plus a spend of alice's first coinbase (below the fork)
+        Transaction coinbase = chain.getBlock(1).transactions.get(0);
+        Wallet wallet = chain.getWallet();
+        Transaction spend = new Transaction(
+                List.of(new Transaction.TxInput(coinbase.transactionId, 0, null)),
+                List.of(new Transaction.TxOutput("carol", 3.0, wallet.publicKeyOf("carol")),
+                        new Transaction.TxOutput("alice", 7.0, wallet.publicKeyOf("alice"))));
+        spend.signInput(0, wallet.keyPair("alice").getPrivate());
+        List<Block> branch = new ArrayList<>();
+        Block previous = fork;
+        for (int i = 0; i < 5; i++) {
+            previous = i == 0 ? block(previous, "alice", spend) : block(previous, i % 2 == 0 ? "alice" : "bob");
+            branch.add(previous);
+        }
+        for (Block b : branch) assertValid(chain.acceptBlock(b));
+        assertEquals(previous.hash, chain.getLatestBlock().hash);
+        assertEquals(3.0, chain.checkBalance("carol"));
+        assertMatchesReplay(chain);
+
+        // And back to the original blocks, extended past the branch
+        Block back = original.get(original.size() - 1);
+        for (int i = 0; i < 2; i++) {
+            back = block(back, "alice");
+            original.add(back);
+        }
+        for (Block b : original) assertValid(chain.acceptBlock(b));
+        assertEquals(back.hash, chain.getLatestBlock().hash);
+        assertEquals(0.0, chain.checkBalance("carol"));
+        assertMatchesReplay(chain);
+    }
+
+    @Test
+    void legacyBlocksFromPeersAreRejected() throws IOException {
+        chain = open();
+        chain.minePendingTransactions("alice");
+        Block tip = chain.getLatestBlock();
+        assertEquals(0, chain.getLegacyHeight());
+
+        // A legacy block repeating alice's coinbase (same id) would overwrite her output
+        Transaction repeat = Transaction.coinbase("alice", 10.0, chain.getWallet().publicKeyOf("alice"), 1);
+        assertEquals(tip.transactions.get(0).transactionId, repeat.transactionId);
+        ChainValidator.Result onTip = chain.acceptBlock(legacyBlock(tip, repeat));
+        assertFalse(onTip.valid);
+        assertEquals(2, onTip.firstInvalidHeight);
+
+        // Also as a side block, and as the second block of an otherwise valid branch
+        assertFalse(chain.acceptBlock(legacyBlock(chain.getBlock(0), Transaction.coinbase("bob", 10.0, 1))).valid);
+        Block b1 = block(chain.getBlock(0), "bob");
+        assertValid(chain.acceptBlock(b1));
+        assertFalse(chain.acceptBlock(legacyBlock(b1, repeat)).valid);
+
+        assertEquals(tip.hash, chain.getLatestBlock().hash);
+        assertEquals(10.0, chain.checkBalance("alice"));
+        assertMatchesReplay(chain);
+    }
+
+    private Blockchain open() throws IOException {
+        Blockchain blockchain = Blockchain.openBlockchain(dir.toString(), null);
+        blockchain.difficultyBits = 0;
+        return blockchain;
+    }
+
+    // A block on top of previous, paying the reward to miner (difficulty 0: any hash will do)
+    private Block block(Block previous, String miner, Transaction... txs) {
+        List<Transaction> list = new ArrayList<>();
+        list.add(Transaction.coinbase(miner, 10.0, chain.getWallet().publicKeyOf(miner), previous.index + 1));
+        list.addAll(Arrays.asList(txs));
+        return new Block(previous.index + 1, list, previous.hash);
+    }
+
+    // A version 0 block on top of previous holding txs, hashed the legacy way
+    private static Block legacyBlock(Block previous, Transaction... txs) {
+        Block block = Block.restore(Block.LEGACY_VERSION, previous.index + 1, System.currentTimeMillis(), Arrays.asList(txs),
+                previous.hash, null, null, 0);
+        block.hash = block.calculateHash();
+        return block;
+    }
+
+    private static void assertValid(ChainValidator.Result result) {
+        assertTrue(result.valid, result::toString);
+    }
+
+    // Every address on the chain has the balance a full replay of the chain gives it
+    private static void assertMatchesReplay(Blockchain chain) {
+        List<Block> blocks = chain.getChain();
+        UTXOSet replayed = new UTXOSet();
+        replayed.rebuildFromChain(blocks);
+        Set<String> addresses = new TreeSet<>();
+        for (Block b : blocks) {
+            for (Transaction tx : b.transactions) {
+                for (Transaction.TxOutput out : tx.outputs) addresses.add(out.receiver);
+            }
+        }
+        for (String address : addresses) {
+            assertEquals(Amounts.toCoins(replayed.balanceUnitsOf(address)), chain.checkBalance(address), address);
+        }
+        assertValid(chain.validateChain());
+    }
+}
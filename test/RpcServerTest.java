@@ -0,0 +1,161 @@
+//Name: On Tuan Huy
+//sID: s4028018
+
+import com.google.gson.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//   JSON-RPC over loopback HTTP: batches answered in order, SERVER_BUSY backpressure and paging.
+class RpcServerTest {
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private Blockchain chain;
+    private RpcServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        chain = new Blockchain();
+        chain.difficultyBits = 0;
+        server = new RpcServer(chain, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, 4, RpcServer.MAX_BATCH);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+    }
+
+    @Test
+    void batchRepliesFollowTheCallOrder() throws Exception {
+        chain.minePendingTransactions("alice");
+        chain.minePendingTransactions("bob");
+        HttpResponse<String> response = post("["
+                + call("\"c\"", "getBalance", "{\"address\":\"genesis\"}") + ","
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"getChainInfo\"},"   // notification: no reply
+                + call("7", "noSuchMethod", "{}") + ","
+                + call("\"a\"", "send", "{\"from\":\"alice\",\"to\":\"carol\",\"amount\":5,\"fee\":0.1}") + ","
+                + call("2", "getBalance", "{\"address\":1}") + ","
+                + call("\"b\"", "send", "{\"from\":\"bob\",\"to\":\"carol\",\"amount\":6,\"fee\":0.1}") + "]");
+        assertEquals(200, response.statusCode());
+        JsonArray replies = JsonParser.parseString(response.body()).getAsJsonArray();
+        assertEquals(5, replies.size());
+        List<String> ids = new ArrayList<>();
+        for (JsonElement reply : replies) ids.add(reply.getAsJsonObject().get("id").toString());
+        assertEquals(List.of("\"c\"", "7", "\"a\"", "2", "\"b\""), ids);
+
+        assertEquals(1000.0, result(replies.get(0)).getAsDouble());
+        assertEquals(RpcServer.METHOD_NOT_FOUND, errorCode(replies.get(1)));
+        assertTrue(result(replies.get(2)).getAsJsonObject().get("accepted").getAsBoolean());
+        assertEquals(RpcServer.INVALID_PARAMS, errorCode(replies.get(3)));
+        assertTrue(result(replies.get(4)).getAsJsonObject().get("accepted").getAsBoolean());
+        assertEquals(2, chain.mempool.size());
+    }
+
+    @Test
+    void sendsFailFastWhenTooManyAreInFlight() throws Exception {
+        String send = call("1", "send", "{\"from\":\"genesis\",\"to\":\"bob\",\"amount\":1}");
+        server.submissions.acquire(RpcServer.MAX_BATCH);
+        try {
+            HttpResponse<String> busy = post(send);
+            assertEquals(503, busy.statusCode());
+            assertEquals("1", busy.headers().firstValue("Retry-After").orElse(null));
+            assertEquals(RpcServer.SERVER_BUSY, errorCode(JsonParser.parseString(busy.body())));
+
+            // Inside a batch the busy call gets its error and the others still run
+            HttpResponse<String> batch = post("[" + send + "," + call("2", "getChainInfo", "{}") + "]");
+            assertEquals(200, batch.statusCode());
+            JsonArray replies = JsonParser.parseString(batch.body()).getAsJsonArray();
+            assertEquals(RpcServer.SERVER_BUSY, errorCode(replies.get(0)));
+            assertEquals(0, result(replies.get(1)).getAsJsonObject().get("height").getAsInt());
+            assertEquals(0, chain.mempool.size());
+        } finally {
+            server.submissions.release(RpcServer.MAX_BATCH);
+        }
+        HttpResponse<String> retried = post(send);
+        assertEquals(200, retried.statusCode());
+        assertTrue(result(JsonParser.parseString(retried.body())).getAsJsonObject().get("accepted").getAsBoolean());
+    }
+
+    @Test
+    void blocksArePagedToTheTip() throws Exception {
+        for (int i = 0; i < 230; i++) chain.minePendingTransactions("m" + i);
+        List<Integer> heights = new ArrayList<>();
+        int pages = 0;
+        for (int from = 0; from >= 0; pages++) {
+            JsonObject page = rpc("getBlocks", "{\"from\":" + from + ",\"limit\":" + RpcServer.MAX_PAGE + "}").getAsJsonObject();
+            for (JsonElement block : page.getAsJsonArray("blocks")) heights.add(block.getAsJsonObject().get("index").getAsInt());
+            from = page.get("next").getAsInt();
+        }
+        assertEquals(3, pages);
+        assertEquals(231, heights.size());
+        for (int h = 0; h < heights.size(); h++) assertEquals(h, heights.get(h));
+
+        // Past the tip, including where from + limit overflows an int: an empty last page
+        for (long from : new long[] {231, 5000, Integer.MAX_VALUE - 1}) {
+            JsonObject page = rpc("getBlocks", "{\"from\":" + from + ",\"limit\":" + RpcServer.MAX_PAGE + "}").getAsJsonObject();
+            assertEquals(0, page.getAsJsonArray("blocks").size(), "from " + from);
+            assertEquals(-1, page.get("next").getAsInt(), "from " + from);
+        }
+        JsonObject error = JsonParser.parseString(post(call("1", "getBlocks", "{\"limit\":" + (RpcServer.MAX_PAGE + 1) + "}")).body()).getAsJsonObject();
+        assertEquals(RpcServer.INVALID_PARAMS, errorCode(error));
+    }
+
+    @Test
+    void historyIsPagedByCursor() throws Exception {
+        for (int i = 0; i < 25; i++) chain.minePendingTransactions(i % 2 == 0 ? "hot" : "m" + i);
+        List<String> all = new ArrayList<>();
+        for (JsonElement entry : rpc("getHistory", "{\"address\":\"hot\",\"limit\":" + RpcServer.MAX_PAGE + "}").getAsJsonObject().getAsJsonArray("entries")) {
+            all.add(entry.toString());
+        }
+        assertEquals(13, all.size());
+
+        List<String> paged = new ArrayList<>();
+        long cursor = 0;
+        while (cursor >= 0) {
+            JsonObject page = rpc("getHistory", "{\"address\":\"hot\",\"cursor\":" + cursor + ",\"limit\":4}").getAsJsonObject();
+            JsonArray entries = page.getAsJsonArray("entries");
+            assertTrue(entries.size() <= 4);
+            for (JsonElement entry : entries) paged.add(entry.toString());
+            cursor = page.get("nextCursor").getAsLong();
+        }
+        assertEquals(all, paged);
+    }
+
+    private static String call(String id, String method, String params) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + method + "\",\"params\":" + params + "}";
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/rpc"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private JsonElement rpc(String method, String params) throws IOException, InterruptedException {
+        HttpResponse<String> response = post(call("1", method, params));
+        assertEquals(200, response.statusCode(), response::body);
+        return result(JsonParser.parseString(response.body()));
+    }
+
+    private static JsonElement result(JsonElement reply) {
+        JsonObject object = reply.getAsJsonObject();
+        assertFalse(object.has("error"), object::toString);
+        return object.get("result");
+    }
+
+    private static int errorCode(JsonElement reply) {
+        JsonObject object = reply.getAsJsonObject();
+        assertTrue(object.has("error"), object::toString);
+        return object.getAsJsonObject("error").get("code").getAsInt();
+    }
+}